@@ -0,0 +1,335 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam;
+
+import java.text.MessageFormat;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+
+import org.w3c.dom.Node;
+import org.xmlbeam.annotation.XBDelete;
+import org.xmlbeam.annotation.XBDocURL;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.annotation.XBValue;
+import org.xmlbeam.annotation.XBWrite;
+import org.xmlbeam.types.DefaultTypeConverter;
+import org.xmlbeam.types.TypeConverter;
+import org.xmlbeam.util.intern.DOMPath;
+import org.xmlbeam.util.intern.ReflectionHelper;
+
+/**
+ * Description of how a projection method is to be invoked. Everything that can be derived from
+ * the method signature, its annotations and the projector configuration is determined once and
+ * cached by the {@link XBProjector}, so the {@link ProjectionInvocationHandler} does not need to
+ * rediscover it via reflection on every call. The only mutable state is the evaluator of a simple
+ * path, which is replaced by compiled code once the method gets hot. Notice that this class is not
+ * part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+final class InvocationPlan {
+
+    /**
+     * Kind of projection method.
+     */
+    enum Kind {
+        READ, WRITE, DELETE, DELEGATE
+    }
+
+    /**
+     * The way the result of a XPath evaluation is returned to the caller of a reading method.
+     */
+    enum ReturnKind {
+        CONVERTED, NODE, LIST, ARRAY,
+        /**
+         * {@link Iterable}, {@link java.util.Iterator} or java.util.stream.Stream creating the
+         * components on demand.
+         */
+        SEQUENCE, PROJECTION, UNSUPPORTED
+    }
+
+    final Method method;
+    final Kind kind;
+
+    /**
+     * The annotation value as declared in the projection interface. May contain placeholders.
+     */
+    final String template;
+
+    /**
+     * The final XPath expression if it does not depend on the method arguments, null otherwise.
+     */
+    final String staticPath;
+
+    /**
+     * Expression with placeholders bound as XPath variables, or null if placeholders are formatted
+     * into the expression.
+     */
+    final ParameterizedXPath parameterizedPath;
+
+    /**
+     * The static path of a reading method if it is simple enough to be evaluated without the
+     * XPath engine, null otherwise.
+     */
+    final SimpleXPath simplePath;
+
+    /**
+     * Number of evaluations of the simple path after which it is compiled to bytecode.
+     */
+    static final int COMPILE_THRESHOLD = 1000;
+
+    private volatile DOMPath simplePathEvaluator;
+
+    /**
+     * Evaluations of the simple path so far. Updates may get lost between threads, which only
+     * delays the compilation.
+     */
+    private int simplePathEvaluations = 0;
+
+    /**
+     * The value of the {@link XBDocURL} annotation or null if the method has none.
+     */
+    final String docURL;
+
+    final Class<?> returnType;
+    final ReturnKind returnKind;
+    final Class<?> componentType;
+    final ReturnKind componentKind;
+
+    final boolean returnsValue;
+    final boolean returnsProxy;
+
+    final int valueIndex;
+    final Class<?> valueType;
+    final boolean isMultiValue;
+
+    final Class<?> declaringInterface;
+    final boolean isDefaultMethod;
+
+    private final TypeConverter typeConverter;
+    private final int typeConverterModificationCount;
+
+    private InvocationPlan(final Method method, final Kind kind, final String template, final String staticPath, final ParameterizedXPath parameterizedPath, final SimpleXPath simplePath, final Class<?> declaringInterface, final TypeConverter typeConverter) {
+        this.method = method;
+        this.kind = kind;
+        this.template = template;
+        this.staticPath = staticPath;
+        this.parameterizedPath = parameterizedPath;
+        this.simplePath = simplePath;
+        this.simplePathEvaluator = simplePath;
+        final XBDocURL docURLAnnotation = method.getAnnotation(XBDocURL.class);
+        this.docURL = docURLAnnotation == null ? null : docURLAnnotation.value();
+        this.returnType = method.getReturnType();
+        this.returnsValue = ReflectionHelper.hasReturnType(method);
+        this.returnsProxy = returnType.equals(method.getDeclaringClass());
+        if (Kind.READ == kind) {
+            this.returnKind = determineReturnKind(returnType, typeConverter);
+            if ((ReturnKind.LIST == returnKind) || (ReturnKind.ARRAY == returnKind) || (ReturnKind.SEQUENCE == returnKind)) {
+                this.componentType = findTargetComponentType(method);
+                final ReturnKind k = determineReturnKind(componentType, typeConverter);
+                this.componentKind = (ReturnKind.CONVERTED == k) || (ReturnKind.NODE == k) || (ReturnKind.PROJECTION == k) ? k : ReturnKind.UNSUPPORTED;
+            } else {
+                this.componentType = null;
+                this.componentKind = null;
+            }
+        } else {
+            this.returnKind = null;
+            this.componentType = null;
+            this.componentKind = null;
+        }
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        this.valueIndex = findIndexOfValue(method);
+        this.valueType = parameterTypes.length > valueIndex ? parameterTypes[valueIndex] : null;
+        this.isMultiValue = (valueType != null) && (valueType.isArray() || Collection.class.isAssignableFrom(valueType));
+        this.declaringInterface = declaringInterface;
+        this.isDefaultMethod = (Kind.DELEGATE == kind) && ReflectionHelper.isDefaultMethod(method);
+        this.typeConverter = typeConverter;
+        this.typeConverterModificationCount = typeConverter instanceof DefaultTypeConverter ? ((DefaultTypeConverter) typeConverter).getModificationCount() : 0;
+    }
+
+    /**
+     * Plans of reading methods depend on the type converter they were created with. Conversions
+     * may be set on a {@link DefaultTypeConverter} after the plan was created, which is detected
+     * by its modification count.
+     *
+     * @param typeConverter
+     *            the current type converter of the projector.
+     * @return false if the plan needs to be created again.
+     */
+    boolean isValidFor(final TypeConverter typeConverter) {
+        if (Kind.READ != kind) {
+            return true;
+        }
+        if (typeConverter != this.typeConverter) {
+            return false;
+        }
+        return (!(typeConverter instanceof DefaultTypeConverter)) || (((DefaultTypeConverter) typeConverter).getModificationCount() == typeConverterModificationCount);
+    }
+
+    /**
+     * Count an evaluation of the simple path and compile it when the method got hot.
+     *
+     * @return the evaluator for the simple path, null if the method has none.
+     */
+    DOMPath getSimplePathEvaluator() {
+        final DOMPath evaluator = simplePathEvaluator;
+        if ((evaluator != simplePath) || (++simplePathEvaluations < COMPILE_THRESHOLD)) {
+            return evaluator;
+        }
+        simplePathEvaluator = SimpleXPathCompiler.compile(simplePath, staticPath);
+        return simplePathEvaluator;
+    }
+
+    /**
+     * Build a new plan for the given projection method.
+     *
+     * @param projector
+     * @param projectionInterface
+     * @param method
+     * @return a new plan
+     */
+    static InvocationPlan create(final XBProjector projector, final Class<?> projectionInterface, final Method method) {
+        final boolean isExternalized = projector.isExternalizerInUse();
+        final boolean bindVariables = projector.isFlagSet(XBProjector.Flags.BIND_PLACEHOLDERS_AS_VARIABLES);
+        final TypeConverter typeConverter = projector.config().getTypeConverter();
+        final XBRead readAnnotation = method.getAnnotation(XBRead.class);
+        if (readAnnotation != null) {
+            final String staticPath = staticPathFor(readAnnotation.value(), isExternalized);
+            final SimpleXPath simplePath = (staticPath == null) || projector.isFlagSet(XBProjector.Flags.XPATH_ENGINE_ONLY) ? null : SimpleXPath.parse(staticPath);
+            return new InvocationPlan(method, Kind.READ, readAnnotation.value(), staticPath, parameterizedPathFor(readAnnotation.value(), staticPath, isExternalized, bindVariables), simplePath, null, typeConverter);
+        }
+        final XBWrite writeAnnotation = method.getAnnotation(XBWrite.class);
+        if (writeAnnotation != null) {
+            // Setters do not evaluate their expression, they need the formatted path.
+            return new InvocationPlan(method, Kind.WRITE, writeAnnotation.value(), staticPathFor(writeAnnotation.value(), isExternalized), null, null, null, typeConverter);
+        }
+        final XBDelete delAnnotation = method.getAnnotation(XBDelete.class);
+        if (delAnnotation != null) {
+            final String staticPath = staticPathFor(delAnnotation.value(), isExternalized);
+            return new InvocationPlan(method, Kind.DELETE, delAnnotation.value(), staticPath, parameterizedPathFor(delAnnotation.value(), staticPath, isExternalized, bindVariables), null, null, typeConverter);
+        }
+        return new InvocationPlan(method, Kind.DELEGATE, null, null, null, null, ReflectionHelper.findDeclaringInterface(method, projectionInterface), typeConverter);
+    }
+
+    private static ParameterizedXPath parameterizedPathFor(final String template, final String staticPath, final boolean isExternalized, final boolean bindVariables) {
+        if ((!bindVariables) || (staticPath != null) || isExternalized) {
+            return null;
+        }
+        return ParameterizedXPath.parse(template);
+    }
+
+    /**
+     * An expression without placeholders will always be formatted to the same path, so it may be
+     * resolved in advance. Externalized expressions are resolved at invocation time because an
+     * externalizer may change its mind.
+     *
+     * @param template
+     * @param isExternalized
+     * @return the formatted path or null if it depends on the invocation.
+     */
+    private static String staticPathFor(final String template, final boolean isExternalized) {
+        if (isExternalized) {
+            return null;
+        }
+        final MessageFormat messageFormat = new MessageFormat(template);
+        if (messageFormat.getFormatsByArgumentIndex().length > 0) {
+            return null;
+        }
+        return messageFormat.format(new Object[0]);
+    }
+
+    private static ReturnKind determineReturnKind(final Class<?> type, final TypeConverter typeConverter) {
+        if (typeConverter.isConvertable(type)) {
+            return ReturnKind.CONVERTED;
+        }
+        if (Node.class.equals(type)) {
+            return ReturnKind.NODE;
+        }
+        if (List.class.equals(type)) {
+            return ReturnKind.LIST;
+        }
+        if (type.isArray()) {
+            return ReturnKind.ARRAY;
+        }
+        if (ReflectionHelper.isSequenceType(type)) {
+            return ReturnKind.SEQUENCE;
+        }
+        if (type.isInterface()) {
+            return ReturnKind.PROJECTION;
+        }
+        return ReturnKind.UNSUPPORTED;
+    }
+
+    /**
+     * Setter projection methods may have multiple parameters. One of them may be annotated with
+     * {@link XBValue} to select it as value to be set.
+     *
+     * @param method
+     * @return index of fist parameter annotated with {@link XBValue} annotation.
+     */
+    private static int findIndexOfValue(final Method method) {
+        int index = 0;
+        for (Annotation[] annotations : method.getParameterAnnotations()) {
+            for (Annotation a : annotations) {
+                if (XBValue.class.equals(a.annotationType())) {
+                    return index;
+                }
+            }
+            ++index;
+        }
+        return 0; // If no attribute is annotated, the first one is taken.
+    }
+
+    /**
+     * When reading collections, determine the collection component type.
+     *
+     * @param method
+     * @return
+     */
+    private static Class<?> findTargetComponentType(final Method method) {
+        if (method.getReturnType().isArray()) {
+            return method.getReturnType().getComponentType();
+        }
+        assert method.getAnnotation(XBRead.class) != null;
+
+        final Class<?> targetType = determineTargetTypeForList(method);
+        if (XBRead.class.equals(targetType)) {
+            throw new IllegalArgumentException("When using " + method.getReturnType().getSimpleName() + " as return type for method " + method + ", please specify the list content type in the " + XBRead.class.getSimpleName() + " annotaion. I can not determine it from the method signature.");
+        }
+        return targetType;
+    }
+
+    /**
+     * Extract the generic type of the List or sequence which currently is our return type.
+     *
+     * @param method
+     * @return component type of List to be created.
+     */
+    private static Class<?> determineTargetTypeForList(final Method method) {
+        assert List.class.equals(method.getReturnType()) || ReflectionHelper.isSequenceType(method.getReturnType());
+        final Type type = method.getGenericReturnType();
+        final String typeName = method.getReturnType().getSimpleName();
+        if (!(type instanceof ParameterizedType) || (((ParameterizedType) type).getActualTypeArguments() == null) || (((ParameterizedType) type).getActualTypeArguments().length < 1)) {
+            throw new IllegalArgumentException("When using " + typeName + " as return type for method " + method + ", please specify a generic type for the " + typeName + ". Otherwise I do not know which type I should fill the " + typeName + " with.");
+        }
+        assert ((ParameterizedType) type).getActualTypeArguments().length == 1 : "";
+        return (Class<?>) ((ParameterizedType) type).getActualTypeArguments()[0];
+    }
+}
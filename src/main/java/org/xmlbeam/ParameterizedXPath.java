@@ -0,0 +1,213 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam;
+
+import java.text.Format;
+import java.text.MessageFormat;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathVariableResolver;
+
+/**
+ * A dynamic projection expression whose placeholders are bound as XPath variables instead of being
+ * formatted into the expression string. A placeholder is bound as variable <code>$p0</code>,
+ * <code>$p1</code>,... if it forms a complete string literal in the resulting expression (e.g.
+ * <code>[@id=''{0}'']</code> or <code>[@id="{0}"]</code>). This way the expression string does not
+ * change between invocations and a compiled expression can be reused. Argument values can not
+ * alter the structure of the expression. Placeholders in any other position (e.g. name tests like
+ * <code>/a/x{0}/b</code>) are still substituted textually. Notice that this class is not part of
+ * the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+final class ParameterizedXPath {
+
+    private static final char MARKER_START = '\uE000';
+    private static final char MARKER_END = '\uE001';
+    private static final String VARIABLE_PREFIX = "p";
+    private static final Pattern VARIABLE_NAME = Pattern.compile(VARIABLE_PREFIX + "(\\d{1,9})");
+
+    private static final ThreadLocal<Object[]> CURRENT_ARGS = new ThreadLocal<Object[]>();
+
+    /**
+     * Resolves variables to the arguments of the current projection method invocation.
+     */
+    static final XPathVariableResolver VARIABLE_RESOLVER = new XPathVariableResolver() {
+        @Override
+        public Object resolveVariable(final QName variableName) {
+            final Matcher matcher = VARIABLE_NAME.matcher(variableName.getLocalPart());
+            if (!matcher.matches()) {
+                // Not one of our variables, like $page.
+                return null;
+            }
+            final Object[] args = CURRENT_ARGS.get();
+            final int index = Integer.parseInt(matcher.group(1));
+            if ((args == null) || (index >= args.length)) {
+                return null;
+            }
+            return formatArgument(args[index]);
+        }
+    };
+
+    /**
+     * Format an argument like {@link MessageFormat} does for a placeholder without format type, so
+     * bound values match the textual substitution. Numbers and dates are formatted for the default
+     * locale.
+     *
+     * @param arg
+     * @return the argument as string.
+     */
+    private static String formatArgument(final Object arg) {
+        if (arg instanceof String) {
+            return (String) arg;
+        }
+        return MessageFormat.format("{0}", new Object[] { arg });
+    }
+
+    /**
+     * The expression with bound literals replaced by variables and textual placeholders replaced
+     * by markers.
+     */
+    private final String expression;
+    private final boolean hasTextualPlaceholders;
+
+    private ParameterizedXPath(final String expression, final boolean hasTextualPlaceholders) {
+        this.expression = expression;
+        this.hasTextualPlaceholders = hasTextualPlaceholders;
+    }
+
+    /**
+     * Analyze a projection expression.
+     *
+     * @param template
+     *            annotation value with placeholders.
+     * @return a new ParameterizedXPath or null if no placeholder could be bound as variable.
+     */
+    static ParameterizedXPath parse(final String template) {
+        final Format[] formats = new MessageFormat(template).getFormatsByArgumentIndex();
+        final Object[] markers = new Object[formats.length];
+        for (int i = 0; i < formats.length; ++i) {
+            if (formats[i] != null) {
+                // Typed placeholders like {0,number,#} need to be formatted.
+                return null;
+            }
+            markers[i] = MARKER_START + Integer.toString(i) + MARKER_END;
+        }
+        final String marked = MessageFormat.format(template, markers);
+        final StringBuilder result = new StringBuilder(marked.length());
+        boolean hasBoundVariables = false;
+        boolean hasTextualPlaceholders = false;
+        for (int i = 0; i < marked.length(); ++i) {
+            final char c = marked.charAt(i);
+            if ((c == '\'') || (c == '"')) {
+                final int end = marked.indexOf(c, i + 1);
+                if (end < 0) {
+                    // Unterminated literal, let the XPath compiler complain.
+                    return null;
+                }
+                final String literal = marked.substring(i + 1, end);
+                final int index = markerIndex(literal);
+                if (index >= 0) {
+                    result.append('$').append(VARIABLE_PREFIX).append(index);
+                    hasBoundVariables = true;
+                } else {
+                    hasTextualPlaceholders |= literal.indexOf(MARKER_START) >= 0;
+                    result.append(marked, i, end + 1);
+                }
+                i = end;
+                continue;
+            }
+            hasTextualPlaceholders |= c == MARKER_START;
+            result.append(c);
+        }
+        if (!hasBoundVariables) {
+            return null;
+        }
+        return new ParameterizedXPath(result.toString(), hasTextualPlaceholders);
+    }
+
+    /**
+     * @param literal
+     * @return index of placeholder if literal consists of exactly one marker, -1 otherwise.
+     */
+    private static int markerIndex(final String literal) {
+        if ((literal.length() < 3) || (literal.charAt(0) != MARKER_START) || (literal.charAt(literal.length() - 1) != MARKER_END)) {
+            return -1;
+        }
+        final String digits = literal.substring(1, literal.length() - 1);
+        for (int i = 0; i < digits.length(); ++i) {
+            if (!Character.isDigit(digits.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(digits);
+    }
+
+    /**
+     * Create the expression string for an invocation. If all placeholders are bound as variables,
+     * this is the same string for every invocation.
+     *
+     * @param args
+     * @return expression to be compiled.
+     */
+    String format(final Object[] args) {
+        if (!hasTextualPlaceholders) {
+            return expression;
+        }
+        final StringBuilder builder = new StringBuilder(expression.length() + 16);
+        int pos = 0;
+        int start;
+        while ((start = expression.indexOf(MARKER_START, pos)) >= 0) {
+            final int end = expression.indexOf(MARKER_END, start);
+            builder.append(expression, pos, start);
+            final int index = Integer.parseInt(expression.substring(start + 1, end));
+            if ((args == null) || (index >= args.length)) {
+                builder.append('{').append(index).append('}');
+            } else {
+                builder.append(formatArgument(args[index]));
+            }
+            pos = end + 1;
+        }
+        builder.append(expression, pos, expression.length());
+        return builder.toString();
+    }
+
+    /**
+     * Make the invocation arguments visible to {@link #VARIABLE_RESOLVER} for the current thread.
+     *
+     * @param args
+     * @return the formerly bound arguments, to be passed to {@link #unbind(Object[])}.
+     */
+    static Object[] bind(final Object[] args) {
+        final Object[] previous = CURRENT_ARGS.get();
+        CURRENT_ARGS.set(args);
+        return previous;
+    }
+
+    /**
+     * @param previous
+     *            arguments returned by {@link #bind(Object[])}.
+     */
+    static void unbind(final Object[] previous) {
+        if (previous == null) {
+            CURRENT_ARGS.remove();
+            return;
+        }
+        CURRENT_ARGS.set(previous);
+    }
+}
@@ -23,7 +23,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.xmlbeam.annotation.XBDocURL;
+import org.xmlbeam.io.XBAsyncIO;
 import org.xmlbeam.io.XBFileIO;
+import org.xmlbeam.io.XBFilesIO;
 import org.xmlbeam.io.XBStreamInput;
 import org.xmlbeam.io.XBStreamOutput;
 import org.xmlbeam.io.XBUrlIO;
@@ -38,12 +40,31 @@ public interface ProjectionIO {
 
     XBFileIO file(String fileName);
 
+    /**
+     * Read all files of a directory matching a glob pattern like <code>**&#47;*.xml</code> in
+     * parallel.
+     * 
+     * @param directory
+     * @param glob
+     *            pattern of paths relative to the directory, see {@link XBFilesIO}.
+     * @return a new files IO
+     */
+    XBFilesIO files(File directory, String glob);
+
     XBUrlIO url(String url);
     
     XBStreamInput stream(InputStream is);
 
     XBStreamOutput stream(OutputStream os);
 
+    /**
+     * Access asynchronous variants of the IO operations, running on the executor of the projector
+     * configuration.
+     * 
+     * @return a new asynchronous IO
+     */
+    XBAsyncIO async();
+
     /**
      * Create a new projection using a {@link XBDocURL} annotation on this interface. When the
      * XBDocURL starts with the protocol identifier "resource://" the class loader of the projection
@@ -16,20 +16,22 @@
 package org.xmlbeam;
 
 import java.text.MessageFormat;
-import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import java.util.AbstractList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.regex.Pattern;
 import java.io.IOException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -45,15 +47,16 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 import org.xmlbeam.XBProjector.InternalProjection;
-import org.xmlbeam.annotation.XBDelete;
 import org.xmlbeam.annotation.XBDocURL;
-import org.xmlbeam.annotation.XBRead;
-import org.xmlbeam.annotation.XBValue;
-import org.xmlbeam.annotation.XBWrite;
+import org.xmlbeam.config.XMLFactoriesConfig;
 import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.types.DefaultTypeConverter;
 import org.xmlbeam.types.TypeConverter;
 import org.xmlbeam.util.intern.ASMHelper;
 import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.DOMPath;
+import org.xmlbeam.util.intern.IndexedInvocationHandler;
+import org.xmlbeam.util.intern.ProjectionCoverage;
 import org.xmlbeam.util.intern.ReflectionHelper;
 
 /**
@@ -65,7 +68,7 @@ import org.xmlbeam.util.intern.ReflectionHelper;
  * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
  */
 @SuppressWarnings("serial")
-final class ProjectionInvocationHandler implements InvocationHandler, Serializable {
+final class ProjectionInvocationHandler extends IndexedInvocationHandler implements Serializable {
     private final static String NONEMPTY = "(?!^$)";
     private final static String ELEMENT_PATH = "(/[a-z:A-Z0-9]+(\\[@?[a-zA-Z0-9]+='.+'\\])?)";
     private final static String ATTRIBUTE_PATH = "(/?@[a-z:A-Z0-9]+)";
@@ -81,6 +84,9 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
     // Used to handle invocations on Java8 default methods.
     private transient Object defaultMethodInvoker;
 
+    // Lock of the document if the projector uses read write locks.
+    private transient volatile ReadWriteLock documentLock;
+
     ProjectionInvocationHandler(final XBProjector projector, final Node node, final Class<?> projectionInterface, final Map<Class<?>, Object> defaultInvokers) {
         this.projector = projector;
         this.node = node;
@@ -132,96 +138,225 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
         parentNode.appendChild(newElement);
     }
 
-    private List<?> evaluateAsList(final XPathExpression expression, final Node node, final Method method) throws XPathExpressionException {
+    private List<?> evaluateAsList(final XPathExpression expression, final Node node, final InvocationPlan plan) throws XPathExpressionException {
         final NodeList nodes = (NodeList) expression.evaluate(node, XPathConstants.NODESET);
+        ensureValidComponentKind(plan);
         final List<Object> linkedList = new LinkedList<Object>();
-        final Class<?> targetType = findTargetComponentType(method);
-        final TypeConverter typeConverter = projector.config().getTypeConverter();
-        if (typeConverter.isConvertable(targetType)) {
-            for (int i = 0; i < nodes.getLength(); ++i) {
-                linkedList.add(typeConverter.convertTo(targetType, nodes.item(i).getTextContent()));
-            }
-            return linkedList;
+        for (int i = 0; i < nodes.getLength(); ++i) {
+            linkedList.add(toComponent(nodes.item(i), plan));
         }
-        if (Node.class.equals(targetType)) {
-            for (int i = 0; i < nodes.getLength(); ++i) {
-                linkedList.add(nodes.item(i));
-            }
-            return linkedList;
+        return linkedList;
+    }
+
+    private List<?> toComponents(final List<Node> nodes, final InvocationPlan plan) {
+        ensureValidComponentKind(plan);
+        final List<Object> linkedList = new LinkedList<Object>();
+        for (Node n : nodes) {
+            linkedList.add(toComponent(n, plan));
         }
-        if (targetType.isInterface()) {
-            for (int i = 0; i < nodes.getLength(); ++i) {
-                InternalProjection subprojection = (InternalProjection) projector.projectDOMNode(nodes.item(i), targetType);
-                linkedList.add(subprojection);
+        return linkedList;
+    }
+
+    /**
+     * Read only list of the components for the given nodes. Components are created when they are
+     * accessed, which may happen after the invocation on another thread, like a worker of a
+     * parallel stream. So they are created under the same document lock as reading methods. If the
+     * list is caching, they are kept for further access.
+     */
+    private final class LazyComponentList extends AbstractList<Object> implements RandomAccess {
+        private final List<Node> nodes;
+        private final InvocationPlan plan;
+        private final boolean isCaching;
+        private Object[] components;
+
+        LazyComponentList(final List<Node> nodes, final InvocationPlan plan, final boolean isCaching) {
+            this.nodes = nodes;
+            this.plan = plan;
+            this.isCaching = isCaching;
+        }
+
+        @Override
+        public Object get(final int index) {
+            final Node componentNode = nodes.get(index);
+            if (!isCaching) {
+                return toLockedComponent(componentNode, plan);
+            }
+            if (components == null) {
+                components = new Object[nodes.size()];
+            }
+            if (components[index] == null) {
+                components[index] = toLockedComponent(componentNode, plan);
             }
-            return linkedList;
+            return components[index];
+        }
+
+        @Override
+        public int size() {
+            return nodes.size();
         }
-        throw new IllegalArgumentException("Return type " + targetType + " is not valid for list or array component type returning from method " + method + " using the current type converter:" + projector.config().getTypeConverter()
-                + ". Please change the return type to a sub projection or add a conversion to the type converter.");
+    }
+
+    private List<?> toLazyList(final List<Node> nodes, final InvocationPlan plan, final boolean isCaching) {
+        ensureValidComponentKind(plan);
+        return new LazyComponentList(nodes, plan, isCaching);
     }
 
     /**
-     * Setter projection methods may have multiple parameters. One of them may be annotated with
-     * {@link XBValue} to select it as value to be set.
+     * Create the array returned by a reading method. Arrays of primitives are filled by parsing the
+     * node texts directly, as long as a plain {@link DefaultTypeConverter} with the built in
+     * conversion for the component type is used.
      *
-     * @param method
-     * @return index of fist parameter annotated with {@link XBValue} annotation.
+     * @param nodes
+     * @param plan
+     * @return array of the components for the given nodes.
      */
-    private int findIndexOfValue(final Method method) {
-        int index = 0;
-        for (Annotation[] annotations : method.getParameterAnnotations()) {
-            for (Annotation a : annotations) {
-                if (XBValue.class.equals(a.annotationType())) {
-                    return index;
+    private Object toArray(final List<Node> nodes, final InvocationPlan plan) {
+        ensureValidComponentKind(plan);
+        final Class<?> type = plan.componentType;
+        final int length = nodes.size();
+        if (type.isPrimitive()) {
+            final TypeConverter typeConverter = projector.config().getTypeConverter();
+            // Subclasses may override convertTo(), so only the exact class is known to be built in.
+            if ((typeConverter.getClass() == DefaultTypeConverter.class) && ((DefaultTypeConverter) typeConverter).hasBuiltInConversion(type)) {
+                final Object array = toPrimitiveArray(nodes, type);
+                if (array != null) {
+                    return array;
                 }
             }
-            ++index;
+            final Object array = Array.newInstance(type, length);
+            for (int i = 0; i < length; ++i) {
+                Array.set(array, i, toComponent(nodes.get(i), plan));
+            }
+            return array;
         }
-        return 0; // If no attribute is annotated, the first one is taken.
+        final Object[] array = (Object[]) Array.newInstance(type, length);
+        for (int i = 0; i < length; ++i) {
+            array[i] = toComponent(nodes.get(i), plan);
+        }
+        return array;
     }
 
     /**
-     * When reading collections, determine the collection component type.
+     * Parse the node texts like the built in conversions of the {@link DefaultTypeConverter}, but
+     * without boxing. Empty texts become the default value.
      *
-     * @param method
-     * @return
+     * @param nodes
+     * @param type
+     * @return array of the given primitive type or null if the type is not supported here.
      */
-    private Class<?> findTargetComponentType(final Method method) {
-        if (method.getReturnType().isArray()) {
-            return method.getReturnType().getComponentType();
+    private static Object toPrimitiveArray(final List<Node> nodes, final Class<?> type) {
+        final int length = nodes.size();
+        if (Integer.TYPE.equals(type)) {
+            final int[] array = new int[length];
+            for (int i = 0; i < length; ++i) {
+                final String data = nodes.get(i).getTextContent();
+                array[i] = data.isEmpty() ? 0 : Integer.parseInt(data);
+            }
+            return array;
+        }
+        if (Long.TYPE.equals(type)) {
+            final long[] array = new long[length];
+            for (int i = 0; i < length; ++i) {
+                final String data = nodes.get(i).getTextContent();
+                array[i] = data.isEmpty() ? 0L : Long.parseLong(data);
+            }
+            return array;
+        }
+        if (Double.TYPE.equals(type)) {
+            final double[] array = new double[length];
+            for (int i = 0; i < length; ++i) {
+                final String data = nodes.get(i).getTextContent();
+                array[i] = data.isEmpty() ? 0D : Double.parseDouble(data);
+            }
+            return array;
+        }
+        if (Float.TYPE.equals(type)) {
+            final float[] array = new float[length];
+            for (int i = 0; i < length; ++i) {
+                final String data = nodes.get(i).getTextContent();
+                array[i] = data.isEmpty() ? 0F : Float.parseFloat(data);
+            }
+            return array;
+        }
+        if (Short.TYPE.equals(type)) {
+            final short[] array = new short[length];
+            for (int i = 0; i < length; ++i) {
+                final String data = nodes.get(i).getTextContent();
+                array[i] = data.isEmpty() ? 0 : Short.parseShort(data);
+            }
+            return array;
+        }
+        if (Byte.TYPE.equals(type)) {
+            final byte[] array = new byte[length];
+            for (int i = 0; i < length; ++i) {
+                final String data = nodes.get(i).getTextContent();
+                array[i] = data.isEmpty() ? 0 : Byte.parseByte(data);
+            }
+            return array;
         }
-        assert method.getAnnotation(XBRead.class) != null;
+        if (Boolean.TYPE.equals(type)) {
+            final boolean[] array = new boolean[length];
+            for (int i = 0; i < length; ++i) {
+                array[i] = Boolean.parseBoolean(nodes.get(i).getTextContent());
+            }
+            return array;
+        }
+        return null;
+    }
+
+    private void ensureValidComponentKind(final InvocationPlan plan) {
+        if ((InvocationPlan.ReturnKind.CONVERTED == plan.componentKind) || (InvocationPlan.ReturnKind.NODE == plan.componentKind) || (InvocationPlan.ReturnKind.PROJECTION == plan.componentKind)) {
+            return;
+        }
+        throw new IllegalArgumentException("Return type " + plan.componentType + " is not valid for list or array component type returning from method " + plan.method + " using the current type converter:" + projector.config().getTypeConverter()
+                + ". Please change the return type to a sub projection or add a conversion to the type converter.");
+    }
 
-        final Class<?> targetType = determineTargetTypeForList(method);
-        if (XBRead.class.equals(targetType)) {
-            throw new IllegalArgumentException("When using List as return type for method " + method + ", please specify the list content type in the " + XBRead.class.getSimpleName() + " annotaion. I can not determine it from the method signature.");
+    private Object toComponent(final Node componentNode, final InvocationPlan plan) {
+        switch (plan.componentKind) {
+        case CONVERTED:
+            return projector.config().getTypeConverter().convertTo(plan.componentType, componentNode.getTextContent());
+        case NODE:
+            return componentNode;
+        default:
+            return projector.projectSubNode(componentNode, plan.componentType);
         }
-        return targetType;
     }
 
     /**
-     * Extract the generic type of the List which currently is our return type.
+     * Create a component outside of an invocation, taking the document lock like a reading method
+     * would. Without a locking flag, concurrent access needs a thread safe DOM implementation.
      *
-     * @param method
-     * @return component type of List to be created.
+     * @param componentNode
+     * @param plan
+     * @return the component for the given node.
      */
-    private Class<?> determineTargetTypeForList(final Method method) {
-        assert List.class.equals(method.getReturnType());
-        final Type type = method.getGenericReturnType();
-        if (!(type instanceof ParameterizedType) || (((ParameterizedType) type).getActualTypeArguments() == null) || (((ParameterizedType) type).getActualTypeArguments().length < 1)) {
-            throw new IllegalArgumentException("When using List as return type for method " + method + ", please specify a generic type for the List. Otherwise I do not know which type I should fill the List with.");
+    private Object toLockedComponent(final Node componentNode, final InvocationPlan plan) {
+        final Document document = DOMHelper.getOwnerDocumentFor(componentNode);
+        if (projector.isFlagSet(XBProjector.Flags.SYNCHRONIZE_ON_DOCUMENTS)) {
+            synchronized (document) {
+                return toComponent(componentNode, plan);
+            }
+        }
+        if (!projector.isFlagSet(XBProjector.Flags.READ_WRITE_LOCK_ON_DOCUMENTS)) {
+            return toComponent(componentNode, plan);
+        }
+        // Creating the lock expanded deferred nodes, so readers do not modify the DOM.
+        final Lock lock = DOMHelper.getReadWriteLock(document).readLock();
+        lock.lock();
+        try {
+            return toComponent(componentNode, plan);
+        } finally {
+            lock.unlock();
         }
-        assert ((ParameterizedType) type).getActualTypeArguments().length == 1 : "";
-        return (Class<?>) ((ParameterizedType) type).getActualTypeArguments()[0];
     }
 
-    private Node getNodeForMethod(final Method method, final Object[] args) throws SAXException, IOException, ParserConfigurationException {
-        final XBDocURL docURL = method.getAnnotation(XBDocURL.class);
-        if (docURL != null) {
-            String uri = projector.config().getExternalizer().resolveURL(docURL.value(), method, args);
+    private Node getNodeForMethod(final InvocationPlan plan, final Object[] args) throws SAXException, IOException, ParserConfigurationException {
+        if (plan.docURL != null) {
+            String uri = projector.config().getExternalizer().resolveURL(plan.docURL, plan.method, args);
             final Map<String, String> requestParams = projector.io().filterRequestParamsFromParams(uri, args);
             uri = MessageFormat.format(uri, args);
-            return DOMHelper.getDocumentFromURL(projector.config().createDocumentBuilder(), uri, requestParams, projectionInterface);
+            return projector.config().getDocumentCache().getDocument(projector.config().as(XMLFactoriesConfig.class), projector.config().getHttpTransport(), uri, requestParams, projectionInterface);
         }
         return node;
     }
@@ -230,17 +365,17 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
      * Determine a methods return value that does not depend on the methods execution. Possible
      * values are void or the proxy itself (would be "this").
      *
-     * @param method
+     * @param plan
      * @return
      */
-    private Object getProxyReturnValueForMethod(final Object proxy, final Method method) {
-        if (!ReflectionHelper.hasReturnType(method)) {
+    private Object getProxyReturnValueForMethod(final Object proxy, final InvocationPlan plan) {
+        if (!plan.returnsValue) {
             return null;
         }
-        if (method.getReturnType().equals(method.getDeclaringClass())) {
+        if (plan.returnsProxy) {
             return proxy;
         }
-        throw new IllegalArgumentException("Method " + method + " has illegal return type \"" + method.getReturnType() + "\". I don't know what to return. I expected void or " + method.getDeclaringClass().getSimpleName());
+        throw new IllegalArgumentException("Method " + plan.method + " has illegal return type \"" + plan.returnType + "\". I don't know what to return. I expected void or " + plan.method.getDeclaringClass().getSimpleName());
     }
 
     /**
@@ -284,22 +419,247 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
 
     @Override
     public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        final XBRead readAnnotation = method.getAnnotation(XBRead.class);
-        if (readAnnotation != null) {
-            return invokeGetter(proxy, method, MessageFormat.format(projector.config().getExternalizer().resolveXPath(readAnnotation.value(), method, args), args), args);
+        return invoke(proxy, projector.getInvocationPlan(projectionInterface, method), args);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        try {
+            return invoke(proxy, projector.getInvocationPlan(projectionInterface, method, index), args);
+        } catch (Throwable e) {
+            throw undeclaredToRuntime(method, e);
+        }
+    }
+
+    @Override
+    public boolean invokeBoolean(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        final InvocationPlan plan = projector.getInvocationPlan(projectionInterface, method, index);
+        if (!isReadingBuiltInConversion(plan)) {
+            return ((Boolean) invoke(proxy, method, index, args)).booleanValue();
+        }
+        final String data = invokeStringGetter(plan, args);
+        return (!data.isEmpty()) && Boolean.parseBoolean(data);
+    }
+
+    @Override
+    public int invokeInt(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        final InvocationPlan plan = projector.getInvocationPlan(projectionInterface, method, index);
+        if (!isReadingBuiltInConversion(plan)) {
+            return ((Integer) invoke(proxy, method, index, args)).intValue();
+        }
+        final String data = invokeStringGetter(plan, args);
+        if (data.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(data);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException(e.getMessage() + " XPath was:" + formatPath(plan, args));
+        }
+    }
+
+    @Override
+    public long invokeLong(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        final InvocationPlan plan = projector.getInvocationPlan(projectionInterface, method, index);
+        if (!isReadingBuiltInConversion(plan)) {
+            return ((Long) invoke(proxy, method, index, args)).longValue();
+        }
+        final String data = invokeStringGetter(plan, args);
+        if (data.isEmpty()) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(data);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException(e.getMessage() + " XPath was:" + formatPath(plan, args));
+        }
+    }
+
+    @Override
+    public double invokeDouble(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        final InvocationPlan plan = projector.getInvocationPlan(projectionInterface, method, index);
+        if (!isReadingBuiltInConversion(plan)) {
+            return ((Double) invoke(proxy, method, index, args)).doubleValue();
+        }
+        final String data = invokeStringGetter(plan, args);
+        if (data.isEmpty()) {
+            return 0D;
+        }
+        try {
+            return Double.parseDouble(data);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException(e.getMessage() + " XPath was:" + formatPath(plan, args));
+        }
+    }
+
+    @Override
+    public Object writeReplace(final Object proxy) throws ObjectStreamException {
+        return new SerializedProjection(this);
+    }
+
+    /**
+     * Replaces instances of generated projection classes in a serialization stream. Generated
+     * classes can not be loaded by name, so the projection is created again on deserialization.
+     */
+    private static final class SerializedProjection implements Serializable {
+        private final ProjectionInvocationHandler handler;
+
+        SerializedProjection(final ProjectionInvocationHandler handler) {
+            this.handler = handler;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return handler.projector.createProjectionInstance(handler.projectionInterface, handler);
+        }
+    }
+
+    /**
+     * The primitive return types of reading methods may be parsed without boxing, as long as the
+     * conversion is not customized.
+     *
+     * @param plan
+     * @return true if the string value of the expression may be parsed directly.
+     */
+    private boolean isReadingBuiltInConversion(final InvocationPlan plan) {
+        if ((InvocationPlan.Kind.READ != plan.kind) || (InvocationPlan.ReturnKind.CONVERTED != plan.returnKind) || (!plan.returnType.isPrimitive())) {
+            return false;
+        }
+        final TypeConverter typeConverter = projector.config().getTypeConverter();
+        return (typeConverter.getClass() == DefaultTypeConverter.class) && ((DefaultTypeConverter) typeConverter).hasBuiltInConversion(plan.returnType);
+    }
+
+    /**
+     * Evaluate a reading method as string.
+     *
+     * @param plan
+     * @param args
+     * @return the string value of the methods expression.
+     * @throws Throwable
+     */
+    private String invokeStringGetter(final InvocationPlan plan, final Object[] args) throws Throwable {
+        try {
+            ensureCoverage(plan);
+            if (projector.isFlagSet(XBProjector.Flags.SYNCHRONIZE_ON_DOCUMENTS)) {
+                synchronized (DOMHelper.getOwnerDocumentFor(node)) {
+                    return evaluateAsString(plan, args);
+                }
+            }
+            final Lock lock = getDocumentLock(plan);
+            if (lock == null) {
+                return evaluateAsString(plan, args);
+            }
+            lock.lock();
+            try {
+                return evaluateAsString(plan, args);
+            } finally {
+                lock.unlock();
+            }
+        } catch (Throwable e) {
+            throw undeclaredToRuntime(plan.method, e);
         }
+    }
 
-        final XBWrite writeAnnotation = method.getAnnotation(XBWrite.class);
-        if (writeAnnotation != null) {
-            return invokeSetter(proxy, method, MessageFormat.format(projector.config().getExternalizer().resolveXPath(writeAnnotation.value(), method, args), args), args);
+    private String evaluateAsString(final InvocationPlan plan, final Object[] args) throws Throwable {
+        final Object[] previousArgs = plan.parameterizedPath == null ? null : ParameterizedXPath.bind(args);
+        try {
+            final Node node = getNodeForMethod(plan, args);
+            if (plan.simplePath != null) {
+                return plan.getSimplePathEvaluator().selectString(node);
+            }
+            return (String) compileXPath(DOMHelper.getOwnerDocumentFor(node), plan, formatPath(plan, args)).evaluate(node, XPathConstants.STRING);
+        } finally {
+            if (plan.parameterizedPath != null) {
+                ParameterizedXPath.unbind(previousArgs);
+            }
         }
+    }
 
-        final XBDelete delAnnotation = method.getAnnotation(XBDelete.class);
-        if (delAnnotation != null) {
-            return invokeDeleter(proxy, method, MessageFormat.format(projector.config().getExternalizer().resolveXPath(delAnnotation.value(), method, args), args));
+    /**
+     * Reading methods share the read lock of the document, all other methods take the write lock.
+     * Methods without projection annotation may be implemented by mixins changing the document.
+     *
+     * @param plan
+     * @return the lock to be held during the invocation or null if the projector does not use
+     *         read write locks.
+     */
+    private Lock getDocumentLock(final InvocationPlan plan) {
+        if (!projector.isFlagSet(XBProjector.Flags.READ_WRITE_LOCK_ON_DOCUMENTS)) {
+            return null;
+        }
+        ReadWriteLock lock = documentLock;
+        if (lock == null) {
+            lock = DOMHelper.getReadWriteLock(DOMHelper.getOwnerDocumentFor(node));
+            documentLock = lock;
+        }
+        return InvocationPlan.Kind.READ == plan.kind ? lock.readLock() : lock.writeLock();
+    }
+
+    /**
+     * Documents parsed for a projection interface contain only the nodes its reading methods need.
+     * Other methods fail instead of silently returning empty values.
+     *
+     * @param plan
+     */
+    private void ensureCoverage(final InvocationPlan plan) {
+        if (InvocationPlan.Kind.DELEGATE == plan.kind) {
+            return;
+        }
+        final ProjectionCoverage coverage = ProjectionCoverage.of(DOMHelper.getOwnerDocumentFor(node));
+        if (coverage == null) {
+            return;
+        }
+        if (InvocationPlan.Kind.READ != plan.kind) {
+            throw new IllegalStateException("Method " + plan.method + " would change a partial document. Documents read with readPruned() are read only.");
+        }
+        if (!coverage.isCovered(plan.method)) {
+            throw new IllegalStateException("Method " + plan.method + " reads nodes that are not covered by the partial document. Only static paths of element names are supported when reading with readPruned().");
+        }
+    }
+
+    private Object invoke(final Object proxy, final InvocationPlan plan, final Object[] args) throws Throwable {
+        ensureCoverage(plan);
+        if (projector.isFlagSet(XBProjector.Flags.SYNCHRONIZE_ON_DOCUMENTS)) {
+            synchronized (DOMHelper.getOwnerDocumentFor(node)) {
+                return invokePlan(proxy, plan, args);
+            }
+        }
+        final Lock lock = getDocumentLock(plan);
+        if (lock == null) {
+            return invokePlan(proxy, plan, args);
+        }
+        lock.lock();
+        try {
+            return invokePlan(proxy, plan, args);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object invokePlan(final Object proxy, final InvocationPlan plan, final Object[] args) throws Throwable {
+        final Method method = plan.method;
+        if (plan.parameterizedPath != null) {
+            final Object[] previousArgs = ParameterizedXPath.bind(args);
+            try {
+                if (InvocationPlan.Kind.READ == plan.kind) {
+                    return invokeGetter(proxy, plan, plan.parameterizedPath.format(args), args);
+                }
+                return invokeDeleter(proxy, plan, plan.parameterizedPath.format(args));
+            } finally {
+                ParameterizedXPath.unbind(previousArgs);
+            }
+        }
+        switch (plan.kind) {
+        case READ:
+            return invokeGetter(proxy, plan, resolvePath(plan, args), args);
+        case WRITE:
+            return invokeSetter(proxy, plan, resolvePath(plan, args), args);
+        case DELETE:
+            return invokeDeleter(proxy, plan, resolvePath(plan, args));
+        default:
+            break;
         }
 
-        final Class<?> methodsDeclaringInterface = ReflectionHelper.findDeclaringInterface(method, projectionInterface);
+        final Class<?> methodsDeclaringInterface = plan.declaringInterface;
         final Object customInvoker = projector.mixins().getProjectionMixin(projectionInterface, methodsDeclaringInterface);
 
         if (customInvoker != null) {
@@ -312,7 +672,7 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
             return method.invoke(defaultInvoker, args);
         }
 
-        if (ReflectionHelper.isDefaultMethod(method)) {
+        if (plan.isDefaultMethod) {
             if (defaultMethodInvoker == null) {
                 defaultMethodInvoker = ASMHelper.create(projectionInterface, proxy);
             }
@@ -328,14 +688,62 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
         throw new IllegalArgumentException("I don't known how to invoke method " + method + ". Did you forget to add a XB*-annotation or to register a mixin?");
     }
 
+    /**
+     * Compile the path with a pooled XPath instance. Compiled expressions do not refer to the XPath
+     * instance, so it is given back to the pool right away.
+     *
+     * @param document
+     * @param plan
+     * @param path
+     * @return compiled expression
+     * @throws XPathExpressionException
+     */
+    private XPathExpression compileXPath(final Document document, final InvocationPlan plan, final String path) throws XPathExpressionException {
+        final XPath xPath = projector.getFactoriesPool().borrowXPath(document);
+        try {
+            if (plan.parameterizedPath != null) {
+                xPath.setXPathVariableResolver(ParameterizedXPath.VARIABLE_RESOLVER);
+            }
+            return projector.compileXPath(xPath, path);
+        } finally {
+            projector.getFactoriesPool().release(xPath);
+        }
+    }
+
+    /**
+     * Resolve the XPath expression for a method invocation. Static expressions are taken from the
+     * plan, others are externalized and formatted with the invocation arguments.
+     *
+     * @param plan
+     * @param args
+     * @return XPath expression to be evaluated.
+     */
+    private String resolvePath(final InvocationPlan plan, final Object[] args) {
+        if (plan.staticPath != null) {
+            return plan.staticPath;
+        }
+        return MessageFormat.format(projector.config().getExternalizer().resolveXPath(plan.template, plan.method, args), args);
+    }
+
+    /**
+     * @param plan
+     * @param args
+     * @return XPath expression to be evaluated, with bound placeholders left as variables.
+     */
+    private String formatPath(final InvocationPlan plan, final Object[] args) {
+        if (plan.parameterizedPath != null) {
+            return plan.parameterizedPath.format(args);
+        }
+        return resolvePath(plan, args);
+    }
+
     /**
      * @param proxy
      * @param format
      */
-    private Object invokeDeleter(final Object proxy, final Method method, final String path) throws Throwable {
+    private Object invokeDeleter(final Object proxy, final InvocationPlan plan, final String path) throws Throwable {
         final Document document = DOMHelper.getOwnerDocumentFor(node);
-        final XPath xPath = projector.config().createXPath(document);
-        final XPathExpression expression = xPath.compile(path);
+        final XPathExpression expression = compileXPath(document, plan, path);
         NodeList nodes = (NodeList) expression.evaluate(node, XPathConstants.NODESET);
         for (int i = 0; i < nodes.getLength(); ++i) {
             if (Node.ATTRIBUTE_NODE == nodes.item(i).getNodeType()) {
@@ -349,63 +757,101 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
             }
             parentNode.removeChild(nodes.item(i));
         }
-        return getProxyReturnValueForMethod(proxy, method);
+        return getProxyReturnValueForMethod(proxy, plan);
     }
 
-    private Object invokeGetter(final Object proxy, final Method method, final String path, final Object[] args) throws Throwable {
-        final Node node = getNodeForMethod(method, args);
+    private Object invokeGetter(final Object proxy, final InvocationPlan plan, final String path, final Object[] args) throws Throwable {
+        final Node node = getNodeForMethod(plan, args);
+        if (plan.simplePath != null) {
+            return invokeSimpleGetter(plan, node);
+        }
         final Document document = DOMHelper.getOwnerDocumentFor(node);
-        final XPath xPath = projector.config().createXPath(document);
-        final XPathExpression expression = xPath.compile(path);
-        final Class<?> returnType = method.getReturnType();
-        if (projector.config().getTypeConverter().isConvertable(returnType)) {
+        final XPathExpression expression = compileXPath(document, plan, path);
+        final Class<?> returnType = plan.returnType;
+        switch (plan.returnKind) {
+        case CONVERTED:
             String data = (String) expression.evaluate(node, XPathConstants.STRING);
             try {
                 return projector.config().getTypeConverter().convertTo(returnType, data);
             } catch (NumberFormatException e) {
                 throw new NumberFormatException(e.getMessage() + " XPath was:" + path);
             }
-        }
-        if (Node.class.equals(returnType)) {
+        case NODE:
             return expression.evaluate(node, XPathConstants.NODE);
-        }
-
-        if (List.class.equals(returnType)) {
-            return evaluateAsList(expression, node, method);
-        }
-        if (returnType.isArray()) {
-            List<?> list = evaluateAsList(expression, node, method);
-            return list.toArray((Object[]) java.lang.reflect.Array.newInstance(returnType.getComponentType(), list.size()));
-        }
-        if (returnType.isInterface()) {
+        case LIST:
+            if (projector.isFlagSet(XBProjector.Flags.LAZY_LISTS)) {
+                return toLazyList(DOMHelper.asList((NodeList) expression.evaluate(node, XPathConstants.NODESET)), plan, true);
+            }
+            return evaluateAsList(expression, node, plan);
+        case SEQUENCE:
+            return ReflectionHelper.toSequence(returnType, toLazyList(DOMHelper.asList((NodeList) expression.evaluate(node, XPathConstants.NODESET)), plan, false));
+        case ARRAY:
+            return toArray(DOMHelper.asList((NodeList) expression.evaluate(node, XPathConstants.NODESET)), plan);
+        case PROJECTION:
             Node newNode = (Node) expression.evaluate(node, XPathConstants.NODE);
             if (newNode == null) {
                 return null;
             }
-            InternalProjection subprojection = (InternalProjection) projector.projectDOMNode(newNode, returnType);
+            InternalProjection subprojection = (InternalProjection) projector.projectSubNode(newNode, returnType);
             return subprojection;
+        default:
+            throw new IllegalArgumentException("Return type " + returnType + " of method " + plan.method + " is not supported. Please change to an projection interface, a List, an Array or one of current type converters types:" + projector.config().getTypeConverter());
         }
-        throw new IllegalArgumentException("Return type " + returnType + " of method " + method + " is not supported. Please change to an projection interface, a List, an Array or one of current type converters types:" + projector.config().getTypeConverter());
     }
 
-    private Object invokeSetter(final Object proxy, final Method method, final String path, final Object[] args) throws Throwable {
+    /**
+     * Evaluate a simple path by walking the DOM, without the XPath engine.
+     *
+     * @param plan
+     * @param node
+     * @return the value to return from the reading method.
+     */
+    private Object invokeSimpleGetter(final InvocationPlan plan, final Node node) {
+        final DOMPath path = plan.getSimplePathEvaluator();
+        switch (plan.returnKind) {
+        case CONVERTED:
+            final String data = path.selectString(node);
+            try {
+                return projector.config().getTypeConverter().convertTo(plan.returnType, data);
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException(e.getMessage() + " XPath was:" + plan.staticPath);
+            }
+        case NODE:
+            return path.selectFirst(node);
+        case LIST:
+            if (projector.isFlagSet(XBProjector.Flags.LAZY_LISTS)) {
+                return toLazyList(path.selectAll(node), plan, true);
+            }
+            return toComponents(path.selectAll(node), plan);
+        case SEQUENCE:
+            return ReflectionHelper.toSequence(plan.returnType, toLazyList(path.selectAll(node), plan, false));
+        case ARRAY:
+            return toArray(path.selectAll(node), plan);
+        case PROJECTION:
+            final Node newNode = path.selectFirst(node);
+            return newNode == null ? null : projector.projectSubNode(newNode, plan.returnType);
+        default:
+            throw new IllegalArgumentException("Return type " + plan.returnType + " of method " + plan.method + " is not supported. Please change to an projection interface, a List, an Array or one of current type converters types:" + projector.config().getTypeConverter());
+        }
+    }
+
+    private Object invokeSetter(final Object proxy, final InvocationPlan plan, final String path, final Object[] args) throws Throwable {
+        final Method method = plan.method;
         if (!LEGAL_XPATH_SELECTORS_FOR_SETTERS.matcher(path).matches()) {
             throw new IllegalArgumentException("Method " + method + " was invoked as setter and did not have an XPATH expression with an absolute path to an element or attribute:\"" + path + "\"");
         }
-        if (!ReflectionHelper.hasParameters(method)) {
+        if (plan.valueType == null) {
             throw new IllegalArgumentException("Method " + method + " was invoked as setter but has no parameter. Please add a parameter so this method could actually change the DOM.");
         }
-        if (method.getAnnotation(XBDocURL.class) != null) {
+        if (plan.docURL != null) {
             throw new IllegalArgumentException("Method " + method + " was invoked as setter but has a @" + XBDocURL.class.getSimpleName() + " annotation. Defining setters on external projections is not valid because there is no DOM attached.");
         }
         final String pathToElement = path.replaceAll("\\[@", "[attribute::").replaceAll("/?@.*", "").replaceAll("\\[attribute::", "[@");
-        final Node settingNode = getNodeForMethod(method, args);
+        final Node settingNode = getNodeForMethod(plan, args);
         final Document document = DOMHelper.getOwnerDocumentFor(settingNode);
         assert document != null;
-        final int findIndexOfValue = findIndexOfValue(method);
-        final Object valueToSet = args[findIndexOfValue];
-        final Class<?> typeToSet = method.getParameterTypes()[findIndexOfValue];
-        final boolean isMultiValue = isMultiValue(typeToSet);
+        final Object valueToSet = args[plan.valueIndex];
+        final boolean isMultiValue = plan.isMultiValue;
 
         if ("/*".equals(pathToElement)) { // Setting a new root element.
             if (isMultiValue) {
@@ -413,7 +859,7 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
             }
             if (valueToSet == null) {
                 DOMHelper.setDocumentElement(document, null);
-                return getProxyReturnValueForMethod(proxy, method);
+                return getProxyReturnValueForMethod(proxy, plan);
             }
             if (!(valueToSet instanceof InternalProjection)) {
                 throw new IllegalArgumentException("Method " + method + " was invoked as setter changing the document root element. Expected value type was a projection so I can determine a element name. But you provided a " + valueToSet);
@@ -422,7 +868,7 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
             Element element = projection.getDOMBaseElement();
             assert element != null;
             DOMHelper.setDocumentElement(document, element);
-            return getProxyReturnValueForMethod(proxy, method);
+            return getProxyReturnValueForMethod(proxy, plan);
         }
 
         if (isMultiValue) {
@@ -434,11 +880,11 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
             final Element parentElement = DOMHelper.ensureElementExists(document, path2Parent);
             //   DOMHelper.removeAllChildrenBySelector(parentElement, elementSelector);
 //            if (valueToSet == null) {
-//                return getProxyReturnValueForMethod(proxy, method);
+//                return getProxyReturnValueForMethod(proxy, plan);
 //            }
             Collection<?> collection2Set = (valueToSet != null) && (valueToSet.getClass().isArray()) ? ReflectionHelper.array2ObjectList(valueToSet) : (Collection<?>) valueToSet;
             applyCollectionSetOnElement(collection2Set, parentElement, elementSelector);
-            return getProxyReturnValueForMethod(proxy, method);
+            return getProxyReturnValueForMethod(proxy, plan);
         }
 
         if (valueToSet instanceof InternalProjection) {
@@ -446,7 +892,7 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
             String elementSelector = pathToElement.replaceAll(".*/", "");
             Element parentNode = DOMHelper.ensureElementExists(document, pathToParent);
             applySingleSetProjectionOnElement((InternalProjection) valueToSet, parentNode, elementSelector);
-            return getProxyReturnValueForMethod(proxy, method);
+            return getProxyReturnValueForMethod(proxy, plan);
         }
 
         Element elementToChange;
@@ -460,22 +906,14 @@ final class ProjectionInvocationHandler implements InvocationHandler, Serializab
         if (path.replaceAll("\\[@", "[attribute::").contains("@")) {
             String attributeName = path.replaceAll(".*@", "");
             DOMHelper.setOrRemoveAttribute(elementToChange, attributeName, valueToSet == null ? null : valueToSet.toString());
-            return getProxyReturnValueForMethod(proxy, method);
+            return getProxyReturnValueForMethod(proxy, plan);
         }
         if (valueToSet == null) {
             DOMHelper.removeAllChildrenBySelector(elementToChange, "*");
         } else {
             elementToChange.setTextContent(valueToSet.toString());
         }
-        return getProxyReturnValueForMethod(proxy, method);
-    }
-
-    /**
-     * @param typeToSet
-     * @return
-     */
-    private boolean isMultiValue(final Class<?> type) {
-        return type.isArray() || Collection.class.isAssignableFrom(type);
+        return getProxyReturnValueForMethod(proxy, plan);
     }
 
 }
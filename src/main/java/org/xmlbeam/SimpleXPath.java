@@ -0,0 +1,180 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.Node;
+import org.xmlbeam.util.intern.DOMPath;
+
+/**
+ * A path of child element steps, optionally followed by an attribute step, evaluated by walking
+ * the DOM directly instead of using the XPath engine. This is the subset of XPath accepted by
+ * setters, without parent steps: <code>/a/b/@c</code>, <code>x/y[@id='3']</code>,
+ * <code>./a[b='x']/*</code>. Names must not have a prefix, so they select nodes without namespace
+ * just like XPath does. Expressions outside this subset are not parsed and left to the XPath
+ * engine. Notice that this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+final class SimpleXPath extends DOMPath {
+
+    private static final String NAME = "[a-zA-Z_][a-zA-Z0-9_.\\-]*";
+    private static final Pattern ELEMENT_STEP = Pattern.compile("(" + NAME + "|\\*)(\\[(@?)(" + NAME + ")='([^']*)'\\])?");
+    private static final Pattern ATTRIBUTE_STEP = Pattern.compile("@(" + NAME + ")");
+
+    /**
+     * A child element step with an optional predicate comparing an attribute or a child element to
+     * a string.
+     */
+    static final class Step {
+        /**
+         * Name of the selected elements or null for any element.
+         */
+        final String name;
+
+        /**
+         * Name of the attribute or child element compared by the predicate, or null if the step
+         * has no predicate.
+         */
+        final String predicateName;
+        final boolean isAttributePredicate;
+        final String predicateValue;
+
+        Step(final String name, final String predicateName, final boolean isAttributePredicate, final String predicateValue) {
+            this.name = name;
+            this.predicateName = predicateName;
+            this.isAttributePredicate = isAttributePredicate;
+            this.predicateValue = predicateValue;
+        }
+    }
+
+    final boolean isAbsolute;
+    final Step[] steps;
+
+    /**
+     * Name of the selected attribute or null if the path selects elements.
+     */
+    final String attributeName;
+
+    private SimpleXPath(final boolean isAbsolute, final Step[] steps, final String attributeName) {
+        this.isAbsolute = isAbsolute;
+        this.steps = steps;
+        this.attributeName = attributeName;
+    }
+
+    /**
+     * @param path
+     * @return a simple path or null if the expression is not part of the supported subset.
+     */
+    static SimpleXPath parse(final String path) {
+        String remaining = path.trim();
+        final boolean isAbsolute = remaining.startsWith("/");
+        if (isAbsolute) {
+            remaining = remaining.substring(1);
+        } else if (remaining.startsWith("./")) {
+            remaining = remaining.substring(2);
+        }
+        if (remaining.isEmpty()) {
+            return null;
+        }
+        final String[] parts = remaining.split("/", -1);
+        final List<Step> steps = new ArrayList<Step>(parts.length);
+        String attributeName = null;
+        for (int i = 0; i < parts.length; ++i) {
+            final Matcher attributeMatcher = ATTRIBUTE_STEP.matcher(parts[i]);
+            if (attributeMatcher.matches() && (i == (parts.length - 1))) {
+                attributeName = attributeMatcher.group(1);
+                break;
+            }
+            final Matcher elementMatcher = ELEMENT_STEP.matcher(parts[i]);
+            if (!elementMatcher.matches()) {
+                return null;
+            }
+            final String name = "*".equals(elementMatcher.group(1)) ? null : elementMatcher.group(1);
+            steps.add(new Step(name, elementMatcher.group(4), "@".equals(elementMatcher.group(3)), elementMatcher.group(5)));
+        }
+        return new SimpleXPath(isAbsolute, steps.toArray(new Step[steps.size()]), attributeName);
+    }
+
+    @Override
+    public Node selectFirst(final Node context) {
+        return selectFirst(startNode(context), 0);
+    }
+
+    @Override
+    public List<Node> selectAll(final Node context) {
+        final List<Node> nodes = new ArrayList<Node>();
+        selectAll(startNode(context), 0, nodes);
+        return nodes;
+    }
+
+    private Node startNode(final Node context) {
+        return isAbsolute ? rootOf(context) : context;
+    }
+
+    private Node selectFirst(final Node node, final int stepIndex) {
+        if (stepIndex == steps.length) {
+            return attributeName == null ? node : findAttribute(node, attributeName);
+        }
+        if (!hasChildElements(node)) {
+            return null;
+        }
+        final Step step = steps[stepIndex];
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!matches(child, step)) {
+                continue;
+            }
+            final Node result = selectFirst(child, stepIndex + 1);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private void selectAll(final Node node, final int stepIndex, final List<Node> nodes) {
+        if (stepIndex == steps.length) {
+            final Node result = attributeName == null ? node : findAttribute(node, attributeName);
+            if (result != null) {
+                nodes.add(result);
+            }
+            return;
+        }
+        if (!hasChildElements(node)) {
+            return;
+        }
+        final Step step = steps[stepIndex];
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (matches(child, step)) {
+                selectAll(child, stepIndex + 1, nodes);
+            }
+        }
+    }
+
+    private static boolean matches(final Node node, final Step step) {
+        if ((Node.ELEMENT_NODE != node.getNodeType()) || ((step.name != null) && (!hasName(node, step.name)))) {
+            return false;
+        }
+        if (step.predicateName == null) {
+            return true;
+        }
+        return step.isAttributePredicate ? hasAttributeValue(node, step.predicateName, step.predicateValue) : hasChildValue(node, step.predicateName, step.predicateValue);
+    }
+}
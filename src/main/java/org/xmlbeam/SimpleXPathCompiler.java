@@ -0,0 +1,250 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.w3c.dom.Node;
+import org.xmlbeam.util.intern.DOMPath;
+import org.xmlbeam.util.intern.org.objectweb.asm.ClassWriter;
+import org.xmlbeam.util.intern.org.objectweb.asm.Label;
+import org.xmlbeam.util.intern.org.objectweb.asm.MethodVisitor;
+import org.xmlbeam.util.intern.org.objectweb.asm.Opcodes;
+import org.xmlbeam.util.intern.org.objectweb.asm.Type;
+
+/**
+ * Compiles a {@link SimpleXPath} into a class walking the DOM with one nested loop per step. Names
+ * and predicate values become constants of the generated code, so the JIT can optimize the whole
+ * lookup instead of interpreting the steps. One class is generated per distinct path and shared by
+ * all methods using it. Notice that this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+final class SimpleXPathCompiler implements Opcodes {
+
+    private static final String DOM_PATH = Type.getInternalName(DOMPath.class);
+    private static final String NODE = Type.getInternalName(Node.class);
+    private static final String NODE_DESCRIPTOR = Type.getDescriptor(Node.class);
+    private static final String STRING_DESCRIPTOR = Type.getDescriptor(String.class);
+    private static final String LIST_DESCRIPTOR = Type.getDescriptor(List.class);
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private static final int MAX_COMPILED_PATHS = 512;
+
+    /**
+     * Compiled paths by expression, least recently used first. The interpreter marks paths that
+     * could not be compiled. Paths are referenced weakly, so a generated class and its class loader
+     * can be unloaded as soon as no invocation plan uses it any more.
+     */
+    @SuppressWarnings("serial")
+    private static final Map<String, WeakReference<DOMPath>> COMPILED_PATHS = new LinkedHashMap<String, WeakReference<DOMPath>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, WeakReference<DOMPath>> eldest) {
+            return size() > MAX_COMPILED_PATHS;
+        }
+    };
+
+    private SimpleXPathCompiler() {
+    }
+
+    /**
+     * @param path
+     * @param expression
+     *            the expression the path was parsed from, used to share compiled classes.
+     * @return the compiled path or the given path if it can not be compiled.
+     */
+    static DOMPath compile(final SimpleXPath path, final String expression) {
+        synchronized (COMPILED_PATHS) {
+            final WeakReference<DOMPath> reference = COMPILED_PATHS.get(expression);
+            DOMPath compiledPath = reference == null ? null : reference.get();
+            if (compiledPath != null) {
+                return compiledPath;
+            }
+            try {
+                final String className = "XBPath$" + CLASS_COUNTER.incrementAndGet();
+                final Class<?> clazz = new CompilerClassLoader(SimpleXPathCompiler.class.getClassLoader()).defineClass(className, getClassData(className, path));
+                compiledPath = (DOMPath) clazz.getDeclaredConstructor().newInstance();
+            } catch (InstantiationException e) {
+                compiledPath = path;
+            } catch (IllegalAccessException e) {
+                compiledPath = path;
+            } catch (InvocationTargetException e) {
+                compiledPath = path;
+            } catch (NoSuchMethodException e) {
+                compiledPath = path;
+            } catch (SecurityException e) {
+                // Not allowed to create a class loader, keep on interpreting.
+                compiledPath = path;
+            } catch (LinkageError e) {
+                // Including VerifyError, the generated class was rejected. Keep on interpreting.
+                compiledPath = path;
+            }
+            COMPILED_PATHS.put(expression, new WeakReference<DOMPath>(compiledPath));
+            return compiledPath;
+        }
+    }
+
+    private static final class CompilerClassLoader extends ClassLoader {
+        CompilerClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> defineClass(final String name, final byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+
+    static byte[] getClassData(final String className, final SimpleXPath path) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, DOM_PATH, null);
+        final MethodVisitor constructor = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, DOM_PATH, "<init>", "()V", false);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        addSelectMethod(cw, path, false);
+        addSelectMethod(cw, path, true);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generate <code>selectFirst(Node)</code> or <code>selectAll(Node)</code>. Local variable 1 is
+     * the context node. For <code>selectAll</code> variable 2 holds the result list. The following
+     * variables hold the start node and the current element of each step, the last one is used for
+     * the selected attribute.
+     */
+    private static void addSelectMethod(final ClassWriter cw, final SimpleXPath path, final boolean isSelectAll) {
+        final String name = isSelectAll ? "selectAll" : "selectFirst";
+        final String descriptor = "(" + NODE_DESCRIPTOR + ")" + (isSelectAll ? LIST_DESCRIPTOR : NODE_DESCRIPTOR);
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_FINAL, name, descriptor, null, null);
+        mv.visitCode();
+        final int firstNodeSlot = isSelectAll ? 3 : 2;
+        if (isSelectAll) {
+            mv.visitTypeInsn(NEW, Type.getInternalName(ArrayList.class));
+            mv.visitInsn(DUP);
+            mv.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(ArrayList.class), "<init>", "()V", false);
+            mv.visitVarInsn(ASTORE, 2);
+        }
+        mv.visitVarInsn(ALOAD, 1);
+        if (path.isAbsolute) {
+            mv.visitMethodInsn(INVOKESTATIC, DOM_PATH, "rootOf", "(" + NODE_DESCRIPTOR + ")" + NODE_DESCRIPTOR, false);
+        }
+        mv.visitVarInsn(ASTORE, firstNodeSlot);
+        final Label end = new Label();
+        if (path.steps.length == 0) {
+            emitSelection(mv, path, firstNodeSlot, firstNodeSlot + 1, isSelectAll, end);
+        } else {
+            mv.visitVarInsn(ALOAD, firstNodeSlot);
+            mv.visitMethodInsn(INVOKESTATIC, DOM_PATH, "hasChildElements", "(" + NODE_DESCRIPTOR + ")Z", false);
+            mv.visitJumpInsn(IFEQ, end);
+            emitStep(mv, path, 0, firstNodeSlot, isSelectAll);
+        }
+        mv.visitLabel(end);
+        if (isSelectAll) {
+            mv.visitVarInsn(ALOAD, 2);
+        } else {
+            mv.visitInsn(ACONST_NULL);
+        }
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Loop over the children of the node in the given slot, skipping the ones not matching the
+     * step.
+     */
+    private static void emitStep(final MethodVisitor mv, final SimpleXPath path, final int stepIndex, final int parentSlot, final boolean isSelectAll) {
+        final SimpleXPath.Step step = path.steps[stepIndex];
+        final int childSlot = parentSlot + 1;
+        final Label loop = new Label();
+        final Label next = new Label();
+        final Label exit = new Label();
+        mv.visitVarInsn(ALOAD, parentSlot);
+        mv.visitMethodInsn(INVOKEINTERFACE, NODE, "getFirstChild", "()" + NODE_DESCRIPTOR, true);
+        mv.visitVarInsn(ASTORE, childSlot);
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ALOAD, childSlot);
+        mv.visitJumpInsn(IFNULL, exit);
+        mv.visitVarInsn(ALOAD, childSlot);
+        mv.visitMethodInsn(INVOKEINTERFACE, NODE, "getNodeType", "()S", true);
+        mv.visitInsn(ICONST_0 + Node.ELEMENT_NODE);
+        mv.visitJumpInsn(IF_ICMPNE, next);
+        if (step.name != null) {
+            mv.visitVarInsn(ALOAD, childSlot);
+            mv.visitLdcInsn(step.name);
+            mv.visitMethodInsn(INVOKESTATIC, DOM_PATH, "hasName", "(" + NODE_DESCRIPTOR + STRING_DESCRIPTOR + ")Z", false);
+            mv.visitJumpInsn(IFEQ, next);
+        }
+        if (step.predicateName != null) {
+            mv.visitVarInsn(ALOAD, childSlot);
+            mv.visitLdcInsn(step.predicateName);
+            mv.visitLdcInsn(step.predicateValue);
+            mv.visitMethodInsn(INVOKESTATIC, DOM_PATH, step.isAttributePredicate ? "hasAttributeValue" : "hasChildValue", "(" + NODE_DESCRIPTOR + STRING_DESCRIPTOR + STRING_DESCRIPTOR + ")Z", false);
+            mv.visitJumpInsn(IFEQ, next);
+        }
+        if (stepIndex == (path.steps.length - 1)) {
+            emitSelection(mv, path, childSlot, childSlot + 1, isSelectAll, next);
+        } else {
+            emitStep(mv, path, stepIndex + 1, childSlot, isSelectAll);
+        }
+        mv.visitLabel(next);
+        mv.visitVarInsn(ALOAD, childSlot);
+        mv.visitMethodInsn(INVOKEINTERFACE, NODE, "getNextSibling", "()" + NODE_DESCRIPTOR, true);
+        mv.visitVarInsn(ASTORE, childSlot);
+        mv.visitJumpInsn(GOTO, loop);
+        mv.visitLabel(exit);
+    }
+
+    /**
+     * Return or collect the node in the given slot, or its attribute if the path ends with an
+     * attribute step. Continue at the given label if there is nothing to select.
+     */
+    private static void emitSelection(final MethodVisitor mv, final SimpleXPath path, final int nodeSlot, final int attributeSlot, final boolean isSelectAll, final Label nothingSelected) {
+        int selectedSlot = nodeSlot;
+        if (path.attributeName != null) {
+            mv.visitVarInsn(ALOAD, nodeSlot);
+            mv.visitLdcInsn(path.attributeName);
+            mv.visitMethodInsn(INVOKESTATIC, DOM_PATH, "findAttribute", "(" + NODE_DESCRIPTOR + STRING_DESCRIPTOR + ")" + NODE_DESCRIPTOR, false);
+            mv.visitVarInsn(ASTORE, attributeSlot);
+            mv.visitVarInsn(ALOAD, attributeSlot);
+            mv.visitJumpInsn(IFNULL, nothingSelected);
+            selectedSlot = attributeSlot;
+        }
+        if (isSelectAll) {
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitVarInsn(ALOAD, selectedSlot);
+            mv.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(List.class), "add", "(Ljava/lang/Object;)Z", true);
+            mv.visitInsn(POP);
+            if (path.steps.length == 0) {
+                mv.visitJumpInsn(GOTO, nothingSelected);
+            }
+            return;
+        }
+        mv.visitVarInsn(ALOAD, selectedSlot);
+        mv.visitInsn(ARETURN);
+    }
+}
@@ -19,11 +19,15 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.lang.ref.WeakReference;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
@@ -35,17 +39,20 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.bind.annotation.XmlValue;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
@@ -61,14 +68,22 @@ import org.xmlbeam.config.XMLFactoriesConfig;
 import org.xmlbeam.dom.DOMAccess;
 import org.xmlbeam.externalizer.Externalizer;
 import org.xmlbeam.externalizer.ExternalizerAdapter;
+import org.xmlbeam.io.XBAsyncIO;
+import org.xmlbeam.io.XBDefaultHttpTransport;
+import org.xmlbeam.io.XBDocumentCache;
 import org.xmlbeam.io.XBFileIO;
+import org.xmlbeam.io.XBFilesIO;
+import org.xmlbeam.io.XBHttpTransport;
 import org.xmlbeam.io.XBStreamInput;
 import org.xmlbeam.io.XBStreamOutput;
 import org.xmlbeam.io.XBUrlIO;
 import org.xmlbeam.types.DefaultTypeConverter;
 import org.xmlbeam.types.TypeConverter;
 import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.DOMSerializer;
+import org.xmlbeam.util.intern.ProjectionClassGenerator;
 import org.xmlbeam.util.intern.ReflectionHelper;
+import org.xmlbeam.util.intern.XMLFactoriesPool;
 
 /**
  * <p>
@@ -126,6 +141,16 @@ public class XBProjector implements Serializable, ProjectionFactory {
 
     private static final Externalizer NOOP_EXTERNALIZER = new ExternalizerAdapter();
 
+    /**
+     * Handler of the proxies created to obtain proxy classes.
+     */
+    private static final InvocationHandler UNUSED_HANDLER = new InvocationHandler() {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
     private final ConfigBuilder configBuilder = new ConfigBuilder();
 
     private Externalizer externalizer = NOOP_EXTERNALIZER;
@@ -192,12 +217,10 @@ public class XBProjector implements Serializable, ProjectionFactory {
         public String asString() {
             try {
                 final StringWriter writer = new StringWriter();
-                config().createTransformer().transform(new DOMSource(getDOMNode()), new StreamResult(writer));
+                DOMSerializer.serialize(xMLFactoriesConfig, getDOMNode(), writer);
                 final String output = writer.getBuffer().toString();
                 return output;
-            } catch (TransformerConfigurationException e) {
-                throw new RuntimeException(e);
-            } catch (TransformerException e) {
+            } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
@@ -272,6 +295,8 @@ public class XBProjector implements Serializable, ProjectionFactory {
         @Override
         public ConfigBuilder setTypeConverter(TypeConverter converter) {
             XBProjector.this.typeConverter = converter;
+            invocationPlans.clear();
+            indexedInvocationPlans.clear();
             return this;
         }
 
@@ -281,6 +306,8 @@ public class XBProjector implements Serializable, ProjectionFactory {
         @Override
         public ConfigBuilder setExternalizer(Externalizer e10r) {
             XBProjector.this.externalizer = e10r == null ? NOOP_EXTERNALIZER : e10r;
+            invocationPlans.clear();
+            indexedInvocationPlans.clear();
             return this;
         }
 
@@ -299,6 +326,75 @@ public class XBProjector implements Serializable, ProjectionFactory {
             return clazz.cast(getExternalizer());
         }
 
+        /**
+         * Limit the number of compiled XPath expressions kept by this projector. Compiled
+         * expressions are cached per thread, so this limit applies to each thread separately.
+         * 
+         * @param size
+         *            maximum number of cached expressions per thread. Zero disables caching.
+         * @return this for convenience.
+         */
+        public ConfigBuilder setXPathCacheSize(int size) {
+            XBProjector.this.xPathCacheSize = size;
+            xPathExpressions.setMaxSize(size);
+            return this;
+        }
+
+        /**
+         * @return maximum number of compiled XPath expressions cached per thread.
+         */
+        public int getXPathCacheSize() {
+            return XBProjector.this.xPathCacheSize;
+        }
+
+        /**
+         * Access the cache of documents loaded from URLs. It is disabled until a maximum size is
+         * set.
+         * 
+         * @return the document cache of this projector.
+         */
+        public XBDocumentCache getDocumentCache() {
+            return XBProjector.this.documentCache;
+        }
+
+        /**
+         * Replace the client used for HTTP requests of this projector.
+         * 
+         * @param transport
+         *            null restores the default transport.
+         * @return this for convenience.
+         */
+        public ConfigBuilder setHttpTransport(XBHttpTransport transport) {
+            XBProjector.this.httpTransport = transport == null ? new XBDefaultHttpTransport() : transport;
+            return this;
+        }
+
+        /**
+         * @return the client used for HTTP requests of this projector.
+         */
+        public XBHttpTransport getHttpTransport() {
+            return XBProjector.this.httpTransport;
+        }
+
+        /**
+         * Set the executor running the operations of {@link IOBuilder#async()}.
+         * 
+         * @param executor
+         *            null restores the default, see {@link XBAsyncIO#getDefaultExecutor()}.
+         * @return this for convenience.
+         */
+        public ConfigBuilder setAsyncExecutor(Executor executor) {
+            XBProjector.this.asyncExecutor = executor;
+            return this;
+        }
+
+        /**
+         * @return the executor running asynchronous IO operations.
+         */
+        public Executor getAsyncExecutor() {
+            return XBProjector.this.asyncExecutor == null ? XBAsyncIO.getDefaultExecutor() : XBProjector.this.asyncExecutor;
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -431,6 +527,22 @@ public class XBProjector implements Serializable, ProjectionFactory {
             return new XBStreamInput(XBProjector.this, is);
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public XBFilesIO files(File directory, String glob) {
+            return new XBFilesIO(XBProjector.this, directory, glob);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public XBAsyncIO async() {
+            return new XBAsyncIO(XBProjector.this, config().getAsyncExecutor());
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -499,8 +611,7 @@ public class XBProjector implements Serializable, ProjectionFactory {
      */
     @Override
     public <T> T projectEmptyDocument(Class<T> projectionInterface) {
-        Document document = xMLFactoriesConfig.createDocumentBuilder().newDocument();
-        return projectDOMNode(document, projectionInterface);
+        return projectDOMNode(newDocument(), projectionInterface);
     }
 
     /**
@@ -508,8 +619,7 @@ public class XBProjector implements Serializable, ProjectionFactory {
      */
     @Override
     public <T> T projectEmptyElement(final String name, Class<T> projectionInterface) {
-        Document document = xMLFactoriesConfig.createDocumentBuilder().newDocument();
-        Element element = document.createElement(name);
+        Element element = newDocument().createElement(name);
         return projectDOMNode(element, projectionInterface);
     }
 
@@ -528,7 +638,7 @@ public class XBProjector implements Serializable, ProjectionFactory {
     @Override
     @SuppressWarnings("unchecked")
     public <T> T projectDOMNode(final Node documentOrElement, final Class<T> projectionInterface) {
-        ensureIsValidProjectionInterface(projectionInterface);
+        final Constructor<?> constructor = getProjectionConstructor(projectionInterface);
 
         if (documentOrElement == null) {
             throw new IllegalArgumentException("Parameter node must not be null");
@@ -544,19 +654,62 @@ public class XBProjector implements Serializable, ProjectionFactory {
         defaultInvokers.put(DOMAccess.class, invoker);
         defaultInvokers.put(Object.class, invoker);
         final ProjectionInvocationHandler projectionInvocationHandler = new ProjectionInvocationHandler(XBProjector.this, documentOrElement, projectionInterface, defaultInvokers);
-        if (flags.contains(Flags.SYNCHRONIZE_ON_DOCUMENTS)) {
-            final Document document = DOMHelper.getOwnerDocumentFor(documentOrElement);
-            InvocationHandler synchronizedInvocationHandler = new InvocationHandler() {
-                @Override
-                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                    synchronized (document) {
-                        return projectionInvocationHandler.invoke(proxy, method, args);
-                    }
-                }
-            };
-            return ((T) Proxy.newProxyInstance(projectionInterface.getClassLoader(), new Class[] { projectionInterface, InternalProjection.class, Serializable.class }, synchronizedInvocationHandler));
+        return createProjectionInstance(constructor, projectionInvocationHandler);
+    }
+
+    /**
+     * Get the constructor for projections of the given interface. The interface is validated only
+     * once per projector, because projections of the same interface are created over and over
+     * again, e.g. for each element of a list of subprojections.
+     *
+     * @param projectionInterface
+     * @return constructor of a {@link Proxy} class or a generated class if this projector has the
+     *         flag {@link Flags#GENERATE_PROJECTION_CLASSES}.
+     */
+    private Constructor<?> getProjectionConstructor(final Class<?> projectionInterface) {
+        Constructor<?> constructor = projectionInterface == null ? null : projectionConstructors.get(projectionInterface);
+        if (constructor != null) {
+            return constructor;
+        }
+        ensureIsValidProjectionInterface(projectionInterface);
+        final Class<?>[] interfaces = new Class[] { projectionInterface, InternalProjection.class, Serializable.class };
+        if (flags.contains(Flags.GENERATE_PROJECTION_CLASSES)) {
+            constructor = ProjectionClassGenerator.getConstructor(projectionInterface, interfaces);
+        }
+        if (constructor == null) {
+            try {
+                // Proxy.getProxyClass() is deprecated, so the class is taken from a throwaway proxy.
+                constructor = Proxy.newProxyInstance(projectionInterface.getClassLoader(), interfaces, UNUSED_HANDLER).getClass().getConstructor(InvocationHandler.class);
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        projectionConstructors.putIfAbsent(projectionInterface, constructor);
+        return constructor;
+    }
+
+    /**
+     * Create a projection object for a deserialized invocation handler.
+     *
+     * @param projectionInterface
+     * @param handler
+     * @return a new projection.
+     */
+    <T> T createProjectionInstance(final Class<T> projectionInterface, final ProjectionInvocationHandler handler) {
+        return createProjectionInstance(getProjectionConstructor(projectionInterface), handler);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T createProjectionInstance(final Constructor<?> constructor, final ProjectionInvocationHandler handler) {
+        try {
+            return (T) constructor.newInstance(handler);
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
         }
-        return ((T) Proxy.newProxyInstance(projectionInterface.getClassLoader(), new Class[] { projectionInterface, InternalProjection.class, Serializable.class }, projectionInvocationHandler));
     }
 
     /**
@@ -574,9 +727,10 @@ public class XBProjector implements Serializable, ProjectionFactory {
 
     /**
      * Marker interface to determine if a Projection instance was created by a Projector. This will
-     * be applied automatically to projections.
+     * be applied automatically to projections. Notice that this interface is not part of the
+     * public API. It is public only to be implemented by generated projection classes.
      */
-    interface InternalProjection extends DOMAccess {
+    public interface InternalProjection extends DOMAccess {
     }
 
     private final XMLFactoriesConfig xMLFactoriesConfig;
@@ -585,13 +739,104 @@ public class XBProjector implements Serializable, ProjectionFactory {
 
     private TypeConverter typeConverter = new DefaultTypeConverter();
 
+    /**
+     * Invocation plans for projection methods, grouped by projection interface. Plans depend on
+     * the type converter and the externalizer, so they are discarded when one of them changes.
+     */
+    private transient ConcurrentMap<Class<?>, ConcurrentMap<Method, InvocationPlan>> invocationPlans = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, InvocationPlan>>();
+
+    /**
+     * Invocation plans by index in the method table of generated projection classes.
+     */
+    private transient ConcurrentMap<Class<?>, InvocationPlan[]> indexedInvocationPlans = new ConcurrentHashMap<Class<?>, InvocationPlan[]>();
+
+    /**
+     * Projection constructors by validated projection interface.
+     */
+    private transient ConcurrentMap<Class<?>, Constructor<?>> projectionConstructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+    private int xPathCacheSize = XPathExpressionCache.DEFAULT_SIZE;
+
+    private transient XPathExpressionCache xPathExpressions = new XPathExpressionCache(xPathCacheSize);
+
+    private final XBDocumentCache documentCache = new XBDocumentCache();
+
+    private transient XBHttpTransport httpTransport = new XBDefaultHttpTransport();
+
+    private transient Executor asyncExecutor;
+
+    private transient XMLFactoriesPool factoriesPool;
+
+    private static final AtomicLong PROJECTOR_COUNT = new AtomicLong();
+
+    /**
+     * User data key of the sub projections by node and projection interface, used with the flag
+     * {@link Flags#CACHE_SUBPROJECTIONS}. Each document keeps its own map, so readers of different
+     * documents do not contend.
+     */
+    private transient String subprojectionsKey = XBProjector.class.getName() + ".subprojections." + PROJECTOR_COUNT.incrementAndGet();
+
 // private XBProjector(Set<Flags>flags,XMLFactoriesConfig xMLFactoriesConfig) {
 // this.xMLFactoriesConfig = xMLFactoriesConfig;
 // this.isSynchronizeOnDocuments = flags.contains(Flags.SYNCHRONIZE_ON_DOCUMENTS);
 // }
 
     public enum Flags {
-        SYNCHRONIZE_ON_DOCUMENTS, TO_STRING_RENDERS_XML, OMIT_EMPTY_NODES
+        SYNCHRONIZE_ON_DOCUMENTS, TO_STRING_RENDERS_XML, OMIT_EMPTY_NODES,
+        /**
+         * Bind placeholders of reading and deleting projection methods as XPath variables instead
+         * of formatting them into the expression. This applies to placeholders forming a complete
+         * string literal, like <code>[@id=''{0}'']</code>. The expression is compiled once and
+         * reused for different arguments, which are always compared as strings and can not change
+         * the structure of the expression. Arguments are formatted like
+         * {@link java.text.MessageFormat} would do, so numbers use the grouping of the default
+         * locale. Placeholders in other positions, like
+         * <code>/a/x{0}/b</code>, are formatted as usual.
+         */
+        BIND_PLACEHOLDERS_AS_VARIABLES,
+        /**
+         * Create projections as instances of classes generated for each projection interface
+         * instead of using {@link java.lang.reflect.Proxy}. Generated classes dispatch methods by
+         * index and return primitive values without boxing. Projection interfaces referring to
+         * non public types are still projected via proxies.
+         */
+        GENERATE_PROJECTION_CLASSES,
+        /**
+         * Guard projection methods with a read write lock per document. Methods annotated with
+         * {@link XBRead} share the read lock, so concurrent readers do not block each other. All
+         * other methods take the write lock. Elements of iterators and streams returned by reading
+         * methods are created under the read lock as they are pulled. If
+         * {@link #SYNCHRONIZE_ON_DOCUMENTS} is set too, it takes precedence. The DOM is not thread
+         * safe for readers either, so concurrent readers are only safe as long as they walk the
+         * tree via <code>getFirstChild()</code> and <code>getNextSibling()</code>, like the XPath
+         * engine of the JDK does. Code reading the DOM of a projection concurrently must not use
+         * <code>getChildNodes()</code>.
+         */
+        READ_WRITE_LOCK_ON_DOCUMENTS,
+        /**
+         * Evaluate all expressions with the XPath engine. By default, static paths of reading
+         * methods consisting of child element steps and an optional attribute step (like
+         * <code>/a/b[@id='1']/@c</code>) are evaluated by walking the DOM directly.
+         */
+        XPATH_ENGINE_ONLY,
+        /**
+         * Return read only lists from reading methods returning a {@link java.util.List}. The list
+         * is backed by the selected nodes and creates an element, like a sub projection or a
+         * converted value, when it is accessed for the first time. So reading the size or the
+         * first element of a large result does not create all elements. Elements are created
+         * under the document lock of {@link #SYNCHRONIZE_ON_DOCUMENTS} or
+         * {@link #READ_WRITE_LOCK_ON_DOCUMENTS}. Without such a flag, accessing the list from
+         * several threads needs a thread safe DOM implementation.
+         */
+        LAZY_LISTS,
+        /**
+         * Return the same sub projection for a node and projection interface as long as it is in
+         * use, instead of creating a new projection on every invocation of a reading method.
+         * The cache is kept per document. Nodes and projections are weakly referenced, so the
+         * entries of removed nodes or unused projections are not dropped on removal, but when the
+         * garbage collector reclaims them.
+         */
+        CACHE_SUBPROJECTIONS
     }
 
     /**
@@ -620,6 +865,156 @@ public class XBProjector implements Serializable, ProjectionFactory {
         this.xMLFactoriesConfig = xMLFactoriesConfig;
         // isSynchronizeOnDocuments = false;
         this.flags = unfold(flags);
+        this.factoriesPool = XMLFactoriesPool.of(xMLFactoriesConfig);
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        invocationPlans = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, InvocationPlan>>();
+        indexedInvocationPlans = new ConcurrentHashMap<Class<?>, InvocationPlan[]>();
+        projectionConstructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+        xPathExpressions = new XPathExpressionCache(xPathCacheSize);
+        httpTransport = new XBDefaultHttpTransport();
+        subprojectionsKey = XBProjector.class.getName() + ".subprojections." + PROJECTOR_COUNT.incrementAndGet();
+        factoriesPool = XMLFactoriesPool.of(xMLFactoriesConfig);
+    }
+
+    /**
+     * @return pool of DocumentBuilders and XPath instances created by the configuration.
+     */
+    XMLFactoriesPool getFactoriesPool() {
+        return factoriesPool;
+    }
+
+    private Document newDocument() {
+        final DocumentBuilder documentBuilder = factoriesPool.borrowDocumentBuilder();
+        try {
+            return documentBuilder.newDocument();
+        } finally {
+            factoriesPool.release(documentBuilder);
+        }
+    }
+
+    /**
+     * Compile an XPath expression or reuse a compiled version from a former invocation by the
+     * current thread.
+     * 
+     * @param xPath
+     * @param expression
+     * @return compiled expression
+     * @throws XPathExpressionException
+     */
+    XPathExpression compileXPath(final XPath xPath, final String expression) throws XPathExpressionException {
+        return xPathExpressions.compile(xPath, expression);
+    }
+
+    /**
+     * Create a sub projection returned by a reading method. With the flag
+     * {@link Flags#CACHE_SUBPROJECTIONS}, a projection still in use for the node is returned
+     * instead.
+     * 
+     * @param node
+     * @param projectionInterface
+     * @return projection of the node.
+     */
+    <T> T projectSubNode(final Node node, final Class<T> projectionInterface) {
+        if (!flags.contains(Flags.CACHE_SUBPROJECTIONS)) {
+            return projectDOMNode(node, projectionInterface);
+        }
+        final Map<Node, Map<Class<?>, WeakReference<Object>>> subprojections = getSubprojections(DOMHelper.getOwnerDocumentFor(node));
+        synchronized (subprojections) {
+            Map<Class<?>, WeakReference<Object>> projections = subprojections.get(node);
+            if (projections == null) {
+                projections = new HashMap<Class<?>, WeakReference<Object>>(4);
+                subprojections.put(node, projections);
+            }
+            final WeakReference<Object> reference = projections.get(projectionInterface);
+            final Object cached = reference == null ? null : reference.get();
+            if (cached != null) {
+                return projectionInterface.cast(cached);
+            }
+            final T projection = projectDOMNode(node, projectionInterface);
+            projections.put(projectionInterface, new WeakReference<Object>(projection));
+            return projection;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Node, Map<Class<?>, WeakReference<Object>>> getSubprojections(final Document document) {
+        // DOM implementations do not guard their user data against concurrent readers.
+        synchronized (document) {
+            Map<Node, Map<Class<?>, WeakReference<Object>>> subprojections = (Map<Node, Map<Class<?>, WeakReference<Object>>>) document.getUserData(subprojectionsKey);
+            if (subprojections == null) {
+                subprojections = new WeakHashMap<Node, Map<Class<?>, WeakReference<Object>>>();
+                document.setUserData(subprojectionsKey, subprojections, null);
+            }
+            return subprojections;
+        }
+    }
+
+    /**
+     * Get the cached invocation plan for a projection method. The plan is created on first use
+     * and again when the type converter was replaced or its conversions changed.
+     * 
+     * @param projectionInterface
+     * @param method
+     * @return plan for method invocations on projections of the given interface.
+     */
+    InvocationPlan getInvocationPlan(final Class<?> projectionInterface, final Method method) {
+        ConcurrentMap<Method, InvocationPlan> plans = invocationPlans.get(projectionInterface);
+        if (plans == null) {
+            final ConcurrentMap<Method, InvocationPlan> newPlans = new ConcurrentHashMap<Method, InvocationPlan>();
+            plans = invocationPlans.putIfAbsent(projectionInterface, newPlans);
+            if (plans == null) {
+                plans = newPlans;
+            }
+        }
+        InvocationPlan plan = plans.get(method);
+        if ((plan == null) || (!plan.isValidFor(typeConverter))) {
+            plan = InvocationPlan.create(this, projectionInterface, method);
+            plans.put(method, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Get the cached invocation plan for a method of a generated projection class.
+     * 
+     * @param projectionInterface
+     * @param method
+     * @param index
+     *            index of the method in the method table of the generated class.
+     * @return plan for method invocations on projections of the given interface.
+     */
+    InvocationPlan getInvocationPlan(final Class<?> projectionInterface, final Method method, final int index) {
+        final InvocationPlan[] plans = indexedInvocationPlans.get(projectionInterface);
+        if ((plans != null) && (index < plans.length) && (plans[index] != null) && plans[index].isValidFor(typeConverter)) {
+            return plans[index];
+        }
+        final InvocationPlan plan = getInvocationPlan(projectionInterface, method);
+        // Copy on write. Concurrently lost updates are just looked up again.
+        final InvocationPlan[] newPlans = new InvocationPlan[plans == null ? index + 1 : Math.max(plans.length, index + 1)];
+        if (plans != null) {
+            System.arraycopy(plans, 0, newPlans, 0, plans.length);
+        }
+        newPlans[index] = plan;
+        indexedInvocationPlans.put(projectionInterface, newPlans);
+        return plan;
+    }
+
+    /**
+     * @param flag
+     * @return true if this projector was created with the given flag.
+     */
+    boolean isFlagSet(final Flags flag) {
+        return flags.contains(flag);
+    }
+
+    /**
+     * @return true if a custom externalizer is configured.
+     */
+    boolean isExternalizerInUse() {
+        return externalizer != NOOP_EXTERNALIZER;
     }
 
     /**
@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
+
+/**
+ * Bounded cache of compiled XPath expressions. JAXP does not guarantee compiled expressions to be
+ * thread safe, so each thread gets its own least recently used cache. Expressions are keyed by
+ * their string and the namespace context, variable resolver and function resolver of the XPath
+ * instance they were compiled with. Notice that this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+final class XPathExpressionCache {
+
+    /**
+     * Default number of compiled expressions kept per thread.
+     */
+    static final int DEFAULT_SIZE = 256;
+
+    private static final class Key {
+        private final String expression;
+        private final NamespaceContext namespaceContext;
+        private final XPathVariableResolver variableResolver;
+        private final XPathFunctionResolver functionResolver;
+        private final int hash;
+
+        Key(final String expression, final XPath xPath) {
+            this.expression = expression;
+            this.namespaceContext = xPath.getNamespaceContext();
+            this.variableResolver = xPath.getXPathVariableResolver();
+            this.functionResolver = xPath.getXPathFunctionResolver();
+            this.hash = 31 * (31 * (31 * expression.hashCode() + hashOf(namespaceContext)) + hashOf(variableResolver)) + hashOf(functionResolver);
+        }
+
+        private static int hashOf(final Object o) {
+            return o == null ? 0 : o.hashCode();
+        }
+
+        private static boolean same(final Object a, final Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key k = (Key) o;
+            return (hash == k.hash) && expression.equals(k.expression) && same(namespaceContext, k.namespaceContext) && same(variableResolver, k.variableResolver) && same(functionResolver, k.functionResolver);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class LRUMap extends LinkedHashMap<Key, XPathExpression> {
+        LRUMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, XPathExpression> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private final ThreadLocal<LRUMap> expressions = new ThreadLocal<LRUMap>() {
+        @Override
+        protected LRUMap initialValue() {
+            return new LRUMap();
+        }
+    };
+
+    private volatile int maxSize;
+
+    XPathExpressionCache(final int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Compile the expression with the given XPath or take a compiled version from the cache.
+     *
+     * @param xPath
+     * @param expression
+     * @return compiled expression, only to be used by the current thread.
+     * @throws XPathExpressionException
+     */
+    XPathExpression compile(final XPath xPath, final String expression) throws XPathExpressionException {
+        if (maxSize <= 0) {
+            return xPath.compile(expression);
+        }
+        final Key key = new Key(expression, xPath);
+        final LRUMap map = expressions.get();
+        XPathExpression compiled = map.get(key);
+        if (compiled == null) {
+            compiled = xPath.compile(expression);
+            map.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * @param maxSize
+     *            number of expressions kept per thread. Zero disables caching.
+     */
+    void setMaxSize(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+}
@@ -15,11 +15,6 @@
  */
 package org.xmlbeam.config;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-
-import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -32,7 +27,8 @@ import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.xmlbeam.XBProjector;
-import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.CompactDocumentBuilder;
+import org.xmlbeam.util.intern.DocumentNamespaceContext;
 
 /**
  * Default configuration for {@link XBProjector} which uses Java default factories to create
@@ -78,11 +74,51 @@ public class DefaultXMLFactoriesConfig implements XMLFactoriesConfig {
         HEDONISTIC
     }
 
-    private static final String NON_EXISTING_URL = "http://xmlbeam.org/nonexisting_namespace";
+    /**
+     * Factories are created once per configuration, because looking up the implementation is
+     * expensive. Factories are not thread safe, so creating instances is synchronized.
+     */
+    private final class FactoryCache {
+        private DocumentBuilderFactory documentBuilderFactory;
+        private TransformerFactory transformerFactory;
+        private XPathFactory xPathFactory;
+
+        synchronized DocumentBuilder newDocumentBuilder() {
+            if (documentBuilderFactory == null) {
+                documentBuilderFactory = createDocumentBuilderFactory();
+            }
+            try {
+                final DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+                return isCompactReadOnlyDocuments ? new CompactDocumentBuilder(documentBuilderFactory, documentBuilder) : documentBuilder;
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        synchronized Transformer newTransformer() {
+            if (transformerFactory == null) {
+                transformerFactory = createTransformerFactory();
+            }
+            try {
+                return transformerFactory.newTransformer();
+            } catch (TransformerConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        synchronized XPath newXPath() {
+            if (xPathFactory == null) {
+                xPathFactory = createXPathFactory();
+            }
+            return xPathFactory.newXPath();
+        }
+    }
 
     private NamespacePhilosophy namespacePhilosophy = NamespacePhilosophy.HEDONISTIC;
     private boolean isPrettyPrinting = true;
     private boolean isOmitXMLDeclaration = true;
+    private boolean isCompactReadOnlyDocuments = false;
+    private transient volatile FactoryCache factoryCache;
 
     /**
      * Empty default constructor, a Configuration has no state.
@@ -90,17 +126,32 @@ public class DefaultXMLFactoriesConfig implements XMLFactoriesConfig {
     public DefaultXMLFactoriesConfig() {
     }
 
+    private FactoryCache getFactoryCache() {
+        FactoryCache cache = factoryCache;
+        if (cache != null) {
+            return cache;
+        }
+        synchronized (this) {
+            if (factoryCache == null) {
+                factoryCache = new FactoryCache();
+            }
+            return factoryCache;
+        }
+    }
+
+    /**
+     * Discard cached factories, because they depend on a changed setting.
+     */
+    private synchronized void resetFactoryCache() {
+        factoryCache = null;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public DocumentBuilder createDocumentBuilder() {
-        try {
-            DocumentBuilder documentBuilder = createDocumentBuilderFactory().newDocumentBuilder();
-            return documentBuilder;
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException(e);
-        }
+        return getFactoryCache().newDocumentBuilder();
     }
 
     /**
@@ -120,20 +171,16 @@ public class DefaultXMLFactoriesConfig implements XMLFactoriesConfig {
      */
     @Override
     public Transformer createTransformer(Document... document) {
-        try {
-            Transformer transformer = createTransformerFactory().newTransformer();
-            if (isPrettyPrinting()) {
-                // Enable some pretty printing of the resulting xml.
-                transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            }
-            if (isOmitXMLDeclaration()) {
-                transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            }
-            return transformer;
-        } catch (TransformerConfigurationException e) {
-            throw new RuntimeException(e);
+        final Transformer transformer = getFactoryCache().newTransformer();
+        if (isPrettyPrinting()) {
+            // Enable some pretty printing of the resulting xml.
+            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        }
+        if (isOmitXMLDeclaration()) {
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
         }
+        return transformer;
     }
 
     /**
@@ -149,42 +196,12 @@ public class DefaultXMLFactoriesConfig implements XMLFactoriesConfig {
      */
     @Override
     public XPath createXPath(final Document... document) {
-        final XPath xPath = createXPathFactory().newXPath();
+        final XPath xPath = getFactoryCache().newXPath();
         if ((document == null) || (document.length == 0) || (!NamespacePhilosophy.HEDONISTIC.equals(namespacePhilosophy))) {
             return xPath;
         }
         // For hedonistic name space philosophy we aspire a reasonable name space mapping.
-        final Map<String, String> nameSpaceMapping = DOMHelper.getNamespaceMapping(document[0]);
-        final NamespaceContext ctx = new NamespaceContext() {
-            @Override
-            public String getNamespaceURI(String prefix) {
-                if (prefix == null) {
-                    throw new IllegalArgumentException("null not allowed as prefix");
-                }
-                if (nameSpaceMapping.containsKey(prefix)) {
-                    return nameSpaceMapping.get(prefix);
-                }
-                // Default is a global unique string uri to prevent xpath expression exeptions on
-                // nonexisting ns.
-                return NON_EXISTING_URL;
-            }
-
-            @Override
-            public String getPrefix(String uri) {
-                for (Entry<String, String> e : nameSpaceMapping.entrySet()) {
-                    if (e.getValue().equals(uri)) {
-                        return e.getKey();
-                    }
-                }
-                return null;
-            }
-
-            @Override
-            public Iterator<String> getPrefixes(String val) {
-                return nameSpaceMapping.keySet().iterator();
-            }
-        };
-        xPath.setNamespaceContext(ctx);
+        xPath.setNamespaceContext(DocumentNamespaceContext.of(document[0]));
         return xPath;
     }
 
@@ -212,6 +229,7 @@ public class DefaultXMLFactoriesConfig implements XMLFactoriesConfig {
      */
     public XMLFactoriesConfig setNamespacePhilosophy(NamespacePhilosophy namespacePhilosophy) {
         this.namespacePhilosophy = namespacePhilosophy;
+        resetFactoryCache();
         return this;
     }
 
@@ -236,4 +254,25 @@ public class DefaultXMLFactoriesConfig implements XMLFactoriesConfig {
         return this;
     }
 
+    /**
+     * @return true if parsed documents are read only compact documents.
+     */
+    public boolean isCompactReadOnlyDocuments() {
+        return isCompactReadOnlyDocuments;
+    }
+
+    /**
+     * Parse documents into a compact read only representation, storing the nodes in arrays
+     * instead of node objects. This saves most of the memory of large documents, but projections
+     * of parsed documents can not change them. Invoking a setter will throw a
+     * {@link org.w3c.dom.DOMException}. New documents are not affected.
+     *
+     * @param isCompactReadOnlyDocuments
+     * @return this for convenience
+     */
+    public DefaultXMLFactoriesConfig setCompactReadOnlyDocuments(final boolean isCompactReadOnlyDocuments) {
+        this.isCompactReadOnlyDocuments = isCompactReadOnlyDocuments;
+        resetFactoryCache();
+        return this;
+    }
 }
@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.io.File;
+import java.io.InputStream;
+
+import org.xmlbeam.XBProjector;
+
+/**
+ * Asynchronous variants of the IO operations of a projector. Every operation runs on the executor
+ * configured via {@link org.xmlbeam.XBProjector.ConfigBuilder#setAsyncExecutor(Executor)} and
+ * returns immediately. Exceptions of the operation are thrown by {@link Future#get()}, wrapped in
+ * an {@link java.util.concurrent.ExecutionException}. Notice that the XML factories of the
+ * projector must be thread safe to run operations in parallel, which is the case for the
+ * {@link org.xmlbeam.config.DefaultXMLFactoriesConfig}.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class XBAsyncIO {
+
+    private static Executor defaultExecutor;
+
+    private final XBProjector projector;
+    private final Executor executor;
+
+    /**
+     * @param projector
+     * @param executor
+     *            runs the operations, null for the default executor.
+     */
+    public XBAsyncIO(final XBProjector projector, final Executor executor) {
+        this.projector = projector;
+        this.executor = executor == null ? getDefaultExecutor() : executor;
+    }
+
+    /**
+     * The default executor uses a virtual thread per operation if the JVM supports them. Otherwise
+     * it uses a pool of daemon threads, which are created on demand and expire when idle.
+     *
+     * @return the executor used if none is configured.
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = createDefaultExecutor();
+        }
+        return defaultExecutor;
+    }
+
+    private static Executor createDefaultExecutor() {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            // Virtual threads are not available before Java 21.
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "XBAsyncIO");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Run any operation on the executor of this IO.
+     *
+     * @param operation
+     * @return the future result of the operation.
+     */
+    public <T> Future<T> submit(final Callable<T> operation) {
+        final FutureTask<T> future = new FutureTask<T>(operation);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * See {@link XBFileIO#read(Class)}.
+     *
+     * @param file
+     * @param projectionInterface
+     * @return the future projection.
+     */
+    public <T> Future<T> readFile(final File file, final Class<T> projectionInterface) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return new XBFileIO(projector, file).read(projectionInterface);
+            }
+        });
+    }
+
+    /**
+     * See {@link XBFileIO#write(Object)}.
+     *
+     * @param file
+     * @param projection
+     * @return the future file, completed when the projection is written.
+     */
+    public Future<File> writeFile(final File file, final Object projection) {
+        return submit(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                new XBFileIO(projector, file).write(projection);
+                return file;
+            }
+        });
+    }
+
+    /**
+     * See {@link XBUrlIO#read(Class)}.
+     *
+     * @param url
+     * @param projectionInterface
+     * @return the future projection.
+     */
+    public <T> Future<T> readURL(final String url, final Class<T> projectionInterface) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return new XBUrlIO(projector, url).read(projectionInterface);
+            }
+        });
+    }
+
+    /**
+     * See {@link XBUrlIO#write(Object)}.
+     *
+     * @param url
+     * @param projection
+     * @return the future response.
+     */
+    public Future<String> postURL(final String url, final Object projection) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return new XBUrlIO(projector, url).write(projection);
+            }
+        });
+    }
+
+    /**
+     * See {@link XBStreamInput#read(Class)}. The stream is not closed.
+     *
+     * @param is
+     * @param projectionInterface
+     * @return the future projection.
+     */
+    public <T> Future<T> readStream(final InputStream is, final Class<T> projectionInterface) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return new XBStreamInput(projector, is).read(projectionInterface);
+            }
+        });
+    }
+
+    /**
+     * See {@link org.xmlbeam.ProjectionIO#fromURLAnnotation(Class, Object...)}.
+     *
+     * @param projectionInterface
+     * @param optionalParams
+     * @return the future projection.
+     */
+    public <T> Future<T> fromURLAnnotation(final Class<T> projectionInterface, final Object... optionalParams) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return projector.io().fromURLAnnotation(projectionInterface, optionalParams);
+            }
+        });
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Transport based on {@link HttpURLConnection}. Responses are requested gzip compressed. Request
+ * bodies are streamed in chunks. Connections are kept alive by the JDK as long as every response
+ * is closed after reading it, which is done by the callers in this package.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class XBDefaultHttpTransport implements XBHttpTransport, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public XBHttpResponse get(final String url, final Map<String, String> requestProperties) throws IOException {
+        return respond(open(url, requestProperties));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public XBHttpResponse post(final String url, final RequestBody body, final Map<String, String> requestProperties) throws IOException {
+        final HttpURLConnection connection = open(url, requestProperties);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setChunkedStreamingMode(0);
+        final OutputStream outputStream = connection.getOutputStream();
+        try {
+            body.writeTo(outputStream);
+        } finally {
+            outputStream.close();
+        }
+        return respond(connection);
+    }
+
+    private static HttpURLConnection open(final String url, final Map<String, String> requestProperties) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (requestProperties != null) {
+            for (Map.Entry<String, String> entry : requestProperties.entrySet()) {
+                connection.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        return connection;
+    }
+
+    private static XBHttpResponse respond(final HttpURLConnection connection) throws IOException {
+        final int status = connection.getResponseCode();
+        if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            final InputStream errorStream = connection.getErrorStream();
+            if (errorStream != null) {
+                new XBHttpResponse(status, null, errorStream).close();
+            }
+            throw new IOException("Server returned HTTP response code: " + status + " for URL: " + connection.getURL());
+        }
+        InputStream body = connection.getInputStream();
+        final boolean hasBody = (status != HttpURLConnection.HTTP_NOT_MODIFIED) && (status != HttpURLConnection.HTTP_NO_CONTENT);
+        if (hasBody && "gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            body = new GZIPInputStream(body);
+        }
+        return new XBHttpResponse(status, connection.getHeaderFields(), body);
+    }
+}
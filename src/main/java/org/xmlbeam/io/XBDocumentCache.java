@@ -0,0 +1,286 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+import org.xmlbeam.config.XMLFactoriesConfig;
+import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.XMLFactoriesPool;
+
+/**
+ * Cache of documents loaded from URLs by methods annotated with
+ * {@link org.xmlbeam.annotation.XBDocURL} and by {@link XBUrlIO#read(Class)}. Documents are keyed
+ * by their resolved URL and the request properties. The cache is disabled until a maximum size is
+ * set. Documents are held by soft references, so they are dropped before memory runs out. After
+ * the time to live, an entry is revalidated before it is used again: HTTP resources by a
+ * conditional request using the ETag or Last-Modified header, files by their modification time.
+ * Class path resources never change. Everything else is loaded again. <br>
+ * Getters annotated with {@link org.xmlbeam.annotation.XBDocURL} share the cached document, so
+ * projections returned by them must not be changed. {@link XBUrlIO#read(Class)} returns a copy.
+ * Cached documents are built completely before they are shared, which makes them safe for
+ * concurrent reads only.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class XBDocumentCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of milliseconds a cached document is used without revalidation.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+    private static final class Entry {
+        private final SoftReference<Document> document;
+        private final String entityTag;
+        private final String lastModified;
+        private final long fileTimestamp;
+        private volatile long validatedAt;
+
+        Entry(final Document document, final String entityTag, final String lastModified, final long fileTimestamp) {
+            this.document = new SoftReference<Document>(document);
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+            this.fileTimestamp = fileTimestamp;
+            this.validatedAt = System.currentTimeMillis();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class LRUMap extends LinkedHashMap<List<Object>, Entry> {
+        LRUMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<List<Object>, Entry> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private volatile int maxSize = 0;
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private transient LRUMap entries = new LRUMap();
+
+    /**
+     * @param maxSize
+     *            number of cached documents. Zero disables caching.
+     * @return this for convenience.
+     */
+    public XBDocumentCache setMaxSize(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative.");
+        }
+        this.maxSize = maxSize;
+        synchronized (entries) {
+            final Iterator<List<Object>> keys = entries.keySet().iterator();
+            while ((entries.size() > maxSize) && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return maximum number of cached documents.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param millis
+     *            milliseconds a cached document is used without revalidation.
+     * @return this for convenience.
+     */
+    public XBDocumentCache setTimeToLive(final long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative.");
+        }
+        this.timeToLive = millis;
+        return this;
+    }
+
+    /**
+     * @return milliseconds a cached document is used without revalidation.
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Drop all cached documents.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return number of cached documents, including the ones already dropped by the garbage
+     *         collector.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Load a document or take it from the cache.
+     *
+     * @param config
+     *            creates the document builder if the document needs to be parsed.
+     * @param transport
+     *            sends HTTP requests.
+     * @param url
+     * @param requestProperties
+     *            header fields for HTTP requests.
+     * @param resourceAwareClass
+     *            class used to load "resource://" URLs.
+     * @return the cached document, to be shared with other readers.
+     * @throws IOException
+     */
+    public Document getDocument(final XMLFactoriesConfig config, final XBHttpTransport transport, final String url, final Map<String, String> requestProperties, final Class<?> resourceAwareClass) throws IOException {
+        final boolean isHttp = url.startsWith("http:") || url.startsWith("https:");
+        if ((maxSize <= 0) && isHttp) {
+            final XBHttpResponse response = transport.get(url, requestProperties);
+            try {
+                return parse(config, response, url);
+            } finally {
+                response.close();
+            }
+        }
+        if (maxSize <= 0) {
+            return getDocumentFromURL(config, url, requestProperties, resourceAwareClass);
+        }
+        final boolean isResource = url.startsWith("resource://");
+        final List<Object> key = Arrays.<Object> asList(url, new HashMap<String, String>(requestProperties), isResource ? resourceAwareClass : null);
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        final Document cachedDocument = entry == null ? null : entry.document.get();
+        if (cachedDocument != null) {
+            final long now = System.currentTimeMillis();
+            if (isResource || ((now - entry.validatedAt) < timeToLive) || isFileUnchanged(url, entry)) {
+                entry.validatedAt = now;
+                return cachedDocument;
+            }
+        }
+        final Document document;
+        final Entry newEntry;
+        if (isHttp) {
+            final Map<String, String> properties = new HashMap<String, String>(requestProperties);
+            if ((cachedDocument != null) && (entry.entityTag != null)) {
+                properties.put("If-None-Match", entry.entityTag);
+            }
+            if ((cachedDocument != null) && (entry.lastModified != null)) {
+                properties.put("If-Modified-Since", entry.lastModified);
+            }
+            final XBHttpResponse response = transport.get(url, properties);
+            try {
+                if ((cachedDocument != null) && (response.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED)) {
+                    entry.validatedAt = System.currentTimeMillis();
+                    return cachedDocument;
+                }
+                document = parse(config, response, url);
+                newEntry = new Entry(document, response.getHeaderField("ETag"), response.getHeaderField("Last-Modified"), 0);
+            } finally {
+                response.close();
+            }
+        } else {
+            final long fileTimestamp = fileTimestamp(url);
+            document = getDocumentFromURL(config, url, requestProperties, resourceAwareClass);
+            newEntry = new Entry(document, null, null, fileTimestamp);
+        }
+        // Readers of the shared document must not build deferred nodes concurrently.
+        DOMHelper.expandDeferredNodes(document);
+        synchronized (entries) {
+            entries.put(key, newEntry);
+        }
+        return document;
+    }
+
+    private static Document getDocumentFromURL(final XMLFactoriesConfig config, final String url, final Map<String, String> requestProperties, final Class<?> resourceAwareClass) throws IOException {
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(config);
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
+        try {
+            return DOMHelper.getDocumentFromURL(documentBuilder, url, requestProperties, resourceAwareClass);
+        } finally {
+            pool.release(documentBuilder);
+        }
+    }
+
+    private static Document parse(final XMLFactoriesConfig config, final XBHttpResponse response, final String url) throws IOException {
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(config);
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
+        try {
+            return documentBuilder.parse(response.getBody(), url);
+        } catch (SAXException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.release(documentBuilder);
+        }
+    }
+
+    private static boolean isFileUnchanged(final String url, final Entry entry) {
+        return (entry.fileTimestamp != 0) && (entry.fileTimestamp == fileTimestamp(url));
+    }
+
+    /**
+     * @param url
+     * @return modification time of the file or 0 if the URL does not denote a file.
+     */
+    private static long fileTimestamp(final String url) {
+        if (!url.startsWith("file:")) {
+            return 0;
+        }
+        try {
+            return new File(new URI(url)).lastModified();
+        } catch (URISyntaxException e) {
+            return 0;
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        entries = new LRUMap();
+    }
+}
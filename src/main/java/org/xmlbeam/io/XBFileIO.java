@@ -15,21 +15,78 @@
  */
 package org.xmlbeam.io;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import javax.xml.parsers.DocumentBuilder;
 
 import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xmlbeam.XBProjector;
+import org.xmlbeam.config.XMLFactoriesConfig;
+import org.xmlbeam.util.intern.XMLFactoriesPool;
 
 /**
  * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
  */
 public class XBFileIO {
 
+    /**
+     * Feeds a mapped file to the parser without copying it into an intermediate buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
     private final XBProjector projector;
     boolean append = false;
+    private boolean memoryMapped = false;
+    private boolean atomicReplace = false;
+    private boolean sync = false;
     private final  File file;
 
     /**
@@ -70,11 +127,69 @@ public class XBFileIO {
      * @throws IOException
      */
     public <T> T read(Class<T> projectionInterface) throws IOException {
+        final FileInputStream is = new FileInputStream(file);
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(projector.config().as(XMLFactoriesConfig.class));
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
         try {
-            Document document = projector.config().createDocumentBuilder().parse(file);
+            // The parser buffers its input itself, so the stream is not wrapped in another buffer.
+            final InputSource source = new InputSource(memoryMapped ? map(is.getChannel()) : is);
+            source.setSystemId(file.toURI().toString());
+            Document document = documentBuilder.parse(source);
             return projector.projectDOMNode(document, projectionInterface);
         } catch (SAXException e) {
             throw new RuntimeException(e);
+        } finally {
+            pool.release(documentBuilder);
+            is.close();
+        }
+    }
+
+    private static InputStream map(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            // A single mapping is limited to 2GB.
+            return Channels.newInputStream(channel);
+        }
+        return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+
+    /**
+     * Read only the parts of the XML document the projection interface needs. See
+     * {@link XBStreamInput#readPruned(Class)}.
+     * 
+     * @param projectionInterface
+     * @return a projection to the partial document
+     * @throws IOException
+     */
+    public <T> T readPruned(final Class<T> projectionInterface) throws IOException {
+        final FileInputStream is = new FileInputStream(file);
+        try {
+            final InputSource source = new InputSource(new BufferedInputStream(is));
+            source.setSystemId(file.toURI().toString());
+            return XBStreamInput.readPruned(projector, source, projectionInterface);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Read the elements matching the given path one after another without parsing the whole file
+     * into memory. The file is closed when the iteration reaches the end of the document or
+     * {@link XBRecordIterator#close()} is called.
+     * 
+     * @param path
+     *            absolute path of element names like <code>/rss/channel/item</code>.
+     * @param projectionInterface
+     * @return iterator over projections of matching elements.
+     * @throws IOException
+     */
+    public <T> XBRecordIterator<T> readEach(final String path, final Class<T> projectionInterface) throws IOException {
+        final FileInputStream is = new FileInputStream(file);
+        try {
+            return new XBRecordIterator<T>(projector, new BufferedInputStream(is), true, path, projectionInterface);
+        } catch (RuntimeException e) {
+            is.close();
+            throw e;
         }
     }
 
@@ -84,12 +199,100 @@ public class XBFileIO {
      * @throws IOException
      * @return this to provide a fluent API.
      */
-    public XBFileIO write(Object projection) throws IOException {       
-        FileOutputStream os = new FileOutputStream(file, append);
-        new XBStreamOutput(projector,os).write(projection);
+    public XBFileIO write(Object projection) throws IOException {
+        if (append && atomicReplace) {
+            throw new IllegalArgumentException("Appending to file " + file + " can not be combined with an atomic replace.");
+        }
+        final File target = atomicReplace ? File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile()) : file;
+        boolean written = false;
+        try {
+            final FileOutputStream fos = new FileOutputStream(target, append);
+            try {
+                final OutputStream os = new BufferedOutputStream(fos);
+                new XBStreamOutput(projector, os).write(projection);
+                os.flush();
+                if (sync) {
+                    fos.getFD().sync();
+                }
+            } finally {
+                fos.close();
+            }
+            written = true;
+        } finally {
+            if (atomicReplace && !written) {
+                target.delete();
+            }
+        }
+        if (atomicReplace) {
+            replace(target, file);
+        }
         return this;
     }
 
+    /**
+     * Rename the source file to the target file. Where renaming onto an existing file is not
+     * supported, the target is moved to a backup file first and restored if the rename fails. The
+     * source is deleted unless it holds the only copy of the new content.
+     * 
+     * @param source
+     * @param target
+     * @throws IOException
+     */
+    private static void replace(final File source, final File target) throws IOException {
+        if (source.renameTo(target)) {
+            return;
+        }
+        final File backup = new File(source.getPath() + ".bak");
+        if (!target.renameTo(backup)) {
+            source.delete();
+            throw new IOException("Could not rename " + source + " to " + target);
+        }
+        if (source.renameTo(target)) {
+            backup.delete();
+            return;
+        }
+        if (backup.renameTo(target)) {
+            source.delete();
+            throw new IOException("Could not rename " + source + " to " + target);
+        }
+        throw new IOException("Could not rename " + source + " to " + target + ". The former content was moved to " + backup + ", the new content is kept in " + source);
+    }
+
+    /**
+     * Write a document record by record to the file. The document consists of the elements of
+     * the given path, records are appended to the last element. The file is closed by
+     * {@link XBRecordWriter#close()}.
+     * 
+     * @param path
+     *            path to the record container like <code>/rss/channel</code>.
+     * @return writer to append the records to.
+     * @throws IOException
+     */
+    public XBRecordWriter writeEach(final String path) throws IOException {
+        return writeEach(XBStreamOutput.createSkeleton(projector, path), path);
+    }
+
+    /**
+     * Write a document record by record to the file. The file is closed by
+     * {@link XBRecordWriter#close()}.
+     * 
+     * @param skeleton
+     *            projection or DOM node of the document skeleton.
+     * @param path
+     *            XPath selecting the record container element in the skeleton.
+     * @return writer to append the records to.
+     * @throws IOException
+     */
+    public XBRecordWriter writeEach(final Object skeleton, final String path) throws IOException {
+        final FileOutputStream os = new FileOutputStream(file, append);
+        try {
+            return new XBRecordWriter(projector, new BufferedOutputStream(os), true, skeleton, path);
+        } catch (RuntimeException e) {
+            os.close();
+            throw e;
+        }
+    }
+
     /**
      * Set whether output should be append to existing file.
      * 
@@ -101,4 +304,44 @@ public class XBFileIO {
         return this;
     }
 
+    /**
+     * Set whether {@link #read(Class)} maps the file into memory instead of reading it via a
+     * stream. This saves copying the file content for large files. The mapping is released by the
+     * garbage collector, so on some platforms the file can not be deleted right after reading it.
+     * 
+     * @param memoryMapped
+     * @return this to provide a fluent API.
+     */
+    public XBFileIO setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        return this;
+    }
+
+    /**
+     * Set whether {@link #write(Object)} writes to a temporary file first and renames it to the
+     * target file afterwards. Readers will then never see a partially written file. The
+     * replacement is atomic only on platforms renaming onto existing files, like POSIX systems.
+     * Elsewhere the former file is moved to a backup first, so the file is missing for a moment.
+     * Can not be combined with appending.
+     * 
+     * @param atomicReplace
+     * @return this to provide a fluent API.
+     */
+    public XBFileIO setAtomicReplace(boolean atomicReplace) {
+        this.atomicReplace = atomicReplace;
+        return this;
+    }
+
+    /**
+     * Set whether {@link #write(Object)} forces the written content to the storage device before
+     * returning.
+     * 
+     * @param sync
+     * @return this to provide a fluent API.
+     */
+    public XBFileIO setSync(boolean sync) {
+        this.sync = sync;
+        return this;
+    }
+
 }
@@ -0,0 +1,203 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.io.File;
+import java.io.IOException;
+
+import org.xmlbeam.XBProjector;
+
+/**
+ * Reads all files of a directory matching a glob pattern in parallel. Each file is parsed and
+ * projected by a pool of worker threads. Workers share the internally pooled document builders
+ * of the projector.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class XBFilesIO {
+
+    private final XBProjector projector;
+    private final File directory;
+    private final String glob;
+    private final Pattern pattern;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int maxInFlight = 4 * parallelism;
+    private boolean ordered = true;
+
+    /**
+     * @param projector
+     * @param directory
+     * @param glob
+     *            pattern of file paths relative to the directory. A <code>*</code> matches any
+     *            characters except the separator <code>/</code>, <code>**</code> matches across
+     *            directories, <code>?</code> matches one character and <code>{a,b}</code> one of
+     *            the alternatives. So <code>*.xml</code> selects the XML files in the directory
+     *            and <code>**&#47;*.xml</code> the ones in its sub directories.
+     */
+    public XBFilesIO(final XBProjector projector, final File directory, final String glob) {
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("File " + directory + " is not a directory.");
+        }
+        this.projector = projector;
+        this.directory = directory;
+        this.glob = glob;
+        this.pattern = Pattern.compile(globToRegex(glob));
+    }
+
+    /**
+     * @param parallelism
+     *            number of worker threads. Defaults to the number of available processors.
+     * @return this to provide a fluent API.
+     */
+    public XBFilesIO setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Limit the number of files being parsed or waiting to be consumed, which limits the memory
+     * used by parsed documents.
+     *
+     * @param maxInFlight
+     *            defaults to four times the parallelism.
+     * @return this to provide a fluent API.
+     */
+    public XBFilesIO setMaxInFlight(final int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Maximum number of files in flight must be positive.");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * @param ordered
+     *            true (the default) to return projections in the order of the file paths, false
+     *            to return them as soon as they are parsed.
+     * @return this to provide a fluent API.
+     */
+    public XBFilesIO setOrdered(final boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * @return the matching files, sorted by path.
+     */
+    public List<File> listFiles() {
+        final List<File> files = new ArrayList<File>();
+        collect(directory, "", files);
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Read the matching files one after another while the next ones are parsed in the background.
+     * Files that can not be read are skipped and reported by {@link XBFilesIterator#getErrors()}.
+     * Call {@link XBFilesIterator#close()} if you stop iterating before the end.
+     *
+     * @param projectionInterface
+     * @return iterator over the projections.
+     */
+    public <T> XBFilesIterator<T> readEach(final Class<T> projectionInterface) {
+        return new XBFilesIterator<T>(projector, listFiles(), projectionInterface, parallelism, Math.max(maxInFlight, parallelism), ordered);
+    }
+
+    /**
+     * Read all matching files.
+     *
+     * @param projectionInterface
+     * @return the projections of all files.
+     * @throws IOException
+     *             if any file can not be read. The message names all files that failed, the cause is
+     *             the first failure. Use {@link #readEach(Class)} to get the cause of every failure.
+     */
+    public <T> List<T> read(final Class<T> projectionInterface) throws IOException {
+        final XBFilesIterator<T> iterator = readEach(projectionInterface);
+        final List<T> projections = new ArrayList<T>();
+        while (iterator.hasNext()) {
+            projections.add(iterator.next());
+        }
+        if (iterator.getErrors().isEmpty()) {
+            return projections;
+        }
+        final File file = iterator.getErrors().keySet().iterator().next();
+        throw new IOException(iterator.getErrors().size() + " of the files matching " + glob + " in " + directory + " could not be read: " + iterator.getErrors().keySet() + ". First failure in " + file, iterator.getErrors().get(file));
+    }
+
+    private void collect(final File dir, final String prefix, final List<File> files) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            final String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                collect(child, path + "/", files);
+            } else if (pattern.matcher(path).matches()) {
+                files.add(child);
+            }
+        }
+    }
+
+    static String globToRegex(final String glob) {
+        final StringBuilder regex = new StringBuilder();
+        boolean inAlternatives = false;
+        for (int i = 0; i < glob.length(); ++i) {
+            final char c = glob.charAt(i);
+            switch (c) {
+            case '*':
+                if ((i + 1 < glob.length()) && (glob.charAt(i + 1) == '*')) {
+                    ++i;
+                    if ((i + 1 < glob.length()) && (glob.charAt(i + 1) == '/')) {
+                        // "**/" matches zero or more directories.
+                        ++i;
+                        regex.append("(?:.*/)?");
+                    } else {
+                        regex.append(".*");
+                    }
+                } else {
+                    regex.append("[^/]*");
+                }
+                break;
+            case '?':
+                regex.append("[^/]");
+                break;
+            case '{':
+                inAlternatives = true;
+                regex.append("(?:");
+                break;
+            case '}':
+                inAlternatives = false;
+                regex.append(')');
+                break;
+            case ',':
+                regex.append(inAlternatives ? "|" : ",");
+                break;
+            default:
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+}
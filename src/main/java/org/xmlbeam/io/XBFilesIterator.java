@@ -0,0 +1,209 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.io.Closeable;
+import java.io.File;
+
+import org.xmlbeam.XBProjector;
+
+/**
+ * Iterates over the projections of files read in parallel by {@link XBFilesIO}. At most the
+ * configured number of files is parsed or waiting to be consumed at any time. The worker threads
+ * end when the iteration reaches the end or {@link #close()} is called. If the iteration is
+ * abandoned otherwise, they end after being idle for a few seconds.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ * @param <T>
+ *            projection interface
+ */
+public final class XBFilesIterator<T> implements Iterator<T>, Closeable {
+
+    private static final class Result<T> {
+        private final File file;
+        private final T projection;
+        private final Exception error;
+
+        Result(final File file, final T projection, final Exception error) {
+            this.file = file;
+            this.projection = projection;
+            this.error = error;
+        }
+    }
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 5;
+
+    private final XBProjector projector;
+    private final Class<T> projectionInterface;
+    private final Iterator<File> files;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final boolean ordered;
+
+    /**
+     * Submitted files in submission order, used in ordered mode.
+     */
+    private final LinkedList<Future<Result<T>>> pending = new LinkedList<Future<Result<T>>>();
+
+    /**
+     * Parsed files in completion order, used in unordered mode.
+     */
+    private final BlockingQueue<Result<T>> completed = new LinkedBlockingQueue<Result<T>>();
+
+    private final Map<File, Exception> errors = new LinkedHashMap<File, Exception>();
+    private int inFlight = 0;
+    private T next;
+    private boolean isClosed = false;
+
+    XBFilesIterator(final XBProjector projector, final List<File> files, final Class<T> projectionInterface, final int parallelism, final int maxInFlight, final boolean ordered) {
+        this.projector = projector;
+        this.projectionInterface = projectionInterface;
+        this.files = files.iterator();
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+        final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(parallelism, parallelism, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "XBFilesIO");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Workers of an iteration abandoned without close() end once they are idle.
+        threadPool.allowCoreThreadTimeOut(true);
+        this.executor = threadPool;
+        submitFiles();
+    }
+
+    private void submitFiles() {
+        while ((!isClosed) && (inFlight < maxInFlight) && files.hasNext()) {
+            final File file = files.next();
+            final Callable<Result<T>> task = new Callable<Result<T>>() {
+                @Override
+                public Result<T> call() {
+                    Result<T> result;
+                    try {
+                        result = new Result<T>(file, new XBFileIO(projector, file).read(projectionInterface), null);
+                    } catch (Exception e) {
+                        result = new Result<T>(file, null, e);
+                    }
+                    if (!ordered) {
+                        completed.add(result);
+                    }
+                    return result;
+                }
+            };
+            final Future<Result<T>> future = executor.submit(task);
+            if (ordered) {
+                pending.add(future);
+            }
+            ++inFlight;
+        }
+        if (inFlight == 0) {
+            executor.shutdown();
+        }
+    }
+
+    private Result<T> takeResult() {
+        try {
+            return ordered ? pending.removeFirst().get() : completed.take();
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (!isClosed) {
+                --inFlight;
+                submitFiles();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        while ((next == null) && (inFlight > 0)) {
+            final Result<T> result = takeResult();
+            if (result.error == null) {
+                next = result.projection;
+            } else {
+                errors.put(result.file, result.error);
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final T result = next;
+        next = null;
+        return result;
+    }
+
+    /**
+     * Not supported.
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the failures of the files read so far, in the order they were consumed.
+     */
+    public Map<File, Exception> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * Stop reading further files.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        executor.shutdownNow();
+        pending.clear();
+        completed.clear();
+        inFlight = 0;
+        next = null;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response to a request sent by a {@link XBHttpTransport}.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class XBHttpResponse implements Closeable {
+
+    private final int status;
+    private final Map<String, List<String>> headerFields;
+    private final InputStream body;
+
+    /**
+     * @param status
+     * @param headerFields
+     *            header fields by name, as provided by
+     *            {@link java.net.URLConnection#getHeaderFields()}.
+     * @param body
+     *            the decoded body or null if the response has none.
+     */
+    public XBHttpResponse(final int status, final Map<String, List<String>> headerFields, final InputStream body) {
+        this.status = status;
+        this.headerFields = headerFields == null ? Collections.<String, List<String>> emptyMap() : headerFields;
+        this.body = body == null ? new ByteArrayInputStream(new byte[0]) : body;
+    }
+
+    /**
+     * @return the HTTP status code.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @param name
+     *            case insensitive name of the header field.
+     * @return the last value of the header field or null if the response has none.
+     */
+    public String getHeaderField(final String name) {
+        for (Map.Entry<String, List<String>> entry : headerFields.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(entry.getValue().size() - 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the decoded body.
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Read the rest of the body and close it, so the connection may be reused.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            final byte[] buffer = new byte[4096];
+            while (body.read(buffer) >= 0) {
+                // Drain.
+            }
+        } catch (IOException e) {
+            // Parsers close the body when they are done, which drains it already.
+        } finally {
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.util.Map;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Performs the HTTP requests of a projector. Register your own implementation via
+ * {@link org.xmlbeam.XBProjector.ConfigBuilder#setHttpTransport(XBHttpTransport)} to use a
+ * different HTTP client. Implementations must be thread safe.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public interface XBHttpTransport {
+
+    /**
+     * Content of a request, written directly to the connection.
+     */
+    interface RequestBody {
+        /**
+         * @param outputStream
+         *            stream to the server. Do not close it.
+         * @throws IOException
+         */
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Send a GET request. Conditional requests are made by passing "If-None-Match" or
+     * "If-Modified-Since" as request property.
+     *
+     * @param url
+     * @param requestProperties
+     *            header fields of the request.
+     * @return the response with a decoded body. The caller must close it.
+     * @throws IOException
+     *             if the server responds with an error status.
+     */
+    XBHttpResponse get(String url, Map<String, String> requestProperties) throws IOException;
+
+    /**
+     * Send a POST request.
+     *
+     * @param url
+     * @param body
+     * @param requestProperties
+     *            header fields of the request.
+     * @return the response with a decoded body. The caller must close it.
+     * @throws IOException
+     *             if the server responds with an error status.
+     */
+    XBHttpResponse post(String url, RequestBody body, Map<String, String> requestProperties) throws IOException;
+}
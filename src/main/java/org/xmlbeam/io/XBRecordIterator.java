@@ -0,0 +1,334 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.config.XMLFactoriesConfig;
+import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.XMLFactoriesPool;
+
+/**
+ * Iterates over the elements of a document matching a simple path like
+ * <code>/rss/channel/item</code> without building a DOM for the whole document. The document is
+ * read via StAX, configured like the DocumentBuilderFactory of the projector. Each matching element is copied into a small document of its own and projected
+ * to the projection interface. Only one record is held in memory at a time, so documents of any
+ * size may be processed. Call {@link #close()} if you stop iterating before the end of the
+ * document.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ * @param <T>
+ *            projection interface
+ */
+public final class XBRecordIterator<T> implements Iterator<T>, Closeable {
+
+    private static final Pattern LEGAL_RECORD_PATH = Pattern.compile("(/[^/\\[\\]@()*=\\s]+)+");
+
+    private final XBProjector projector;
+    private final XMLFactoriesPool pool;
+    private final Class<T> projectionInterface;
+    private final InputStream is;
+    private final boolean closeStream;
+    private final String[] path;
+    private final XMLStreamReader reader;
+    private final boolean isNamespaceAware;
+
+    /**
+     * Namespace declarations of the open elements. Declarations outside of a record are copied
+     * to the record element, so prefixes stay valid.
+     */
+    private final LinkedList<List<String[]>> namespaceDeclarations = new LinkedList<List<String[]>>();
+
+    /**
+     * Number of open elements matching the record path.
+     */
+    private int matchingDepth = 0;
+    private int depth = 0;
+    private T next;
+    private boolean isClosed = false;
+
+    /**
+     * @param projector
+     * @param is
+     *            document source
+     * @param closeStream
+     *            true if the stream should be closed when the iteration ends.
+     * @param path
+     *            absolute path of element names to the records.
+     * @param projectionInterface
+     */
+    XBRecordIterator(final XBProjector projector, final InputStream is, final boolean closeStream, final String path, final Class<T> projectionInterface) {
+        if ((path == null) || (!LEGAL_RECORD_PATH.matcher(path).matches())) {
+            throw new IllegalArgumentException("Record path \"" + path + "\" is not valid. Please specify an absolute path of element names like /rss/channel/item");
+        }
+        this.projector = projector;
+        this.projectionInterface = projectionInterface;
+        this.is = is;
+        this.closeStream = closeStream;
+        this.path = path.substring(1).split("/");
+        this.pool = XMLFactoriesPool.of(projector.config().as(XMLFactoriesConfig.class));
+        final DocumentBuilderFactory documentBuilderFactory = pool.getDocumentBuilderFactory();
+        final XMLInputFactory inputFactory = DOMHelper.createXMLInputFactory(documentBuilderFactory);
+        this.isNamespaceAware = Boolean.TRUE.equals(inputFactory.getProperty(XMLInputFactory.IS_NAMESPACE_AWARE));
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        try {
+            this.reader = inputFactory.createXMLStreamReader(is);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNextRecord();
+        }
+        return next != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final T record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * Not supported.
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop reading the document. This happens automatically after the last record was read.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            if (closeStream) {
+                is.close();
+            }
+        }
+    }
+
+    private T readNextRecord() {
+        if (isClosed) {
+            return null;
+        }
+        try {
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (matchingDepth == depth) {
+                        --matchingDepth;
+                    }
+                    --depth;
+                    namespaceDeclarations.removeLast();
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                ++depth;
+                namespaceDeclarations.addLast(getNamespaceDeclarations());
+                if ((matchingDepth != depth - 1) || (depth > path.length) || (!path[depth - 1].equals(getQName()))) {
+                    continue;
+                }
+                ++matchingDepth;
+                if (matchingDepth < path.length) {
+                    continue;
+                }
+                final Document document = newDocument();
+                final Element record = readElement(document, true);
+                document.appendChild(record);
+                // The record was read completely.
+                --matchingDepth;
+                --depth;
+                namespaceDeclarations.removeLast();
+                return projector.projectDOMNode(record, projectionInterface);
+            }
+            close();
+            return null;
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Document newDocument() {
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
+        try {
+            return documentBuilder.newDocument();
+        } finally {
+            pool.release(documentBuilder);
+        }
+    }
+
+    private String getQName() {
+        final String prefix = reader.getPrefix();
+        if ((prefix == null) || prefix.isEmpty()) {
+            return reader.getLocalName();
+        }
+        return prefix + ":" + reader.getLocalName();
+    }
+
+    private List<String[]> getNamespaceDeclarations() {
+        if (!isNamespaceAware) {
+            // Declarations are plain attributes in this mode.
+            final List<String[]> declarations = new ArrayList<String[]>();
+            for (int i = 0; i < reader.getAttributeCount(); ++i) {
+                final String name = getAttributeQName(i);
+                if (XMLConstants.XMLNS_ATTRIBUTE.equals(name)) {
+                    declarations.add(new String[] { null, reader.getAttributeValue(i) });
+                } else if (name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+                    declarations.add(new String[] { name.substring(XMLConstants.XMLNS_ATTRIBUTE.length() + 1), reader.getAttributeValue(i) });
+                }
+            }
+            return declarations;
+        }
+        final int count = reader.getNamespaceCount();
+        final List<String[]> declarations = new ArrayList<String[]>(count);
+        for (int i = 0; i < count; ++i) {
+            declarations.add(new String[] { reader.getNamespacePrefix(i), reader.getNamespaceURI(i) });
+        }
+        return declarations;
+    }
+
+    private String getAttributeQName(final int index) {
+        final String prefix = reader.getAttributePrefix(index);
+        return (prefix == null) || prefix.isEmpty() ? reader.getAttributeLocalName(index) : prefix + ":" + reader.getAttributeLocalName(index);
+    }
+
+    /**
+     * Copy the current element and its content into the given document. On return the reader is
+     * positioned at the end of the element.
+     */
+    private Element readElement(final Document document, final boolean isRecord) throws XMLStreamException {
+        final Element element = createElement(document, isRecord);
+        Node parent = element;
+        while (parent != null) {
+            final int event = reader.next();
+            switch (event) {
+            case XMLStreamConstants.START_ELEMENT:
+                final Element child = createElement(document, false);
+                parent.appendChild(child);
+                parent = child;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                parent = parent == element ? null : parent.getParentNode();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                parent.appendChild(document.createTextNode(reader.getText()));
+                break;
+            case XMLStreamConstants.CDATA:
+                parent.appendChild(document.createCDATASection(reader.getText()));
+                break;
+            case XMLStreamConstants.COMMENT:
+                parent.appendChild(document.createComment(reader.getText()));
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                parent.appendChild(document.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                break;
+            default:
+                break;
+            }
+        }
+        return element;
+    }
+
+    private Element createElement(final Document document, final boolean isRecord) {
+        if (!isNamespaceAware) {
+            final Element element = document.createElement(getQName());
+            if (isRecord) {
+                // Declare all namespaces in scope, own attributes are set afterwards and win.
+                for (List<String[]> declarations : namespaceDeclarations) {
+                    for (String[] declaration : declarations) {
+                        element.setAttribute(declaration[0] == null ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + declaration[0], declaration[1]);
+                    }
+                }
+            }
+            for (int i = 0; i < reader.getAttributeCount(); ++i) {
+                element.setAttribute(getAttributeQName(i), reader.getAttributeValue(i));
+            }
+            return element;
+        }
+        final String uri = reader.getNamespaceURI();
+        final Element element = document.createElementNS((uri == null) || uri.isEmpty() ? null : uri, getQName());
+        if (isRecord) {
+            // Declare all namespaces in scope, inner declarations win.
+            for (List<String[]> declarations : namespaceDeclarations) {
+                for (String[] declaration : declarations) {
+                    declareNamespace(element, declaration[0], declaration[1]);
+                }
+            }
+        } else {
+            for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+                declareNamespace(element, reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+            }
+        }
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            final String attributeURI = reader.getAttributeNamespace(i);
+            element.setAttributeNS((attributeURI == null) || attributeURI.isEmpty() ? null : attributeURI, getAttributeQName(i), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static void declareNamespace(final Element element, final String prefix, final String uri) {
+        final String name = (prefix == null) || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+        element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, uri == null ? "" : uri);
+    }
+}
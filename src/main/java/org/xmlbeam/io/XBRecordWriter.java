@@ -0,0 +1,233 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.io;
+
+import java.util.LinkedList;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.config.XMLFactoriesConfig;
+import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.DOMSerializer;
+import org.xmlbeam.util.intern.XMLFactoriesPool;
+
+/**
+ * Writes a document record by record without building a DOM for the whole document. The
+ * document skeleton is written up to the content of the record container element when the writer
+ * is created. Each record passed to {@link #append(Object)} is written immediately and may be
+ * released by the caller afterwards. {@link #close()} writes the remaining part of the skeleton.
+ * Output properties (encoding, indentation, XML declaration) are taken from the transformer of
+ * the projector configuration.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class XBRecordWriter implements Closeable {
+
+    private static final String INDENT_AMOUNT = "{http://xml.apache.org/xslt}indent-amount";
+
+    private final OutputStream os;
+    private final boolean closeStream;
+    private final DOMSerializer serializer;
+
+    /**
+     * Open elements of the skeleton, container element last.
+     */
+    private final LinkedList<Element> openElements = new LinkedList<Element>();
+    private boolean isClosed = false;
+
+    /**
+     * @param projector
+     * @param os
+     *            target stream
+     * @param closeStream
+     *            true if the stream should be closed by {@link #close()}.
+     * @param skeleton
+     *            projection or DOM node of the document skeleton
+     * @param path
+     *            path to the element in the skeleton the records are appended to.
+     * @throws IOException
+     */
+    XBRecordWriter(final XBProjector projector, final OutputStream os, final boolean closeStream, final Object skeleton, final String path) throws IOException {
+        final Node skeletonNode = skeleton instanceof DOMAccess ? ((DOMAccess) skeleton).getDOMNode() : (Node) skeleton;
+        if (skeletonNode == null) {
+            throw new IllegalArgumentException("Parameter skeleton must be a projection or a DOM node.");
+        }
+        final Document document = DOMHelper.getOwnerDocumentFor(skeletonNode);
+        final Element container = findContainer(projector, document, path);
+
+        final Transformer transformer = projector.config().createTransformer(document);
+        final String encoding = getOutputProperty(transformer, OutputKeys.ENCODING, "UTF-8");
+        final boolean isIndenting = "yes".equals(transformer.getOutputProperty(OutputKeys.INDENT));
+        final int indentAmount = Integer.parseInt(getOutputProperty(transformer, INDENT_AMOUNT, "0"));
+        final boolean isUnicode = encoding.toUpperCase().startsWith("UTF-");
+
+        this.os = os;
+        this.closeStream = closeStream;
+        this.serializer = new DOMSerializer(new BufferedWriter(new OutputStreamWriter(os, Charset.forName(encoding))), isIndenting, indentAmount, !isUnicode);
+
+        if (!"yes".equals(transformer.getOutputProperty(OutputKeys.OMIT_XML_DECLARATION))) {
+            serializer.writeDeclaration(encoding);
+        }
+        final LinkedList<Node> pathToContainer = new LinkedList<Node>();
+        for (Node n = container; n != null; n = n.getParentNode()) {
+            pathToContainer.addFirst(n);
+        }
+        for (int i = 0; i < pathToContainer.size() - 1; ++i) {
+            final Node parent = pathToContainer.get(i);
+            final Node child = pathToContainer.get(i + 1);
+            if (parent.getNodeType() == Node.ELEMENT_NODE) {
+                serializer.writeStartTag((Element) parent);
+                openElements.addLast((Element) parent);
+            }
+            for (Node preceding = parent.getFirstChild(); preceding != child; preceding = preceding.getNextSibling()) {
+                writeChild(parent, preceding);
+            }
+            writeIndentation(parent, child);
+        }
+        serializer.writeStartTag(container);
+        openElements.addLast(container);
+        for (Node child = container.getFirstChild(); child != null; child = child.getNextSibling()) {
+            writeChild(container, child);
+        }
+    }
+
+    private static Element findContainer(final XBProjector projector, final Document document, final String path) {
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(projector.config().as(XMLFactoriesConfig.class));
+        final XPath xPath = pool.borrowXPath(document);
+        try {
+            final Object container = xPath.evaluate(path, document, XPathConstants.NODE);
+            if (!(container instanceof Element)) {
+                throw new IllegalArgumentException("Path \"" + path + "\" does not select an element of the skeleton.");
+            }
+            return (Element) container;
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("Path \"" + path + "\" is not valid.", e);
+        } finally {
+            pool.release(xPath);
+        }
+    }
+
+    private static String getOutputProperty(final Transformer transformer, final String name, final String defaultValue) {
+        try {
+            final String value = transformer.getOutputProperty(name);
+            return (value == null) || value.isEmpty() ? defaultValue : value;
+        } catch (IllegalArgumentException e) {
+            // Property not supported by this transformer.
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Write the given record as child of the container element.
+     *
+     * @param record
+     *            projection or DOM node. For projections of documents, the root element is
+     *            written.
+     * @return this to provide a fluent API.
+     * @throws IOException
+     */
+    public XBRecordWriter append(final Object record) throws IOException {
+        if (isClosed) {
+            throw new IllegalStateException("Writer is closed.");
+        }
+        Node node = record instanceof DOMAccess ? ((DOMAccess) record).getDOMNode() : (Node) record;
+        if (node == null) {
+            throw new IllegalArgumentException("Parameter record must be a projection or a DOM node.");
+        }
+        if (node.getNodeType() == Node.DOCUMENT_NODE) {
+            node = ((Document) node).getDocumentElement();
+        }
+        serializer.newLine();
+        serializer.writeNode(node);
+        return this;
+    }
+
+    /**
+     * Write the rest of the skeleton and flush the output. The stream is closed if the writer was
+     * opened on a file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            Node child = openElements.getLast();
+            while (!openElements.isEmpty()) {
+                final Element element = openElements.removeLast();
+                if (element != child) {
+                    for (Node following = child.getNextSibling(); following != null; following = following.getNextSibling()) {
+                        writeChild(element, following);
+                    }
+                }
+                serializer.newLine();
+                serializer.writeEndTag(element);
+                child = element;
+            }
+            // Nodes following the root element
+            for (Node following = child.getNextSibling(); following != null; following = following.getNextSibling()) {
+                writeChild(child.getParentNode(), following);
+            }
+            serializer.flush();
+        } finally {
+            if (closeStream) {
+                os.close();
+            }
+        }
+    }
+
+    private void writeChild(final Node parent, final Node child) throws IOException {
+        if (isIgnorableWhitespace(child)) {
+            return;
+        }
+        writeIndentation(parent, child);
+        serializer.writeNode(child);
+    }
+
+    /**
+     * The skeleton elements contain records, so their content is indented like element only
+     * content.
+     */
+    private void writeIndentation(final Node parent, final Node child) throws IOException {
+        if (parent.getNodeType() == Node.DOCUMENT_NODE) {
+            if (child.getPreviousSibling() != null) {
+                serializer.newLine();
+            }
+            return;
+        }
+        serializer.newLine();
+    }
+
+    private static boolean isIgnorableWhitespace(final Node node) {
+        return (node.getNodeType() == Node.TEXT_NODE) && node.getNodeValue().trim().isEmpty();
+    }
+}
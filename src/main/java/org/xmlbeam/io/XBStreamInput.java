@@ -21,8 +21,13 @@ import java.io.InputStream;
 import javax.xml.parsers.DocumentBuilder;
 
 import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xmlbeam.XBProjector;
+import org.xmlbeam.config.XMLFactoriesConfig;
+import org.xmlbeam.util.intern.ProjectionCoverage;
+import org.xmlbeam.util.intern.PrunedDOMBuilder;
+import org.xmlbeam.util.intern.XMLFactoriesPool;
 
 /**
  * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
@@ -51,15 +56,65 @@ public class XBStreamInput {
      * @throws IOException
      */
     public <T> T read(final Class<T> projectionInterface) throws IOException {
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(projector.config().as(XMLFactoriesConfig.class));
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
         try {
-            DocumentBuilder documentBuilder = projector.config().createDocumentBuilder();
             Document document = systemID==null ? documentBuilder.parse(is) : documentBuilder.parse(is,systemID);
             return projector.projectDOMNode(document, projectionInterface);
         } catch (SAXException e) {
             throw new RuntimeException(e);
+        } finally {
+            pool.release(documentBuilder);
         }
     }
    
+    /**
+     * Create a new projection by parsing only the parts of the document the projection interface
+     * reads. The static paths of the reading methods of the interface and its subprojections
+     * determine which elements are kept. The resulting document is read only, invoking a method
+     * whose path is not covered throws an {@link IllegalStateException}. The parser is configured
+     * by the DocumentBuilderFactory of the configuration. An entity resolver or error handler the
+     * configuration sets on its DocumentBuilders is not used.
+     * 
+     * @param projectionInterface
+     *            A Java interface to project the data on.
+     * @return a projection to the partial document
+     * @throws IOException
+     */
+    public <T> T readPruned(final Class<T> projectionInterface) throws IOException {
+        final InputSource source = new InputSource(is);
+        source.setSystemId(systemID);
+        return readPruned(projector, source, projectionInterface);
+    }
+
+    static <T> T readPruned(final XBProjector projector, final InputSource source, final Class<T> projectionInterface) throws IOException {
+        final ProjectionCoverage coverage = ProjectionCoverage.analyze(projectionInterface, projector.config().getTypeConverter(), projector.config().getExternalizer());
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(projector.config().as(XMLFactoriesConfig.class));
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
+        try {
+            final Document document = PrunedDOMBuilder.parse(pool.getDocumentBuilderFactory(), documentBuilder, source, coverage);
+            return projector.projectDOMNode(document, projectionInterface);
+        } catch (SAXException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.release(documentBuilder);
+        }
+    }
+
+    /**
+     * Read the elements matching the given path one after another without parsing the whole
+     * document into memory. See {@link XBRecordIterator}.
+     * 
+     * @param path
+     *            absolute path of element names like <code>/rss/channel/item</code>.
+     * @param projectionInterface
+     *            A Java interface to project each element on.
+     * @return iterator over projections of matching elements.
+     */
+    public <T> XBRecordIterator<T> readEach(final String path, final Class<T> projectionInterface) {
+        return new XBRecordIterator<T>(projector, is, false, path, projectionInterface);
+    }
+
     public XBStreamInput setSystemID(String systemID) {
         this.systemID=systemID;
         return this;
@@ -15,14 +15,18 @@
  */
 package org.xmlbeam.io;
 
+import java.io.IOException;
 import java.io.OutputStream;
 
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.parsers.DocumentBuilder;
 
+import org.w3c.dom.Document;
 import org.xmlbeam.dom.DOMAccess;
 import org.xmlbeam.XBProjector;
+import org.xmlbeam.config.XMLFactoriesConfig;
+import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.DOMSerializer;
+import org.xmlbeam.util.intern.XMLFactoriesPool;
 
 /**
  * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
@@ -46,10 +50,54 @@ public class XBStreamOutput {
      */
     public void write(Object projection ) {        
         try {
-            projector.config().createTransformer().transform(new DOMSource(((DOMAccess)projection).getDOMNode()), new StreamResult(os));
-        } catch (TransformerException e) {
+            DOMSerializer.serialize(projector.config().as(XMLFactoriesConfig.class), ((DOMAccess) projection).getDOMNode(), os);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Start writing a document record by record. The document consists of the elements of the
+     * given path, records are appended to the last element.
+     * 
+     * @param path
+     *            path to the record container like <code>/rss/channel</code>.
+     * @return writer to append the records to. Call {@link XBRecordWriter#close()} to finish
+     *         the document.
+     * @throws IOException
+     */
+    public XBRecordWriter writeEach(final String path) throws IOException {
+        return writeEach(createSkeleton(projector, path), path);
+    }
+
+    /**
+     * Start writing a document record by record. Everything in the skeleton document before the
+     * content end of the element selected by path is written immediately, the rest when the
+     * writer is closed.
+     * 
+     * @param skeleton
+     *            projection or DOM node of the document skeleton.
+     * @param path
+     *            XPath selecting the record container element in the skeleton.
+     * @return writer to append the records to. Call {@link XBRecordWriter#close()} to finish
+     *         the document.
+     * @throws IOException
+     */
+    public XBRecordWriter writeEach(final Object skeleton, final String path) throws IOException {
+        return new XBRecordWriter(projector, os, false, skeleton, path);
+    }
+
+    static Document createSkeleton(final XBProjector projector, final String path) {
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(projector.config().as(XMLFactoriesConfig.class));
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
+        final Document document;
+        try {
+            document = documentBuilder.newDocument();
+        } finally {
+            pool.release(documentBuilder);
+        }
+        DOMHelper.ensureElementExists(document, path);
+        return document;
+    }
+
 }
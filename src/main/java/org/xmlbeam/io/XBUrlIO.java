@@ -19,11 +19,17 @@ import java.util.HashMap;
 import java.util.Map;
 
 import java.io.IOException;
+import java.io.OutputStream;
+
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 import org.xmlbeam.XBProjector;
+import org.xmlbeam.config.XMLFactoriesConfig;
+import org.xmlbeam.dom.DOMAccess;
 import org.xmlbeam.util.IOHelper;
-import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.CompactDocument;
+import org.xmlbeam.util.intern.DOMSerializer;
 
 /**
  * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
@@ -52,23 +58,41 @@ public class XBUrlIO {
      * @throws IOException
      */
     public <T> T read(final Class<T> projectionInterface) throws IOException {
-        Document document = DOMHelper.getDocumentFromURL(projector.config().createDocumentBuilder(), url, requestProperties, projectionInterface);
+        final XBDocumentCache cache = projector.config().getDocumentCache();
+        Document document = cache.getDocument(projector.config().as(XMLFactoriesConfig.class), projector.config().getHttpTransport(), url, requestProperties, projectionInterface);
+        if ((cache.getMaxSize() > 0) && !(document instanceof CompactDocument)) {
+            // The projection may change its document, so it must not change the cached one.
+            // Compact documents are read only and can be shared.
+            final String documentURI = document.getDocumentURI();
+            document = (Document) document.cloneNode(true);
+            document.setDocumentURI(documentURI);
+        }
         return projector.projectDOMNode(document, projectionInterface);
     }
 
     /**
-     * Post the projected document to a HTTP URL. The response is provided as a raw string.
+     * Post the projected document to a HTTP URL. The document is streamed into the request body.
+     * The response is provided as a raw string.
      * 
      * @param projection
-     * @param httpurl
      * @return response as String
      * @throws IOException
      */
-    @SuppressWarnings("unchecked")
     public String write(Object projection) throws IOException {
-        return IOHelper.inputStreamToString(IOHelper.httpPost(url, projection.toString(), requestProperties));
-    }        
-    
+        final Node node = ((DOMAccess) projection).getDOMNode();
+        final XBHttpResponse response = projector.config().getHttpTransport().post(url, new XBHttpTransport.RequestBody() {
+            @Override
+            public void writeTo(final OutputStream outputStream) throws IOException {
+                DOMSerializer.serialize(projector.config().as(XMLFactoriesConfig.class), node, outputStream);
+            }
+        }, requestProperties);
+        try {
+            return IOHelper.inputStreamToString(response.getBody());
+        } finally {
+            response.close();
+        }
+    }
+
     public XBUrlIO addRequestProperties(Map<String,String> params) {
         requestProperties.putAll(params);
         return this;
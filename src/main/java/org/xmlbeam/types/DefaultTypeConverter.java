@@ -42,6 +42,10 @@ public class DefaultTypeConverter implements TypeConverter {
 
     private final Map<Class<?>, Conversion<?>> CONVERSIONS = new HashMap<Class<?>, Conversion<?>>();
 
+    private final Map<Class<?>, Conversion<?>> BUILT_IN_CONVERSIONS;
+
+    private volatile int modificationCount = 0;
+
     public DefaultTypeConverter() {
         CONVERSIONS.put(Boolean.class, new Conversion<Boolean>(false) {
             @Override
@@ -117,6 +121,7 @@ public class DefaultTypeConverter implements TypeConverter {
 // public Node convert(String data) {
 // return null;
 // }});
+        BUILT_IN_CONVERSIONS = new HashMap<Class<?>, Conversion<?>>(CONVERSIONS);
     }
 
     /**
@@ -154,10 +159,27 @@ public class DefaultTypeConverter implements TypeConverter {
         assert type != null;
         if (conversion == null) {
             CONVERSIONS.remove(type);
-            return this;
+        } else {
+            CONVERSIONS.put(type, conversion);
         }
-        CONVERSIONS.put(type, conversion);
+        ++modificationCount;
         return this;
     }
 
+    /**
+     * @return a number changing whenever a conversion is set or removed, so decisions based on
+     *         {@link #isConvertable(Class)} can be cached until then.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * @param type
+     * @return true if the given type is converted by the built in conversion of this class.
+     */
+    public boolean hasBuiltInConversion(final Class<?> type) {
+        final Conversion<?> conversion = CONVERSIONS.get(type);
+        return (conversion != null) && (conversion == BUILT_IN_CONVERSIONS.get(type));
+    }
 }
@@ -85,13 +85,30 @@ public final class IOHelper {
      * @throws IOException
      */
     public static InputStream httpGet(String httpurl, Map<String, String>... requestProperties) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) new URL(httpurl).openConnection();        
+        final HttpURLConnection connection = httpGetConnection(httpurl, null);
         for (Map<String, String> props : requestProperties) {
             addRequestProperties(props, connection);
-        }        
+        }
         return connection.getInputStream();
     }
 
+    /**
+     * Prepare a http get request without sending it. Use this to add further header fields or to
+     * inspect the response headers.
+     * 
+     * @param httpurl
+     *            get url
+     * @param requestProperties
+     *            http header fields (key->value), may be null.
+     * @return unconnected connection
+     * @throws IOException
+     */
+    public static HttpURLConnection httpGetConnection(String httpurl, Map<String, String> requestProperties) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(httpurl).openConnection();
+        addRequestProperties(requestProperties, connection);
+        return connection;
+    }
+
     /**
      * Simple http post implementation. Supports HTTP Basic authentication via request properties.
      * You may want to use {@link #createBasicAuthenticationProperty} to add authentication.
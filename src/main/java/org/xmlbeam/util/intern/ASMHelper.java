@@ -15,11 +15,14 @@
  */
 package org.xmlbeam.util.intern;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.WeakHashMap;
 
 import org.xmlbeam.util.intern.org.objectweb.asm.ClassWriter;
 import org.xmlbeam.util.intern.org.objectweb.asm.FieldVisitor;
@@ -34,18 +37,27 @@ import org.xmlbeam.util.intern.org.objectweb.asm.Type;
 public class ASMHelper implements Opcodes {
 
 
-    public static <T> T create(final Class<T> projectionInterface, final Object projectionInvocationHandler) {
-        final String proxyClassName = "P" + UUID.randomUUID().toString();
+    /**
+     * Generated classes by projection interface. Neither keys nor values are strongly referenced,
+     * so projection interfaces and their generated classes may be unloaded.
+     */
+    private static final Map<Class<?>, WeakReference<Class<?>>> GENERATED_CLASSES = new WeakHashMap<Class<?>, WeakReference<Class<?>>>();
 
-        Class<?> clazz = new ClassLoader() {
-            public Class<?> defineClass(final String name, final byte[] b) {
-                return defineClass(name, b, 0, b.length);
-            }
-        }.defineClass(proxyClassName, getClassData(proxyClassName,projectionInterface));
+    /**
+     * Create an object implementing the projection interface delegating all non default methods to
+     * the given handler. The delegating class is generated only once per projection interface.
+     *
+     * @param projectionInterface
+     * @param projectionInvocationHandler
+     * @return a new instance of the generated class.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T create(final Class<T> projectionInterface, final Object projectionInvocationHandler) {
+        final Class<?> clazz = getOrCreateClass(projectionInterface);
         T o;
 
         try {
-            Constructor<?> constructor = clazz.getConstructors()[0];
+            Constructor<?> constructor = clazz.getConstructor(Object.class);
             o = (T) constructor.newInstance(projectionInvocationHandler);
         } catch (IllegalArgumentException e) {
             throw new RuntimeException(e);
@@ -57,10 +69,31 @@ public class ASMHelper implements Opcodes {
             throw new RuntimeException(e);
         } catch (InvocationTargetException e) {
             throw new RuntimeException(e);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
         }
         return o;
     }
 
+    private static Class<?> getOrCreateClass(final Class<?> projectionInterface) {
+        synchronized (GENERATED_CLASSES) {
+            final WeakReference<Class<?>> reference = GENERATED_CLASSES.get(projectionInterface);
+            Class<?> clazz = reference == null ? null : reference.get();
+            if (clazz != null) {
+                return clazz;
+            }
+            final String proxyClassName = "P" + UUID.randomUUID().toString();
+            final ClassLoader parent = projectionInterface.getClassLoader() == null ? ClassLoader.getSystemClassLoader() : projectionInterface.getClassLoader();
+            clazz = new ClassLoader(parent) {
+                public Class<?> defineClass(final String name, final byte[] b) {
+                    return defineClass(name, b, 0, b.length);
+                }
+            }.defineClass(proxyClassName, getClassData(proxyClassName, projectionInterface));
+            GENERATED_CLASSES.put(projectionInterface, new WeakReference<Class<?>>(clazz));
+            return clazz;
+        }
+    }
+
     private static byte[] getClassData(final String proxyClassName, final Class<?> projectionInterface) {
         ClassWriter cw = new ClassWriter(0);
         FieldVisitor fv;
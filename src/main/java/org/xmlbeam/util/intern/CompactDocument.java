@@ -0,0 +1,666 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+
+/**
+ * Read only document storing its nodes in parallel primitive arrays instead of node objects.
+ * Each node costs a few bytes for its kind, parent, first child, next sibling, name and value.
+ * Names and strings are pooled. Node objects are created on access and are dropped by the
+ * garbage collector when they are not referenced any more. As long as a node object is
+ * referenced, the same instance is returned for its node, because XPath implementations compare
+ * nodes by identity. All methods changing the document throw a {@link org.w3c.dom.DOMException}.
+ * Notice that this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class CompactDocument extends CompactNode implements Document {
+
+    /**
+     * Qualified name of elements, attributes and processing instructions.
+     */
+    static final class Name {
+        final String qName;
+        final String localName;
+        final String prefix;
+        final String uri;
+
+        Name(final String qName, final String localName, final String prefix, final String uri) {
+            this.qName = qName;
+            this.localName = localName;
+            this.prefix = prefix;
+            this.uri = uri;
+        }
+    }
+
+    private static final class NodeReference extends WeakReference<CompactNode> {
+        private final Integer index;
+
+        NodeReference(final CompactNode node, final Integer index, final ReferenceQueue<CompactNode> queue) {
+            super(node, queue);
+            this.index = index;
+        }
+    }
+
+    private final byte[] kinds;
+    private final int[] parents;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] names;
+
+    /**
+     * String index of the node value, or number of attributes for elements.
+     */
+    private final int[] values;
+    private final String[] strings;
+    private final Name[] nameTable;
+    private final String documentURI;
+    private final DOMImplementation implementation;
+
+    private Map<Integer, NodeReference> nodes = new HashMap<Integer, NodeReference>();
+    private int peakNodeCount = 0;
+    private final ReferenceQueue<CompactNode> collectedNodes = new ReferenceQueue<CompactNode>();
+    private Map<String, Object> userData;
+
+    private CompactDocument(final Builder builder, final String documentURI, final DOMImplementation implementation) {
+        super(null, 0);
+        final int size = builder.size;
+        this.kinds = Arrays.copyOf(builder.kinds, size);
+        this.parents = Arrays.copyOf(builder.parents, size);
+        this.firstChildren = Arrays.copyOf(builder.firstChildren, size);
+        this.nextSiblings = Arrays.copyOf(builder.nextSiblings, size);
+        this.names = Arrays.copyOf(builder.names, size);
+        this.values = Arrays.copyOf(builder.values, size);
+        this.strings = builder.strings.toArray(new String[builder.strings.size()]);
+        this.nameTable = builder.nameTable.toArray(new Name[builder.nameTable.size()]);
+        this.documentURI = documentURI;
+        this.implementation = implementation;
+    }
+
+    /**
+     * @return number of nodes including attributes and the document node.
+     */
+    public int getNodeCount() {
+        return kinds.length;
+    }
+
+    // Access to the node arrays
+
+    short kindOf(final int index) {
+        return kinds[index];
+    }
+
+    int parentOf(final int index) {
+        return parents[index];
+    }
+
+    int firstChildOf(final int index) {
+        return firstChildren[index];
+    }
+
+    int nextSiblingOf(final int index) {
+        return nextSiblings[index];
+    }
+
+    Name nameOf(final int index) {
+        return nameTable[names[index]];
+    }
+
+    String valueOf(final int index) {
+        return strings[values[index]];
+    }
+
+    int attributeCountOf(final int index) {
+        return kinds[index] == ELEMENT_NODE ? values[index] : 0;
+    }
+
+    boolean isAncestor(final int ancestor, final int index) {
+        for (int i = parents[index]; i >= 0; i = parents[i]) {
+            if (i == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return index of the first node following the subtree of the given node.
+     */
+    private int endOfSubtree(final int index) {
+        for (int i = index; i >= 0; i = parents[i]) {
+            if (nextSiblings[i] >= 0) {
+                return nextSiblings[i];
+            }
+        }
+        return kinds.length;
+    }
+
+    void appendTextContent(final int index, final StringBuilder builder) {
+        final int end = endOfSubtree(index);
+        for (int i = index + 1; i < end; ++i) {
+            if ((kinds[i] == TEXT_NODE) || (kinds[i] == CDATA_SECTION_NODE)) {
+                builder.append(strings[values[i]]);
+            }
+        }
+    }
+
+    NodeList findElements(final int index, final String namespaceURI, final String name, final boolean byLocalName) {
+        final List<Node> elements = new ArrayList<Node>();
+        final int end = endOfSubtree(index);
+        final boolean anyName = "*".equals(name);
+        final boolean anyNamespace = "*".equals(namespaceURI);
+        final String uri = (namespaceURI == null) || namespaceURI.isEmpty() ? null : namespaceURI;
+        for (int i = index + 1; i < end; ++i) {
+            if (kinds[i] != ELEMENT_NODE) {
+                continue;
+            }
+            final Name elementName = nameTable[names[i]];
+            if (!byLocalName) {
+                if (anyName || elementName.qName.equals(name)) {
+                    elements.add(nodeAt(i));
+                }
+                continue;
+            }
+            final String localName = elementName.localName == null ? elementName.qName : elementName.localName;
+            if ((anyName || localName.equals(name)) && (anyNamespace || (uri == null ? elementName.uri == null : uri.equals(elementName.uri)))) {
+                elements.add(nodeAt(i));
+            }
+        }
+        return new StaticNodeList(elements);
+    }
+
+    /**
+     * @param index
+     * @return the node object for the given index, or null for a negative index.
+     */
+    synchronized Node nodeAt(final int index) {
+        if (index <= 0) {
+            return index == 0 ? this : null;
+        }
+        expungeCollectedNodes();
+        final Integer key = Integer.valueOf(index);
+        final NodeReference reference = nodes.get(key);
+        CompactNode node = reference == null ? null : reference.get();
+        if (node != null) {
+            return node;
+        }
+        switch (kinds[index]) {
+        case ELEMENT_NODE:
+            node = new CompactElement(this, index);
+            break;
+        case ATTRIBUTE_NODE:
+            node = new CompactAttr(this, index);
+            break;
+        case TEXT_NODE:
+            node = new CompactText(this, index);
+            break;
+        case CDATA_SECTION_NODE:
+            node = new CompactCDATASection(this, index);
+            break;
+        case COMMENT_NODE:
+            node = new CompactComment(this, index);
+            break;
+        default:
+            node = new CompactProcessingInstruction(this, index);
+            break;
+        }
+        nodes.put(key, new NodeReference(node, key, collectedNodes));
+        peakNodeCount = Math.max(peakNodeCount, nodes.size());
+        return node;
+    }
+
+    private void expungeCollectedNodes() {
+        NodeReference collected = (NodeReference) collectedNodes.poll();
+        if (collected == null) {
+            return;
+        }
+        for (; collected != null; collected = (NodeReference) collectedNodes.poll()) {
+            if (nodes.get(collected.index) == collected) {
+                nodes.remove(collected.index);
+            }
+        }
+        if (nodes.size() < (peakNodeCount / 4)) {
+            // A HashMap never shrinks its table, so a copy is made after most nodes were dropped.
+            nodes = new HashMap<Integer, NodeReference>(nodes);
+            peakNodeCount = nodes.size();
+        }
+    }
+
+    synchronized Object setUserData(final int index, final String key, final Object data) {
+        if (userData == null) {
+            userData = new HashMap<String, Object>();
+        }
+        final String nodeKey = index + ":" + key;
+        return data == null ? userData.remove(nodeKey) : userData.put(nodeKey, data);
+    }
+
+    synchronized Object getUserData(final int index, final String key) {
+        return userData == null ? null : userData.get(index + ":" + key);
+    }
+
+    // Node
+
+    @Override
+    CompactDocument.Name nameEntry() {
+        return null;
+    }
+
+    @Override
+    public String getNodeName() {
+        return "#document";
+    }
+
+    @Override
+    public short getNodeType() {
+        return DOCUMENT_NODE;
+    }
+
+    @Override
+    public Node getParentNode() {
+        return null;
+    }
+
+    @Override
+    public Node getNextSibling() {
+        return null;
+    }
+
+    @Override
+    public Node getPreviousSibling() {
+        return null;
+    }
+
+    @Override
+    public Document getOwnerDocument() {
+        return null;
+    }
+
+    @Override
+    public String getTextContent() {
+        return null;
+    }
+
+    @Override
+    Element getNamespaceScope() {
+        return getDocumentElement();
+    }
+
+    @Override
+    public Object setUserData(final String key, final Object data, final org.w3c.dom.UserDataHandler handler) {
+        return setUserData(0, key, data);
+    }
+
+    @Override
+    public Object getUserData(final String key) {
+        return getUserData(0, key);
+    }
+
+    // Document
+
+    @Override
+    public DocumentType getDoctype() {
+        return null;
+    }
+
+    @Override
+    public DOMImplementation getImplementation() {
+        return implementation;
+    }
+
+    @Override
+    public Element getDocumentElement() {
+        for (int child = firstChildren[0]; child >= 0; child = nextSiblings[child]) {
+            if (kinds[child] == ELEMENT_NODE) {
+                return (Element) nodeAt(child);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Element createElement(final String tagName) {
+        throw readOnly();
+    }
+
+    @Override
+    public DocumentFragment createDocumentFragment() {
+        throw readOnly();
+    }
+
+    @Override
+    public Text createTextNode(final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public Comment createComment(final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public CDATASection createCDATASection(final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public ProcessingInstruction createProcessingInstruction(final String target, final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public Attr createAttribute(final String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public EntityReference createEntityReference(final String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public NodeList getElementsByTagName(final String tagname) {
+        return findElements(0, null, tagname, false);
+    }
+
+    @Override
+    public Node importNode(final Node importedNode, final boolean deep) {
+        throw readOnly();
+    }
+
+    @Override
+    public Element createElementNS(final String namespaceURI, final String qualifiedName) {
+        throw readOnly();
+    }
+
+    @Override
+    public Attr createAttributeNS(final String namespaceURI, final String qualifiedName) {
+        throw readOnly();
+    }
+
+    @Override
+    public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) {
+        return findElements(0, namespaceURI, localName, true);
+    }
+
+    @Override
+    public Element getElementById(final String elementId) {
+        return null;
+    }
+
+    @Override
+    public String getInputEncoding() {
+        return null;
+    }
+
+    @Override
+    public String getXmlEncoding() {
+        return null;
+    }
+
+    @Override
+    public boolean getXmlStandalone() {
+        return false;
+    }
+
+    @Override
+    public void setXmlStandalone(final boolean xmlStandalone) {
+        throw readOnly();
+    }
+
+    @Override
+    public String getXmlVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public void setXmlVersion(final String xmlVersion) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean getStrictErrorChecking() {
+        return true;
+    }
+
+    @Override
+    public void setStrictErrorChecking(final boolean strictErrorChecking) {
+        // Nothing to check, the document is not changed.
+    }
+
+    @Override
+    public String getDocumentURI() {
+        return documentURI;
+    }
+
+    @Override
+    public void setDocumentURI(final String documentURI) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node adoptNode(final Node source) {
+        throw readOnly();
+    }
+
+    @Override
+    public DOMConfiguration getDomConfig() {
+        return null;
+    }
+
+    @Override
+    public void normalizeDocument() {
+        // Text is normalized already.
+    }
+
+    @Override
+    public Node renameNode(final Node n, final String namespaceURI, final String qualifiedName) {
+        throw readOnly();
+    }
+
+    /**
+     * Collects the nodes of a document while parsing. Adjacent text is joined into one node.
+     */
+    static final class Builder {
+        private byte[] kinds = new byte[64];
+        private int[] parents = new int[64];
+        private int[] firstChildren = new int[64];
+        private int[] nextSiblings = new int[64];
+        private int[] names = new int[64];
+        private int[] values = new int[64];
+        private int size = 0;
+
+        private final List<String> strings = new ArrayList<String>();
+        private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        private final List<Name> nameTable = new ArrayList<Name>();
+        private final Map<String, Integer> nameIndexes = new HashMap<String, Integer>();
+
+        /**
+         * Open nodes and their last child, document first.
+         */
+        private int[] openNodes = new int[16];
+        private int[] lastChildren = new int[16];
+        private int depth = 0;
+
+        private final StringBuilder text = new StringBuilder();
+        private boolean isInCDATA = false;
+
+        Builder() {
+            add(DOCUMENT_NODE, -1, -1, -1);
+            openNodes[0] = 0;
+            lastChildren[0] = -1;
+        }
+
+        private int add(final short kind, final int parent, final int name, final int value) {
+            if (size == kinds.length) {
+                final int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+                names = Arrays.copyOf(names, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            final int index = size++;
+            kinds[index] = (byte) kind;
+            parents[index] = parent;
+            firstChildren[index] = -1;
+            nextSiblings[index] = -1;
+            names[index] = name;
+            values[index] = value;
+            return index;
+        }
+
+        private int addChild(final short kind, final int name, final int value) {
+            final int parent = openNodes[depth];
+            final int index = add(kind, parent, name, value);
+            if (lastChildren[depth] < 0) {
+                firstChildren[parent] = index;
+            } else {
+                nextSiblings[lastChildren[depth]] = index;
+            }
+            lastChildren[depth] = index;
+            return index;
+        }
+
+        private int string(final String s) {
+            final Integer index = stringIndexes.get(s);
+            if (index != null) {
+                return index.intValue();
+            }
+            strings.add(s);
+            stringIndexes.put(s, strings.size() - 1);
+            return strings.size() - 1;
+        }
+
+        private int name(final String qName, final String localName, final String uri) {
+            final String key = uri == null ? qName : uri + ' ' + qName;
+            final Integer index = nameIndexes.get(key);
+            if (index != null) {
+                return index.intValue();
+            }
+            final int colon = qName.indexOf(':');
+            final Name name = localName == null ? new Name(qName, null, null, null) : new Name(qName, localName, colon < 0 ? null : qName.substring(0, colon), uri);
+            nameTable.add(name);
+            nameIndexes.put(key, nameTable.size() - 1);
+            return nameTable.size() - 1;
+        }
+
+        private void flushText() {
+            if ((text.length() == 0) && (!isInCDATA)) {
+                return;
+            }
+            addChild(isInCDATA ? CDATA_SECTION_NODE : TEXT_NODE, -1, string(text.toString()));
+            text.setLength(0);
+        }
+
+        /**
+         * @param uri
+         *            namespace URI or null if the parser is not namespace aware
+         * @param localName
+         *            local name or null if the parser is not namespace aware
+         * @param qName
+         * @param attributes
+         * @param namespaceDeclarations
+         *            prefix and URI of each namespace declared by this element
+         */
+        void startElement(final String uri, final String localName, final String qName, final Attributes attributes, final List<String[]> namespaceDeclarations) {
+            flushText();
+            final boolean isNamespaceAware = localName != null;
+            final int element = addChild(ELEMENT_NODE, name(qName, localName, emptyToNull(uri)), namespaceDeclarations.size() + attributes.getLength());
+            for (String[] declaration : namespaceDeclarations) {
+                final String prefix = declaration[0];
+                final String attributeName = prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+                add(ATTRIBUTE_NODE, element, name(attributeName, prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : prefix, XMLConstants.XMLNS_ATTRIBUTE_NS_URI), string(declaration[1]));
+            }
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                final String attributeQName = attributes.getQName(i);
+                final int name = isNamespaceAware ? name(attributeQName, attributes.getLocalName(i), emptyToNull(attributes.getURI(i))) : name(attributeQName, null, null);
+                add(ATTRIBUTE_NODE, element, name, string(attributes.getValue(i)));
+            }
+            ++depth;
+            if (depth == openNodes.length) {
+                openNodes = Arrays.copyOf(openNodes, depth * 2);
+                lastChildren = Arrays.copyOf(lastChildren, depth * 2);
+            }
+            openNodes[depth] = element;
+            lastChildren[depth] = -1;
+        }
+
+        void endElement() {
+            flushText();
+            --depth;
+        }
+
+        void characters(final char[] ch, final int start, final int length) {
+            if (depth > 0) {
+                text.append(ch, start, length);
+            }
+        }
+
+        void startCDATA() {
+            flushText();
+            isInCDATA = depth > 0;
+        }
+
+        void endCDATA() {
+            flushText();
+            isInCDATA = false;
+        }
+
+        void comment(final char[] ch, final int start, final int length) {
+            flushText();
+            addChild(COMMENT_NODE, -1, string(new String(ch, start, length)));
+        }
+
+        void processingInstruction(final String target, final String data) {
+            flushText();
+            addChild(PROCESSING_INSTRUCTION_NODE, name(target, null, null), string(data == null ? "" : data));
+        }
+
+        CompactDocument build(final String documentURI, final DOMImplementation implementation) {
+            return new CompactDocument(this, documentURI, implementation);
+        }
+
+        private static String emptyToNull(final String s) {
+            return (s == null) || s.isEmpty() ? null : s;
+        }
+    }
+}
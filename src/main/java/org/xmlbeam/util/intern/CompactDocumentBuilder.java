@@ -0,0 +1,250 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * DocumentBuilder parsing into read only {@link CompactDocument}s. New documents are created by
+ * the wrapped builder, so they can be changed as usual. Documents are parsed by a SAX reader
+ * configured like the factory of the wrapped builder, see
+ * {@link DOMHelper#createXMLReader(DocumentBuilderFactory)}. Comments are dropped and CDATA
+ * sections become text if the factory says so. Entity references are always expanded. Notice that
+ * this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class CompactDocumentBuilder extends DocumentBuilder {
+
+    private static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+
+    private final DocumentBuilderFactory factory;
+    private final DocumentBuilder delegate;
+    private final boolean isIgnoringComments;
+    private final boolean isCoalescing;
+    private XMLReader reader;
+    private EntityResolver entityResolver;
+    private ErrorHandler errorHandler;
+
+    /**
+     * @param factory
+     *            the factory the delegate was created by, used to configure the parser.
+     * @param delegate
+     *            builder used for new documents and to determine the namespace awareness.
+     */
+    public CompactDocumentBuilder(final DocumentBuilderFactory factory, final DocumentBuilder delegate) {
+        this.factory = factory;
+        this.delegate = delegate;
+        synchronized (factory) {
+            this.isIgnoringComments = factory.isIgnoringComments();
+            this.isCoalescing = factory.isCoalescing();
+        }
+    }
+
+    private static final class Handler extends DefaultHandler implements LexicalHandler {
+        private final CompactDocument.Builder builder = new CompactDocument.Builder();
+        private final List<String[]> pendingNamespaces = new ArrayList<String[]>();
+        private final boolean isNamespaceAware;
+        private final boolean isIgnoringComments;
+        private final boolean isCoalescing;
+        private final ErrorHandler errorHandler;
+
+        Handler(final boolean isNamespaceAware, final boolean isIgnoringComments, final boolean isCoalescing, final ErrorHandler errorHandler) {
+            this.isNamespaceAware = isNamespaceAware;
+            this.isIgnoringComments = isIgnoringComments;
+            this.isCoalescing = isCoalescing;
+            this.errorHandler = errorHandler;
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            pendingNamespaces.add(new String[] { prefix, uri });
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+            if (isNamespaceAware) {
+                builder.startElement(uri, localName, qName, attributes, pendingNamespaces);
+            } else {
+                builder.startElement(null, null, qName, attributes, pendingNamespaces);
+            }
+            pendingNamespaces.clear();
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) {
+            builder.endElement();
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) {
+            builder.characters(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(final char[] ch, final int start, final int length) {
+            builder.characters(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(final String target, final String data) {
+            builder.processingInstruction(target, data);
+        }
+
+        @Override
+        public void comment(final char[] ch, final int start, final int length) {
+            if (!isIgnoringComments) {
+                builder.comment(ch, start, length);
+            }
+        }
+
+        @Override
+        public void startCDATA() {
+            if (!isCoalescing) {
+                builder.startCDATA();
+            }
+        }
+
+        @Override
+        public void endCDATA() {
+            if (!isCoalescing) {
+                builder.endCDATA();
+            }
+        }
+
+        @Override
+        public void startDTD(final String name, final String publicId, final String systemId) {
+        }
+
+        @Override
+        public void endDTD() {
+        }
+
+        @Override
+        public void startEntity(final String name) {
+        }
+
+        @Override
+        public void endEntity(final String name) {
+        }
+
+        @Override
+        public void warning(final SAXParseException e) throws SAXException {
+            if (errorHandler != null) {
+                errorHandler.warning(e);
+            }
+        }
+
+        @Override
+        public void error(final SAXParseException e) throws SAXException {
+            if (errorHandler != null) {
+                errorHandler.error(e);
+                return;
+            }
+            throw e;
+        }
+
+        @Override
+        public void fatalError(final SAXParseException e) throws SAXException {
+            if (errorHandler != null) {
+                errorHandler.fatalError(e);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Document parse(final InputSource source) throws SAXException, IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("InputSource must not be null");
+        }
+        final XMLReader xmlReader = getReader();
+        final Handler handler = new Handler(delegate.isNamespaceAware(), isIgnoringComments, isCoalescing, errorHandler);
+        xmlReader.setContentHandler(handler);
+        xmlReader.setErrorHandler(handler);
+        xmlReader.setEntityResolver(entityResolver);
+        xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
+        try {
+            xmlReader.parse(source);
+        } finally {
+            xmlReader.setContentHandler(null);
+            xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, null);
+        }
+        return handler.builder.build(source.getSystemId(), delegate.getDOMImplementation());
+    }
+
+    private XMLReader getReader() throws SAXException {
+        if (reader != null) {
+            return reader;
+        }
+        reader = DOMHelper.createXMLReader(factory);
+        return reader;
+    }
+
+    @Override
+    public boolean isNamespaceAware() {
+        return delegate.isNamespaceAware();
+    }
+
+    @Override
+    public boolean isValidating() {
+        return delegate.isValidating();
+    }
+
+    @Override
+    public void setEntityResolver(final EntityResolver entityResolver) {
+        this.entityResolver = entityResolver;
+    }
+
+    @Override
+    public void setErrorHandler(final ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    public Document newDocument() {
+        return delegate.newDocument();
+    }
+
+    @Override
+    public DOMImplementation getDOMImplementation() {
+        return delegate.getDOMImplementation();
+    }
+
+    @Override
+    public void reset() {
+        delegate.reset();
+        entityResolver = null;
+        errorHandler = null;
+    }
+}
@@ -0,0 +1,786 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.UserDataHandler;
+
+/**
+ * Read only view on a node of a {@link CompactDocument}. Nodes hold no data except their index,
+ * all properties are looked up in the arrays of the document. Notice that this class is not part
+ * of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+abstract class CompactNode implements Node {
+
+    private static final String XMLNS_PREFIX = XMLConstants.XMLNS_ATTRIBUTE + ":";
+
+    final CompactDocument document;
+    final int index;
+
+    CompactNode(final CompactDocument document, final int index) {
+        // The document is passed as null by itself.
+        this.document = document == null ? (CompactDocument) this : document;
+        this.index = index;
+    }
+
+    static DOMException readOnly() {
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, "Compact documents are read only.");
+    }
+
+    CompactDocument.Name nameEntry() {
+        return document.nameOf(index);
+    }
+
+    @Override
+    public String getNodeValue() {
+        return null;
+    }
+
+    @Override
+    public void setNodeValue(final String nodeValue) {
+        throw readOnly();
+    }
+
+    @Override
+    public short getNodeType() {
+        return document.kindOf(index);
+    }
+
+    @Override
+    public Node getParentNode() {
+        return document.nodeAt(document.parentOf(index));
+    }
+
+    @Override
+    public NodeList getChildNodes() {
+        final List<Node> children = new ArrayList<Node>();
+        for (int child = document.firstChildOf(index); child >= 0; child = document.nextSiblingOf(child)) {
+            children.add(document.nodeAt(child));
+        }
+        return new StaticNodeList(children);
+    }
+
+    @Override
+    public Node getFirstChild() {
+        return document.nodeAt(document.firstChildOf(index));
+    }
+
+    @Override
+    public Node getLastChild() {
+        int last = -1;
+        for (int child = document.firstChildOf(index); child >= 0; child = document.nextSiblingOf(child)) {
+            last = child;
+        }
+        return document.nodeAt(last);
+    }
+
+    @Override
+    public Node getPreviousSibling() {
+        final int parent = document.parentOf(index);
+        if ((parent < 0) || (getNodeType() == ATTRIBUTE_NODE)) {
+            return null;
+        }
+        int previous = -1;
+        for (int child = document.firstChildOf(parent); child != index; child = document.nextSiblingOf(child)) {
+            previous = child;
+        }
+        return document.nodeAt(previous);
+    }
+
+    @Override
+    public Node getNextSibling() {
+        return document.nodeAt(document.nextSiblingOf(index));
+    }
+
+    @Override
+    public NamedNodeMap getAttributes() {
+        return null;
+    }
+
+    @Override
+    public Document getOwnerDocument() {
+        return document;
+    }
+
+    @Override
+    public Node insertBefore(final Node newChild, final Node refChild) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node replaceChild(final Node newChild, final Node oldChild) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node removeChild(final Node oldChild) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node appendChild(final Node newChild) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean hasChildNodes() {
+        return document.firstChildOf(index) >= 0;
+    }
+
+    @Override
+    public Node cloneNode(final boolean deep) {
+        throw new DOMException(DOMException.NOT_SUPPORTED_ERR, "Compact documents can not create nodes. Use Document.importNode() of the target document instead.");
+    }
+
+    @Override
+    public void normalize() {
+        // Text is normalized already.
+    }
+
+    @Override
+    public boolean isSupported(final String feature, final String version) {
+        return false;
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return null;
+    }
+
+    @Override
+    public String getPrefix() {
+        return null;
+    }
+
+    @Override
+    public void setPrefix(final String prefix) {
+        throw readOnly();
+    }
+
+    @Override
+    public String getLocalName() {
+        return null;
+    }
+
+    @Override
+    public boolean hasAttributes() {
+        return false;
+    }
+
+    @Override
+    public String getBaseURI() {
+        return document.getDocumentURI();
+    }
+
+    @Override
+    public short compareDocumentPosition(final Node other) {
+        if (other == this) {
+            return 0;
+        }
+        if (!(other instanceof CompactNode) || (((CompactNode) other).document != document)) {
+            return (short) (DOCUMENT_POSITION_DISCONNECTED | DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC | (System.identityHashCode(other) < System.identityHashCode(this) ? DOCUMENT_POSITION_PRECEDING : DOCUMENT_POSITION_FOLLOWING));
+        }
+        final int otherIndex = ((CompactNode) other).index;
+        // Nodes are stored in document order, attributes following their element.
+        if (document.isAncestor(otherIndex, index)) {
+            return (short) (DOCUMENT_POSITION_CONTAINS | DOCUMENT_POSITION_PRECEDING);
+        }
+        if (document.isAncestor(index, otherIndex)) {
+            return (short) (DOCUMENT_POSITION_CONTAINED_BY | DOCUMENT_POSITION_FOLLOWING);
+        }
+        return otherIndex < index ? DOCUMENT_POSITION_PRECEDING : DOCUMENT_POSITION_FOLLOWING;
+    }
+
+    @Override
+    public String getTextContent() {
+        return getNodeValue();
+    }
+
+    @Override
+    public void setTextContent(final String textContent) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean isSameNode(final Node other) {
+        return other == this;
+    }
+
+    @Override
+    public String lookupPrefix(final String namespaceURI) {
+        if (namespaceURI == null) {
+            return null;
+        }
+        for (Node node = getNamespaceScope(); node instanceof Element; node = node.getParentNode()) {
+            final NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                final Node attribute = attributes.item(i);
+                if (attribute.getNodeName().startsWith(XMLNS_PREFIX) && namespaceURI.equals(attribute.getNodeValue())) {
+                    return attribute.getNodeName().substring(XMLNS_PREFIX.length());
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isDefaultNamespace(final String namespaceURI) {
+        final String defaultNamespace = lookupNamespaceURI(null);
+        return defaultNamespace == null ? namespaceURI == null : defaultNamespace.equals(namespaceURI);
+    }
+
+    @Override
+    public String lookupNamespaceURI(final String prefix) {
+        final String name = (prefix == null) || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLNS_PREFIX + prefix;
+        for (Node node = getNamespaceScope(); node instanceof Element; node = node.getParentNode()) {
+            final Node attribute = node.getAttributes().getNamedItem(name);
+            if (attribute != null) {
+                final String uri = attribute.getNodeValue();
+                return uri.isEmpty() ? null : uri;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the element whose namespace declarations are in scope for this node.
+     */
+    Element getNamespaceScope() {
+        final Node parent = getParentNode();
+        return parent instanceof Element ? (Element) parent : null;
+    }
+
+    @Override
+    public boolean isEqualNode(final Node other) {
+        return DOMHelper.nodesAreEqual(this, other);
+    }
+
+    @Override
+    public Object getFeature(final String feature, final String version) {
+        return null;
+    }
+
+    @Override
+    public Object setUserData(final String key, final Object data, final UserDataHandler handler) {
+        return document.setUserData(index, key, data);
+    }
+
+    @Override
+    public Object getUserData(final String key) {
+        return document.getUserData(index, key);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getNodeName() + ": " + getNodeValue() + "]";
+    }
+
+    /**
+     * Node list of a fixed content.
+     */
+    static final class StaticNodeList implements NodeList {
+        private final List<Node> nodes;
+
+        StaticNodeList(final List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Node item(final int i) {
+            return (i < 0) || (i >= nodes.size()) ? null : nodes.get(i);
+        }
+
+        @Override
+        public int getLength() {
+            return nodes.size();
+        }
+    }
+
+    /**
+     * Element node. Its attributes are stored directly after the element.
+     */
+    static final class CompactElement extends CompactNode implements Element, NamedNodeMap {
+
+        CompactElement(final CompactDocument document, final int index) {
+            super(document, index);
+        }
+
+        @Override
+        public String getNodeName() {
+            return nameEntry().qName;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return nameEntry().uri;
+        }
+
+        @Override
+        public String getPrefix() {
+            return nameEntry().prefix;
+        }
+
+        @Override
+        public String getLocalName() {
+            return nameEntry().localName;
+        }
+
+        @Override
+        public String getTagName() {
+            return getNodeName();
+        }
+
+        @Override
+        Element getNamespaceScope() {
+            return this;
+        }
+
+        @Override
+        public String getTextContent() {
+            final StringBuilder builder = new StringBuilder();
+            document.appendTextContent(index, builder);
+            return builder.toString();
+        }
+
+        @Override
+        public NamedNodeMap getAttributes() {
+            // The element is its own attribute map, so no further object is needed.
+            return this;
+        }
+
+        @Override
+        public boolean hasAttributes() {
+            return document.attributeCountOf(index) > 0;
+        }
+
+        private int findAttribute(final String namespaceURI, final String name, final boolean byLocalName) {
+            final int count = document.attributeCountOf(index);
+            for (int i = 1; i <= count; ++i) {
+                final CompactDocument.Name attributeName = document.nameOf(index + i);
+                if (!byLocalName) {
+                    if (attributeName.qName.equals(name)) {
+                        return index + i;
+                    }
+                    continue;
+                }
+                final String uri = (namespaceURI == null) || namespaceURI.isEmpty() ? null : namespaceURI;
+                final String localName = attributeName.localName == null ? attributeName.qName : attributeName.localName;
+                if (localName.equals(name) && (uri == null ? attributeName.uri == null : uri.equals(attributeName.uri))) {
+                    return index + i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String getAttribute(final String name) {
+            final int attribute = findAttribute(null, name, false);
+            return attribute < 0 ? "" : document.valueOf(attribute);
+        }
+
+        @Override
+        public String getAttributeNS(final String namespaceURI, final String localName) {
+            final int attribute = findAttribute(namespaceURI, localName, true);
+            return attribute < 0 ? "" : document.valueOf(attribute);
+        }
+
+        @Override
+        public Attr getAttributeNode(final String name) {
+            return (Attr) document.nodeAt(findAttribute(null, name, false));
+        }
+
+        @Override
+        public Attr getAttributeNodeNS(final String namespaceURI, final String localName) {
+            return (Attr) document.nodeAt(findAttribute(namespaceURI, localName, true));
+        }
+
+        @Override
+        public boolean hasAttribute(final String name) {
+            return findAttribute(null, name, false) >= 0;
+        }
+
+        @Override
+        public boolean hasAttributeNS(final String namespaceURI, final String localName) {
+            return findAttribute(namespaceURI, localName, true) >= 0;
+        }
+
+        @Override
+        public NodeList getElementsByTagName(final String name) {
+            return document.findElements(index, null, name, false);
+        }
+
+        @Override
+        public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) {
+            return document.findElements(index, namespaceURI, localName, true);
+        }
+
+        @Override
+        public void setAttribute(final String name, final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeAttribute(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr setAttributeNode(final Attr newAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr removeAttributeNode(final Attr oldAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setAttributeNS(final String namespaceURI, final String qualifiedName, final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeAttributeNS(final String namespaceURI, final String localName) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr setAttributeNodeNS(final Attr newAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public TypeInfo getSchemaTypeInfo() {
+            return null;
+        }
+
+        @Override
+        public void setIdAttribute(final String name, final boolean isId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIdAttributeNS(final String namespaceURI, final String localName, final boolean isId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIdAttributeNode(final Attr idAttr, final boolean isId) {
+            throw readOnly();
+        }
+
+        // NamedNodeMap of the attributes
+
+        @Override
+        public Node getNamedItem(final String name) {
+            return getAttributeNode(name);
+        }
+
+        @Override
+        public Node setNamedItem(final Node arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItem(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node item(final int i) {
+            return (i < 0) || (i >= getLength()) ? null : document.nodeAt(index + 1 + i);
+        }
+
+        @Override
+        public int getLength() {
+            return document.attributeCountOf(index);
+        }
+
+        @Override
+        public Node getNamedItemNS(final String namespaceURI, final String localName) {
+            return getAttributeNodeNS(namespaceURI, localName);
+        }
+
+        @Override
+        public Node setNamedItemNS(final Node arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItemNS(final String namespaceURI, final String localName) {
+            throw readOnly();
+        }
+    }
+
+    /**
+     * Attribute node.
+     */
+    static final class CompactAttr extends CompactNode implements Attr {
+
+        CompactAttr(final CompactDocument document, final int index) {
+            super(document, index);
+        }
+
+        @Override
+        public String getNodeName() {
+            return nameEntry().qName;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return nameEntry().uri;
+        }
+
+        @Override
+        public String getPrefix() {
+            return nameEntry().prefix;
+        }
+
+        @Override
+        public String getLocalName() {
+            return nameEntry().localName;
+        }
+
+        @Override
+        public String getNodeValue() {
+            return document.valueOf(index);
+        }
+
+        @Override
+        public Node getParentNode() {
+            return null;
+        }
+
+        @Override
+        public Node getNextSibling() {
+            return null;
+        }
+
+        @Override
+        public Node getFirstChild() {
+            return null;
+        }
+
+        @Override
+        public Node getLastChild() {
+            return null;
+        }
+
+        @Override
+        public NodeList getChildNodes() {
+            return new StaticNodeList(new ArrayList<Node>(0));
+        }
+
+        @Override
+        public boolean hasChildNodes() {
+            return false;
+        }
+
+        @Override
+        Element getNamespaceScope() {
+            return getOwnerElement();
+        }
+
+        @Override
+        public String getName() {
+            return getNodeName();
+        }
+
+        @Override
+        public boolean getSpecified() {
+            return true;
+        }
+
+        @Override
+        public String getValue() {
+            return getNodeValue();
+        }
+
+        @Override
+        public void setValue(final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public Element getOwnerElement() {
+            return (Element) document.nodeAt(document.parentOf(index));
+        }
+
+        @Override
+        public TypeInfo getSchemaTypeInfo() {
+            return null;
+        }
+
+        @Override
+        public boolean isId() {
+            return false;
+        }
+    }
+
+    /**
+     * Text, comment and processing instruction data.
+     */
+    abstract static class CompactCharacterData extends CompactNode {
+
+        CompactCharacterData(final CompactDocument document, final int index) {
+            super(document, index);
+        }
+
+        @Override
+        public String getNodeValue() {
+            return document.valueOf(index);
+        }
+
+        public String getData() {
+            return getNodeValue();
+        }
+
+        public void setData(final String data) {
+            throw readOnly();
+        }
+
+        public int getLength() {
+            return getNodeValue().length();
+        }
+
+        public String substringData(final int offset, final int count) {
+            final String data = getNodeValue();
+            if ((offset < 0) || (offset > data.length()) || (count < 0)) {
+                throw new DOMException(DOMException.INDEX_SIZE_ERR, "Offset " + offset + " or count " + count + " is out of range.");
+            }
+            return data.substring(offset, Math.min(data.length(), offset + count));
+        }
+
+        public void appendData(final String arg) {
+            throw readOnly();
+        }
+
+        public void insertData(final int offset, final String arg) {
+            throw readOnly();
+        }
+
+        public void deleteData(final int offset, final int count) {
+            throw readOnly();
+        }
+
+        public void replaceData(final int offset, final int count, final String arg) {
+            throw readOnly();
+        }
+    }
+
+    /**
+     * Text node.
+     */
+    static class CompactText extends CompactCharacterData implements Text {
+
+        CompactText(final CompactDocument document, final int index) {
+            super(document, index);
+        }
+
+        @Override
+        public String getNodeName() {
+            return "#text";
+        }
+
+        @Override
+        public Text splitText(final int offset) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean isElementContentWhitespace() {
+            return false;
+        }
+
+        @Override
+        public String getWholeText() {
+            return getNodeValue();
+        }
+
+        @Override
+        public Text replaceWholeText(final String content) {
+            throw readOnly();
+        }
+    }
+
+    /**
+     * CDATA section.
+     */
+    static final class CompactCDATASection extends CompactText implements CDATASection {
+
+        CompactCDATASection(final CompactDocument document, final int index) {
+            super(document, index);
+        }
+
+        @Override
+        public String getNodeName() {
+            return "#cdata-section";
+        }
+    }
+
+    /**
+     * Comment.
+     */
+    static final class CompactComment extends CompactCharacterData implements Comment {
+
+        CompactComment(final CompactDocument document, final int index) {
+            super(document, index);
+        }
+
+        @Override
+        public String getNodeName() {
+            return "#comment";
+        }
+    }
+
+    /**
+     * Processing instruction. The target is stored as name.
+     */
+    static final class CompactProcessingInstruction extends CompactCharacterData implements ProcessingInstruction {
+
+        CompactProcessingInstruction(final CompactDocument document, final int index) {
+            super(document, index);
+        }
+
+        @Override
+        public String getNodeName() {
+            return nameEntry().qName;
+        }
+
+        @Override
+        public String getTarget() {
+            return getNodeName();
+        }
+    }
+}
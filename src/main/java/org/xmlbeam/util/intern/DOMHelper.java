@@ -15,6 +15,7 @@
  */
 package org.xmlbeam.util.intern;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -23,12 +24,19 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import java.io.IOException;
 import java.io.InputStream;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -37,6 +45,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.xmlbeam.util.IOHelper;
 
 /**
@@ -47,6 +56,28 @@ import org.xmlbeam.util.IOHelper;
  */
 public final class DOMHelper {
 
+    private static final String READ_WRITE_LOCK_KEY = "org.xmlbeam.readWriteLock";
+
+    /**
+     * Features of a DocumentBuilderFactory taken over by SAX readers, mostly to keep the
+     * protection against external entities.
+     */
+    private static final String[] READER_FEATURES = { XMLConstants.FEATURE_SECURE_PROCESSING, //
+            "http://apache.org/xml/features/disallow-doctype-decl", //
+            "http://xml.org/sax/features/external-general-entities", //
+            "http://xml.org/sax/features/external-parameter-entities", //
+            "http://apache.org/xml/features/nonvalidating/load-external-dtd" };
+
+    /**
+     * Attributes of a DocumentBuilderFactory taken over as properties by SAX readers.
+     */
+    private static final String[] READER_PROPERTIES = { "http://javax.xml.XMLConstants/property/accessExternalDTD", //
+            "http://javax.xml.XMLConstants/property/accessExternalSchema", //
+            "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit", //
+            "http://www.oracle.com/xml/jaxp/properties/maxGeneralEntitySizeLimit", //
+            "http://www.oracle.com/xml/jaxp/properties/maxParameterEntitySizeLimit", //
+            "http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit" };
+
     private static final Comparator<? super Node> ATTRIBUTE_NODE_COMPARATOR = new Comparator<Node>() {
         private int compareMaybeNull(Comparable<Object> a, Object b) {
             if (a == b) {
@@ -576,6 +607,176 @@ public final class DOMHelper {
         }
     }
 
+    /**
+     * @param factory
+     * @param name
+     * @return the attribute value or null if the factory does not know or does not have it. Some
+     *         JDKs throw a NullPointerException for factories without any attribute set.
+     */
+    private static Object getAttributeIfSet(final DocumentBuilderFactory factory, final String name) {
+        try {
+            return factory.getAttribute(name);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a SAX reader configured like the DocumentBuilders of the given factory. Namespace
+     * awareness, validation, schema, XInclude, secure processing, the external entity features and
+     * the entity limits are taken over where both implementations support them. Settings without
+     * SAX counterpart, like coalescing or ignoring comments, are left to the content handler.
+     * 
+     * @param factory
+     * @return a new reader
+     * @throws SAXException
+     */
+    public static XMLReader createXMLReader(final DocumentBuilderFactory factory) throws SAXException {
+        final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+        final XMLReader reader;
+        // Factories are not thread safe.
+        synchronized (factory) {
+            saxParserFactory.setNamespaceAware(factory.isNamespaceAware());
+            saxParserFactory.setValidating(factory.isValidating());
+            saxParserFactory.setSchema(factory.getSchema());
+            if (factory.isXIncludeAware()) {
+                saxParserFactory.setXIncludeAware(true);
+            }
+            for (String feature : READER_FEATURES) {
+                try {
+                    saxParserFactory.setFeature(feature, factory.getFeature(feature));
+                } catch (ParserConfigurationException e) {
+                    // Not supported by one of the factories.
+                } catch (SAXException e) {
+                    // Not supported by the SAXParserFactory.
+                }
+            }
+            try {
+                reader = saxParserFactory.newSAXParser().getXMLReader();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+            for (String property : READER_PROPERTIES) {
+                final Object value = getAttributeIfSet(factory, property);
+                if (value == null) {
+                    continue;
+                }
+                try {
+                    reader.setProperty(property, value);
+                } catch (SAXException e) {
+                    // Not supported by the reader.
+                }
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Create a StAX factory configured like the DocumentBuilders of the given factory. Namespace
+     * awareness and entity expansion are taken over. Document type declarations and external
+     * entities are not supported if the factory disallows them, the external access restrictions
+     * and entity limits are taken over where supported. StAX can neither validate nor process
+     * XInclude, so factories demanding this are rejected.
+     * 
+     * @param factory
+     * @return a new StAX factory
+     * @throws IllegalArgumentException
+     *             if the factory is validating or XInclude aware.
+     */
+    public static XMLInputFactory createXMLInputFactory(final DocumentBuilderFactory factory) {
+        final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        // Factories are not thread safe.
+        synchronized (factory) {
+            if (factory.isValidating() || (factory.getSchema() != null) || factory.isXIncludeAware()) {
+                throw new IllegalArgumentException("Validation and XInclude are not supported when reading via StAX. Please use a DocumentBuilderFactory without them.");
+            }
+            inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, factory.isNamespaceAware());
+            inputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, factory.isExpandEntityReferences());
+            if (getFeature(factory, "http://apache.org/xml/features/disallow-doctype-decl", false)) {
+                inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            }
+            if (!getFeature(factory, "http://xml.org/sax/features/external-general-entities", true)) {
+                inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            }
+            for (String property : READER_PROPERTIES) {
+                final Object value = getAttributeIfSet(factory, property);
+                if (value == null) {
+                    continue;
+                }
+                try {
+                    inputFactory.setProperty(property, value);
+                } catch (IllegalArgumentException e) {
+                    // Not supported by the StAX implementation.
+                }
+            }
+        }
+        return inputFactory;
+    }
+
+    private static boolean getFeature(final DocumentBuilderFactory factory, final String name, final boolean defaultValue) {
+        try {
+            return factory.getFeature(name);
+        } catch (ParserConfigurationException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get the read write lock shared by all projections of a document. The lock is created on first
+     * request.
+     * 
+     * @param document
+     * @return lock for the document.
+     */
+    public static ReadWriteLock getReadWriteLock(final Document document) {
+        synchronized (document) {
+            ReadWriteLock lock = (ReadWriteLock) document.getUserData(READ_WRITE_LOCK_KEY);
+            if (lock == null) {
+                // Parsers may create nodes on first access, so the tree is built before readers
+                // share it. This does not make the DOM immutable for readers: NodeList.item() and
+                // getLength() update caches shared by all readers and getAttributes() may allocate
+                // the attribute map of elements added later. Readers holding the read lock must
+                // traverse via getFirstChild() and getNextSibling() and check hasAttributes()
+                // before calling getAttributes().
+                expandDeferredNodes(document);
+                lock = new ReentrantReadWriteLock();
+                document.setUserData(READ_WRITE_LOCK_KEY, lock, null);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * Visit all nodes of the document once, so that DOM implementations with deferred node
+     * expansion build the complete tree. Attribute maps of the visited elements are allocated on
+     * the way.
+     * 
+     * @param document
+     */
+    public static void expandDeferredNodes(final Document document) {
+        Node node = document;
+        while (node != null) {
+            node.getNodeValue();
+            final NamedNodeMap attributes = node.getAttributes();
+            if (attributes != null) {
+                for (int i = 0; i < attributes.getLength(); ++i) {
+                    attributes.item(i).getNodeValue();
+                }
+            }
+            final Node child = node.getFirstChild();
+            if (child != null) {
+                node = child;
+                continue;
+            }
+            while ((node != null) && (node.getNextSibling() == null)) {
+                node = node.getParentNode();
+            }
+            if (node != null) {
+                node = node.getNextSibling();
+            }
+        }
+    }
+
     /**
      * @param documentOrElement
      * @return
@@ -611,4 +812,26 @@ public final class DOMHelper {
         }
         return "";
     }
+
+    /**
+     * @param nodes
+     * @return a read only list view of the given node list.
+     */
+    public static List<Node> asList(final NodeList nodes) {
+        final class NodeListView extends AbstractList<Node> implements RandomAccess {
+            @Override
+            public Node get(final int index) {
+                if ((index < 0) || (index >= nodes.getLength())) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + nodes.getLength());
+                }
+                return nodes.item(index);
+            }
+
+            @Override
+            public int size() {
+                return nodes.getLength();
+            }
+        }
+        return new NodeListView();
+    }
 }
@@ -0,0 +1,165 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.util.List;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Path evaluated by walking the DOM without the XPath engine. The static methods implement the
+ * node tests with XPath semantics. They are public, because classes compiled from paths call them.
+ * Notice that this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public abstract class DOMPath {
+
+    private static final String XMLNS_PREFIX = XMLConstants.XMLNS_ATTRIBUTE + ":";
+
+    /**
+     * @param context
+     * @return the first selected node in document order or null if there is none.
+     */
+    public abstract Node selectFirst(Node context);
+
+    /**
+     * @param context
+     * @return all selected nodes in document order.
+     */
+    public abstract List<Node> selectAll(Node context);
+
+    /**
+     * @param context
+     * @return the string value of the first selected node or an empty string if there is none.
+     */
+    public String selectString(final Node context) {
+        final Node node = selectFirst(context);
+        if (node == null) {
+            return "";
+        }
+        if (Node.ATTRIBUTE_NODE == node.getNodeType()) {
+            return node.getNodeValue();
+        }
+        return node.getTextContent();
+    }
+
+    /**
+     * @param context
+     * @return the root of the tree containing the context node, where absolute paths start.
+     */
+    public static Node rootOf(final Node context) {
+        Node root = Node.ATTRIBUTE_NODE == context.getNodeType() ? ((Attr) context).getOwnerElement() : context;
+        if (root == null) {
+            return context;
+        }
+        for (Node parent = root.getParentNode(); parent != null; parent = parent.getParentNode()) {
+            root = parent;
+        }
+        return root;
+    }
+
+    /**
+     * Attributes have child nodes in DOM, but not in XPath.
+     *
+     * @param node
+     * @return true if child steps may select elements below this node.
+     */
+    public static boolean hasChildElements(final Node node) {
+        final short type = node.getNodeType();
+        return (Node.ELEMENT_NODE == type) || (Node.DOCUMENT_NODE == type) || (Node.DOCUMENT_FRAGMENT_NODE == type);
+    }
+
+    /**
+     * An unprefixed XPath name test selects nodes without namespace. Nodes created without
+     * namespace support have no local name, the XPath engine takes the part of the node name
+     * following the prefix instead.
+     *
+     * @param node
+     * @param name
+     * @return true if the name test selects the node.
+     */
+    public static boolean hasName(final Node node, final String name) {
+        if (node.getNamespaceURI() != null) {
+            return false;
+        }
+        final String localName = node.getLocalName();
+        if (localName != null) {
+            return name.equals(localName);
+        }
+        final String nodeName = node.getNodeName();
+        final int colon = nodeName.indexOf(':');
+        return colon < 0 ? name.equals(nodeName) : nodeName.regionMatches(colon + 1, name, 0, name.length()) && ((nodeName.length() - colon - 1) == name.length());
+    }
+
+    /**
+     * @param node
+     * @param name
+     * @return the attribute selected by <code>@name</code> or null if there is none.
+     */
+    public static Node findAttribute(final Node node, final String name) {
+        // Some DOM implementations allocate the attribute map on the first call of getAttributes().
+        if ((Node.ELEMENT_NODE != node.getNodeType()) || (!node.hasAttributes())) {
+            return null;
+        }
+        final NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; i < attributes.getLength(); ++i) {
+            final Node attribute = attributes.item(i);
+            if (hasName(attribute, name) && (!isNamespaceDeclaration(attribute))) {
+                return attribute;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param element
+     * @param name
+     * @param value
+     * @return true if the predicate <code>[@name='value']</code> holds for the element.
+     */
+    public static boolean hasAttributeValue(final Node element, final String name, final String value) {
+        final Node attribute = findAttribute(element, name);
+        return (attribute != null) && value.equals(attribute.getNodeValue());
+    }
+
+    /**
+     * @param element
+     * @param name
+     * @param value
+     * @return true if the predicate <code>[name='value']</code> holds for the element.
+     */
+    public static boolean hasChildValue(final Node element, final String name, final String value) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if ((Node.ELEMENT_NODE == child.getNodeType()) && hasName(child, name) && value.equals(child.getTextContent())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Namespace declarations are namespace nodes in XPath, not attributes.
+     */
+    private static boolean isNamespaceDeclaration(final Node attribute) {
+        final String nodeName = attribute.getNodeName();
+        return XMLConstants.XMLNS_ATTRIBUTE.equals(nodeName) || nodeName.startsWith(XMLNS_PREFIX);
+    }
+}
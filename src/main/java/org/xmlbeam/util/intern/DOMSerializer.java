@@ -0,0 +1,472 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.config.XMLFactoriesConfig;
+
+/**
+ * Writes DOM nodes as XML text to a {@link Writer}. Elements may be opened and closed
+ * separately, so documents can be written piecewise without holding the whole document in memory.
+ * Namespace declarations missing in the DOM are added where needed.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class DOMSerializer {
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Configuration classes known to create the unmodified transformer of the
+     * {@link DefaultXMLFactoriesConfig}.
+     */
+    private static final ConcurrentMap<Class<?>, Boolean> DEFAULT_TRANSFORMER_CONFIGS = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    private final Writer writer;
+    private final boolean isIndenting;
+    private final int indentAmount;
+    private final boolean isASCIIOnly;
+
+    /**
+     * Namespace bindings declared by the open elements.
+     */
+    private final LinkedList<Map<String, String>> namespaceScopes = new LinkedList<Map<String, String>>();
+    private int depth = 0;
+
+    /**
+     * @param writer
+     * @param isIndenting
+     *            true if element only content should be indented.
+     * @param indentAmount
+     *            number of spaces per indentation level.
+     * @param isASCIIOnly
+     *            true if characters outside of ASCII should be written as character references,
+     *            because the target encoding may not support them.
+     */
+    public DOMSerializer(final Writer writer, final boolean isIndenting, final int indentAmount, final boolean isASCIIOnly) {
+        this.writer = writer;
+        this.isIndenting = isIndenting;
+        this.indentAmount = indentAmount;
+        this.isASCIIOnly = isASCIIOnly;
+    }
+
+    /**
+     * Write a node as XML document like the transformer of the given configuration would do. As
+     * long as the configuration uses the transformer of the {@link DefaultXMLFactoriesConfig},
+     * the node is written directly, honouring the pretty printing and XML declaration settings.
+     * Otherwise the configured transformer is used.
+     *
+     * @param config
+     * @param node
+     * @param writer
+     *            is flushed, but not closed.
+     * @throws IOException
+     */
+    public static void serialize(final XMLFactoriesConfig config, final Node node, final Writer writer) throws IOException {
+        if (!hasDefaultTransformer(config)) {
+            transform(config, node, new StreamResult(writer));
+            return;
+        }
+        final DefaultXMLFactoriesConfig defaultConfig = (DefaultXMLFactoriesConfig) config;
+        final DOMSerializer serializer = new DOMSerializer(writer, defaultConfig.isPrettyPrinting(), 2, false);
+        if (!defaultConfig.isOmitXMLDeclaration()) {
+            if (node.getNodeType() == Node.DOCUMENT_NODE) {
+                // The transformer declares the standalone status of documents.
+                serializer.writeDeclaration(ENCODING, ((Document) node).getXmlStandalone() ? "yes" : "no");
+            } else {
+                serializer.writeDeclaration(ENCODING);
+            }
+        }
+        serializer.writeNode(node);
+        serializer.flush();
+    }
+
+    /**
+     * Write a node as UTF-8 encoded XML document. See
+     * {@link #serialize(XMLFactoriesConfig, Node, Writer)}.
+     *
+     * @param config
+     * @param node
+     * @param os
+     *            is flushed, but not closed.
+     * @throws IOException
+     */
+    public static void serialize(final XMLFactoriesConfig config, final Node node, final OutputStream os) throws IOException {
+        if (!hasDefaultTransformer(config)) {
+            transform(config, node, new StreamResult(os));
+            return;
+        }
+        serialize(config, node, new BufferedWriter(new OutputStreamWriter(os, Charset.forName(ENCODING))));
+    }
+
+    private static void transform(final XMLFactoriesConfig config, final Node node, final StreamResult result) {
+        try {
+            config.createTransformer().transform(new DOMSource(node), result);
+        } catch (TransformerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean hasDefaultTransformer(final XMLFactoriesConfig config) {
+        if (!(config instanceof DefaultXMLFactoriesConfig)) {
+            return false;
+        }
+        final Class<?> configClass = config.getClass();
+        Boolean isDefault = DEFAULT_TRANSFORMER_CONFIGS.get(configClass);
+        if (isDefault == null) {
+            try {
+                isDefault = DefaultXMLFactoriesConfig.class.equals(configClass.getMethod("createTransformer", Document[].class).getDeclaringClass()) //
+                        && DefaultXMLFactoriesConfig.class.equals(configClass.getMethod("createTransformerFactory").getDeclaringClass());
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+            DEFAULT_TRANSFORMER_CONFIGS.put(configClass, isDefault);
+        }
+        return isDefault;
+    }
+
+    /**
+     * @param encoding
+     * @throws IOException
+     */
+    public void writeDeclaration(final String encoding) throws IOException {
+        writeDeclaration(encoding, null);
+    }
+
+    /**
+     * @param encoding
+     * @param standalone
+     *            "yes", "no" or null to omit the standalone declaration.
+     * @throws IOException
+     */
+    public void writeDeclaration(final String encoding, final String standalone) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"");
+        writer.write(encoding);
+        writer.write('"');
+        if (standalone != null) {
+            writer.write(" standalone=\"");
+            writer.write(standalone);
+            writer.write('"');
+        }
+        writer.write("?>");
+        if (isIndenting) {
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Start a new line with the indentation of the current depth, if indenting is enabled.
+     *
+     * @throws IOException
+     */
+    public void newLine() throws IOException {
+        if (!isIndenting) {
+            return;
+        }
+        writer.write('\n');
+        for (int i = depth * indentAmount; i > 0; --i) {
+            writer.write(' ');
+        }
+    }
+
+    /**
+     * Write the start tag of an element, leaving it open for content.
+     *
+     * @param element
+     * @throws IOException
+     */
+    public void writeStartTag(final Element element) throws IOException {
+        openStartTag(element);
+        writer.write('>');
+    }
+
+    /**
+     * Close an element opened by {@link #writeStartTag(Element)}.
+     *
+     * @param element
+     * @throws IOException
+     */
+    public void writeEndTag(final Element element) throws IOException {
+        --depth;
+        namespaceScopes.removeLast();
+        writer.write("</");
+        writer.write(element.getNodeName());
+        writer.write('>');
+    }
+
+    /**
+     * Write a node with all its content.
+     *
+     * @param node
+     * @throws IOException
+     */
+    public void writeNode(final Node node) throws IOException {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            writeElement((Element) node);
+            return;
+        case Node.TEXT_NODE:
+            writeEscaped(node.getNodeValue(), false);
+            return;
+        case Node.CDATA_SECTION_NODE:
+            writer.write("<![CDATA[");
+            writer.write(node.getNodeValue().replace("]]>", "]]]]><![CDATA[>"));
+            writer.write("]]>");
+            return;
+        case Node.COMMENT_NODE:
+            writer.write("<!--");
+            writer.write(node.getNodeValue());
+            writer.write("-->");
+            return;
+        case Node.PROCESSING_INSTRUCTION_NODE:
+            writer.write("<?");
+            writer.write(node.getNodeName());
+            final String data = node.getNodeValue();
+            if ((data != null) && (!data.isEmpty())) {
+                writer.write(' ');
+                writer.write(data);
+            }
+            writer.write("?>");
+            return;
+        case Node.DOCUMENT_NODE:
+        case Node.DOCUMENT_FRAGMENT_NODE:
+        case Node.ENTITY_REFERENCE_NODE:
+            writeChildren(node);
+            return;
+        default:
+            // Document types, entities and notations are not written.
+            return;
+        }
+    }
+
+    /**
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void writeElement(final Element element) throws IOException {
+        if (!element.hasChildNodes()) {
+            openStartTag(element);
+            writer.write("/>");
+            --depth;
+            namespaceScopes.removeLast();
+            return;
+        }
+        writeStartTag(element);
+        final boolean indentChildren = writeChildren(element);
+        if (indentChildren) {
+            --depth;
+            newLine();
+            ++depth;
+        }
+        writeEndTag(element);
+    }
+
+    /**
+     * @return true if the children were written indented.
+     */
+    private boolean writeChildren(final Node parent) throws IOException {
+        final boolean indent = isIndenting && (parent.getNodeType() == Node.ELEMENT_NODE) && hasElementOnlyContent(parent);
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (indent) {
+                if (child.getNodeType() == Node.TEXT_NODE) {
+                    // Whitespace only, replaced by indentation.
+                    continue;
+                }
+                newLine();
+            } else if (isIndenting && (parent.getNodeType() == Node.DOCUMENT_NODE) && (child.getPreviousSibling() != null)) {
+                writer.write('\n');
+            }
+            writeNode(child);
+        }
+        return indent;
+    }
+
+    private static boolean hasElementOnlyContent(final Node parent) {
+        boolean hasElements = false;
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+            case Node.TEXT_NODE:
+                if (!child.getNodeValue().trim().isEmpty()) {
+                    return false;
+                }
+                break;
+            case Node.CDATA_SECTION_NODE:
+            case Node.ENTITY_REFERENCE_NODE:
+                return false;
+            case Node.ELEMENT_NODE:
+                hasElements = true;
+                break;
+            default:
+                break;
+            }
+        }
+        return hasElements;
+    }
+
+    /**
+     * Write "&lt;name attributes", push a namespace scope and increase the depth.
+     */
+    private void openStartTag(final Element element) throws IOException {
+        final Map<String, String> scope = new HashMap<String, String>(4);
+        namespaceScopes.addLast(scope);
+        ++depth;
+        writer.write('<');
+        writer.write(element.getNodeName());
+        final NamedNodeMap attributes = element.getAttributes();
+        final int length = attributes.getLength();
+        // Namespace declarations first, like the transformer does.
+        for (int i = 0; i < length; ++i) {
+            final Attr attribute = (Attr) attributes.item(i);
+            final String name = attribute.getNodeName();
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(name)) {
+                scope.put("", attribute.getValue());
+            } else if (name.startsWith("xmlns:")) {
+                scope.put(name.substring(6), attribute.getValue());
+            } else {
+                continue;
+            }
+            writeAttribute(name, attribute.getValue());
+        }
+        for (int i = 0; i < length; ++i) {
+            final Attr attribute = (Attr) attributes.item(i);
+            final String name = attribute.getNodeName();
+            if ((!XMLConstants.XMLNS_ATTRIBUTE.equals(name)) && (!name.startsWith("xmlns:"))) {
+                writeAttribute(name, attribute.getValue());
+            }
+        }
+        if (element.getLocalName() == null) {
+            // Not namespace aware, nothing to repair.
+            return;
+        }
+        ensureNamespaceDeclared(element.getPrefix(), element.getNamespaceURI(), scope);
+        for (int i = 0; i < length; ++i) {
+            final Attr attribute = (Attr) attributes.item(i);
+            final String uri = attribute.getNamespaceURI();
+            if ((uri != null) && (attribute.getPrefix() != null) && (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(uri))) {
+                ensureNamespaceDeclared(attribute.getPrefix(), uri, scope);
+            }
+        }
+    }
+
+    private void ensureNamespaceDeclared(final String prefix, final String uri, final Map<String, String> scope) throws IOException {
+        final String p = prefix == null ? "" : prefix;
+        final String u = uri == null ? "" : uri;
+        final String declared = lookupNamespace(p);
+        if (u.equals(declared == null ? "" : declared)) {
+            return;
+        }
+        if (XMLConstants.XML_NS_PREFIX.equals(p)) {
+            return;
+        }
+        scope.put(p, u);
+        writeAttribute(p.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + p, u);
+    }
+
+    private String lookupNamespace(final String prefix) {
+        for (int i = namespaceScopes.size() - 1; i >= 0; --i) {
+            final String uri = namespaceScopes.get(i).get(prefix);
+            if (uri != null) {
+                return uri;
+            }
+        }
+        return null;
+    }
+
+    private void writeAttribute(final String name, final String value) throws IOException {
+        writer.write(' ');
+        writer.write(name);
+        writer.write("=\"");
+        writeEscaped(value, true);
+        writer.write('"');
+    }
+
+    private void writeEscaped(final String text, final boolean isAttribute) throws IOException {
+        final int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; ++i) {
+            final char c = text.charAt(i);
+            final String replacement;
+            switch (c) {
+            case '&':
+                replacement = "&amp;";
+                break;
+            case '<':
+                replacement = "&lt;";
+                break;
+            case '>':
+                replacement = "&gt;";
+                break;
+            case '"':
+                replacement = isAttribute ? "&quot;" : null;
+                break;
+            case '\r':
+                replacement = "&#13;";
+                break;
+            case '\n':
+                replacement = isAttribute ? "&#10;" : null;
+                break;
+            case '\t':
+                replacement = isAttribute ? "&#9;" : null;
+                break;
+            default:
+                if ((c < 0x80) || (!isASCIIOnly)) {
+                    replacement = null;
+                } else if (Character.isHighSurrogate(c) && (i + 1 < length)) {
+                    replacement = "&#" + Character.toCodePoint(c, text.charAt(i + 1)) + ";";
+                    writer.write(text, start, i - start);
+                    writer.write(replacement);
+                    ++i;
+                    start = i + 1;
+                    continue;
+                } else {
+                    replacement = "&#" + (int) c + ";";
+                }
+            }
+            if (replacement == null) {
+                continue;
+            }
+            writer.write(text, start, i - start);
+            writer.write(replacement);
+            start = i + 1;
+        }
+        writer.write(text, start, length - start);
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Namespace context mapping the prefixes declared at the root element of a document. Two contexts
+ * with the same mapping are equal, so XPath expressions compiled with one of them may be reused
+ * with the other. Notice that this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class DocumentNamespaceContext implements NamespaceContext {
+
+    private static final String NON_EXISTING_URL = "http://xmlbeam.org/nonexisting_namespace";
+
+    private static final String SNAPSHOT_KEY = DocumentNamespaceContext.class.getName();
+
+    /**
+     * The namespace context of a document together with the root element and the namespace
+     * declarations it was derived from.
+     */
+    private static final class Snapshot {
+        private final Element root;
+        private final String[] declarations;
+        private final DocumentNamespaceContext context;
+
+        private Snapshot(final Document document) {
+            this.root = document.getDocumentElement();
+            this.declarations = getDeclarations(root);
+            this.context = new DocumentNamespaceContext(DOMHelper.getNamespaceMapping(document));
+        }
+
+        /**
+         * @param document
+         * @return false if the root element or its namespace declarations changed since this
+         *         snapshot was taken.
+         */
+        private boolean isValidFor(final Document document) {
+            final Element rootElement = document.getDocumentElement();
+            if (rootElement != root) {
+                return false;
+            }
+            if ((rootElement == null) || (!rootElement.hasAttributes())) {
+                return declarations.length == 0;
+            }
+            final NamedNodeMap attributes = rootElement.getAttributes();
+            int index = 0;
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                final Node attribute = attributes.item(i);
+                if (!isDeclaration(attribute)) {
+                    continue;
+                }
+                if ((index + 1 >= declarations.length) || (!declarations[index].equals(attribute.getNodeName())) || (!declarations[index + 1].equals(attribute.getNodeValue()))) {
+                    return false;
+                }
+                index += 2;
+            }
+            return index == declarations.length;
+        }
+    }
+
+    private static final String[] NO_DECLARATIONS = new String[0];
+
+    private final Map<String, String> nameSpaceMapping;
+    private final Map<String, String> reverseMapping = new HashMap<String, String>();
+    private final int hashCode;
+
+    private DocumentNamespaceContext(final Map<String, String> nameSpaceMapping) {
+        this.nameSpaceMapping = nameSpaceMapping;
+        for (Entry<String, String> e : nameSpaceMapping.entrySet()) {
+            if (!reverseMapping.containsKey(e.getValue())) {
+                reverseMapping.put(e.getValue(), e.getKey());
+            }
+        }
+        this.hashCode = nameSpaceMapping.hashCode();
+    }
+
+    /**
+     * The context is computed once per document and kept in the user data of the document, so the
+     * root element does not need to be scanned for every XPath evaluation. It is renewed when the
+     * root element or its namespace declarations change.
+     *
+     * @param document
+     * @return namespace context for the prefixes declared in the given document.
+     */
+    public static NamespaceContext of(final Document document) {
+        // Readers do not lock. A concurrent update may hide the snapshot from them, which only
+        // leads to the locked path below.
+        final Snapshot current = (Snapshot) document.getUserData(SNAPSHOT_KEY);
+        if ((current != null) && current.isValidFor(document)) {
+            return current.context;
+        }
+        // DOM implementations do not guard their user data against concurrent writers.
+        synchronized (document) {
+            Snapshot snapshot = (Snapshot) document.getUserData(SNAPSHOT_KEY);
+            if ((snapshot == null) || (!snapshot.isValidFor(document))) {
+                snapshot = new Snapshot(document);
+                document.setUserData(SNAPSHOT_KEY, snapshot, null);
+            }
+            return snapshot.context;
+        }
+    }
+
+    /**
+     * @param root
+     * @return names and values of the namespace declarations of the root element, alternating.
+     */
+    private static String[] getDeclarations(final Element root) {
+        if ((root == null) || (!root.hasAttributes())) {
+            return NO_DECLARATIONS;
+        }
+        final NamedNodeMap attributes = root.getAttributes();
+        final List<String> declarations = new ArrayList<String>();
+        for (int i = 0; i < attributes.getLength(); ++i) {
+            final Node attribute = attributes.item(i);
+            if (isDeclaration(attribute)) {
+                declarations.add(attribute.getNodeName());
+                declarations.add(attribute.getNodeValue());
+            }
+        }
+        return declarations.toArray(new String[declarations.size()]);
+    }
+
+    private static boolean isDeclaration(final Node attribute) {
+        final String name = attribute.getNodeName();
+        return name.startsWith(XMLConstants.XMLNS_ATTRIBUTE) && ((name.length() == XMLConstants.XMLNS_ATTRIBUTE.length()) || (name.charAt(XMLConstants.XMLNS_ATTRIBUTE.length()) == ':'));
+    }
+
+    @Override
+    public String getNamespaceURI(final String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("null not allowed as prefix");
+        }
+        final String uri = nameSpaceMapping.get(prefix);
+        if (uri != null) {
+            return uri;
+        }
+        // Default is a global unique string uri to prevent xpath expression exeptions on
+        // nonexisting ns.
+        return NON_EXISTING_URL;
+    }
+
+    @Override
+    public String getPrefix(final String uri) {
+        return reverseMapping.get(uri);
+    }
+
+    @Override
+    public Iterator<String> getPrefixes(final String val) {
+        return nameSpaceMapping.keySet().iterator();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof DocumentNamespaceContext)) {
+            return false;
+        }
+        return (hashCode == ((DocumentNamespaceContext) o).hashCode) && nameSpaceMapping.equals(((DocumentNamespaceContext) o).nameSpaceMapping);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
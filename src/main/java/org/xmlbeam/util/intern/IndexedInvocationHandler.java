@@ -0,0 +1,96 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import java.io.ObjectStreamException;
+
+/**
+ * An {@link InvocationHandler} that may also be called by classes generated via
+ * {@link ProjectionClassGenerator}. Generated classes pass the index of the invoked method in their
+ * method table, so the handler does not need to look up the method. Methods returning
+ * <code>boolean</code>, <code>int</code>, <code>long</code> or <code>double</code> are dispatched to
+ * typed entry points which subclasses may override to avoid boxing the result.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public abstract class IndexedInvocationHandler implements InvocationHandler {
+
+    /**
+     * Invoke a method of a generated class.
+     *
+     * @param proxy
+     *            the generated class instance
+     * @param method
+     *            the invoked method
+     * @param index
+     *            index of method in the method table of the generated class
+     * @param args
+     *            arguments or null if the method has no parameters
+     * @return method result
+     * @throws Throwable
+     */
+    public abstract Object invoke(Object proxy, Method method, int index, Object[] args) throws Throwable;
+
+    /**
+     * Called by generated classes on serialization.
+     *
+     * @param proxy
+     *            the generated class instance
+     * @return object to be serialized instead of the generated class instance.
+     * @throws ObjectStreamException
+     */
+    public abstract Object writeReplace(Object proxy) throws ObjectStreamException;
+
+    public boolean invokeBoolean(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        return ((Boolean) invoke(proxy, method, index, args)).booleanValue();
+    }
+
+    public int invokeInt(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        return ((Integer) invoke(proxy, method, index, args)).intValue();
+    }
+
+    public long invokeLong(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        return ((Long) invoke(proxy, method, index, args)).longValue();
+    }
+
+    public double invokeDouble(final Object proxy, final Method method, final int index, final Object[] args) throws Throwable {
+        return ((Double) invoke(proxy, method, index, args)).doubleValue();
+    }
+
+    /**
+     * Generated classes do not check exceptions thrown by the handler. Like
+     * {@link java.lang.reflect.Proxy} we wrap checked exceptions the method does not declare.
+     *
+     * @param method
+     * @param throwable
+     * @return throwable or an {@link UndeclaredThrowableException} wrapping it.
+     */
+    protected static Throwable undeclaredToRuntime(final Method method, final Throwable throwable) {
+        if ((throwable instanceof RuntimeException) || (throwable instanceof Error)) {
+            return throwable;
+        }
+        for (Class<?> declared : method.getExceptionTypes()) {
+            if (declared.isInstance(throwable)) {
+                return throwable;
+            }
+        }
+        return new UndeclaredThrowableException(throwable);
+    }
+}
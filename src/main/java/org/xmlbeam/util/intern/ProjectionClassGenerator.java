@@ -0,0 +1,374 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.io.ObjectStreamException;
+
+import org.xmlbeam.util.intern.org.objectweb.asm.ClassWriter;
+import org.xmlbeam.util.intern.org.objectweb.asm.MethodVisitor;
+import org.xmlbeam.util.intern.org.objectweb.asm.Opcodes;
+import org.xmlbeam.util.intern.org.objectweb.asm.Type;
+
+/**
+ * Generates classes implementing projection interfaces as an alternative to
+ * {@link java.lang.reflect.Proxy}. Each generated method passes its index in the method table to an
+ * {@link IndexedInvocationHandler}. Like proxies, generated classes route the methods
+ * <code>equals</code>, <code>hashCode</code> and <code>toString</code> to the handler, too. One class
+ * is generated per projection interface and kept as long as the interface and the class are in
+ * use.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class ProjectionClassGenerator implements Opcodes {
+
+    private static final String HANDLER_FIELD = "handler";
+    private static final String METHODS_FIELD = "METHODS";
+    private static final String HANDLER_TYPE = Type.getInternalName(IndexedInvocationHandler.class);
+    private static final String HANDLER_DESCRIPTOR = Type.getDescriptor(IndexedInvocationHandler.class);
+    private static final String METHODS_DESCRIPTOR = Type.getDescriptor(Method[].class);
+    private static final String INVOKE_PARAMS = "(Ljava/lang/Object;Ljava/lang/reflect/Method;I[Ljava/lang/Object;)";
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    /**
+     * Generated classes by projection interface. A null reference marks interfaces we can not
+     * generate classes for.
+     */
+    private static final Map<Class<?>, WeakReference<Class<?>>> GENERATED_CLASSES = new WeakHashMap<Class<?>, WeakReference<Class<?>>>();
+
+    private static final WeakReference<Class<?>> UNSUPPORTED = new WeakReference<Class<?>>(null);
+
+    private ProjectionClassGenerator() {
+    }
+
+    /**
+     * Get the constructor of the class generated for the given projection interface. The
+     * constructor takes the {@link IndexedInvocationHandler} as only parameter.
+     *
+     * @param projectionInterface
+     * @param interfaces
+     *            all interfaces the class should implement. Must be the same for every call with
+     *            the same projection interface.
+     * @return constructor or null if no class can be generated for this interface.
+     */
+    public static Constructor<?> getConstructor(final Class<?> projectionInterface, final Class<?>[] interfaces) {
+        final Class<?> clazz = getOrCreateClass(projectionInterface, interfaces);
+        if (clazz == null) {
+            return null;
+        }
+        try {
+            return clazz.getConstructor(IndexedInvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param clazz
+     * @return true if the given class was generated by this generator.
+     */
+    public static boolean isGeneratedClass(final Class<?> clazz) {
+        return (clazz.getClassLoader() instanceof GeneratorClassLoader);
+    }
+
+    private static Class<?> getOrCreateClass(final Class<?> projectionInterface, final Class<?>[] interfaces) {
+        synchronized (GENERATED_CLASSES) {
+            final WeakReference<Class<?>> reference = GENERATED_CLASSES.get(projectionInterface);
+            if (reference == UNSUPPORTED) {
+                return null;
+            }
+            Class<?> clazz = reference == null ? null : reference.get();
+            if (clazz != null) {
+                return clazz;
+            }
+            final Method[] methods = collectMethods(interfaces);
+            if (methods == null) {
+                GENERATED_CLASSES.put(projectionInterface, UNSUPPORTED);
+                return null;
+            }
+            final String className = "XBProjection$" + projectionInterface.getSimpleName() + "$" + CLASS_COUNTER.incrementAndGet();
+            final ClassLoader parent = projectionInterface.getClassLoader() == null ? ClassLoader.getSystemClassLoader() : projectionInterface.getClassLoader();
+            clazz = new GeneratorClassLoader(parent).defineClass(className, getClassData(className, interfaces, methods));
+            try {
+                clazz.getField(METHODS_FIELD).set(null, methods);
+            } catch (NoSuchFieldException e) {
+                throw new RuntimeException(e);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            GENERATED_CLASSES.put(projectionInterface, new WeakReference<Class<?>>(clazz));
+            return clazz;
+        }
+    }
+
+    private static final class GeneratorClassLoader extends ClassLoader {
+        GeneratorClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> defineClass(final String name, final byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+
+    /**
+     * Collect all methods to be implemented. Methods with the same signature are implemented once,
+     * the first interface declaring it wins.
+     *
+     * @param interfaces
+     * @return method table or null if a method refers to a type the generated class can not
+     *         access.
+     */
+    private static Method[] collectMethods(final Class<?>[] interfaces) {
+        final Map<String, Method> methods = new LinkedHashMap<String, Method>();
+        try {
+            methods.put("equals", Object.class.getMethod("equals", Object.class));
+            methods.put("hashCode", Object.class.getMethod("hashCode"));
+            methods.put("toString", Object.class.getMethod("toString"));
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+        for (Class<?> interf : interfaces) {
+            if (!Modifier.isPublic(interf.getModifiers())) {
+                return null;
+            }
+            for (Method method : interf.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                if (!isAccessible(method.getReturnType())) {
+                    return null;
+                }
+                for (Class<?> param : method.getParameterTypes()) {
+                    if (!isAccessible(param)) {
+                        return null;
+                    }
+                }
+                final String key = method.getName() + Type.getMethodDescriptor(method);
+                final String objectMethodKey = method.getParameterTypes().length == 0 || "equals".equals(method.getName()) ? method.getName() : null;
+                if ((objectMethodKey != null) && methods.containsKey(objectMethodKey) && Type.getMethodDescriptor(methods.get(objectMethodKey)).equals(Type.getMethodDescriptor(method))) {
+                    continue;
+                }
+                if (!methods.containsKey(key)) {
+                    methods.put(key, method);
+                }
+            }
+        }
+        return new ArrayList<Method>(methods.values()).toArray(new Method[methods.size()]);
+    }
+
+    private static boolean isAccessible(final Class<?> type) {
+        Class<?> t = type;
+        while (t.isArray()) {
+            t = t.getComponentType();
+        }
+        if (t.isPrimitive()) {
+            return true;
+        }
+        for (Class<?> c = t; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] getClassData(final String className, final Class<?>[] interfaces, final Method[] methods) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        final String[] interfaceNames = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; ++i) {
+            interfaceNames[i] = Type.getInternalName(interfaces[i]);
+        }
+        cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, "java/lang/Object", interfaceNames);
+        cw.visitField(ACC_PUBLIC + ACC_STATIC, METHODS_FIELD, METHODS_DESCRIPTOR, null, null).visitEnd();
+        cw.visitField(ACC_PRIVATE + ACC_FINAL, HANDLER_FIELD, HANDLER_DESCRIPTOR, null, null).visitEnd();
+        addConstructor(className, cw);
+        for (int i = 0; i < methods.length; ++i) {
+            addMethod(className, cw, methods[i], i);
+        }
+        addWriteReplace(className, cw);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void addConstructor(final String className, final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + HANDLER_DESCRIPTOR + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, className, HANDLER_FIELD, HANDLER_DESCRIPTOR);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void addWriteReplace(final String className, final ClassWriter cw) {
+        final MethodVisitor mv = cw.visitMethod(ACC_PRIVATE, "writeReplace", "()Ljava/lang/Object;", null, new String[] { Type.getInternalName(ObjectStreamException.class) });
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, HANDLER_FIELD, HANDLER_DESCRIPTOR);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, HANDLER_TYPE, "writeReplace", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void addMethod(final String className, final ClassWriter cw, final Method method, final int index) {
+        final Class<?>[] exceptionTypes = method.getExceptionTypes();
+        final String[] exceptions = new String[exceptionTypes.length];
+        for (int i = 0; i < exceptionTypes.length; ++i) {
+            exceptions[i] = Type.getInternalName(exceptionTypes[i]);
+        }
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_FINAL, method.getName(), Type.getMethodDescriptor(method), null, exceptions);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, HANDLER_FIELD, HANDLER_DESCRIPTOR);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETSTATIC, className, METHODS_FIELD, METHODS_DESCRIPTOR);
+        pushInt(mv, index);
+        mv.visitInsn(AALOAD);
+        pushInt(mv, index);
+        pushArguments(mv, method.getParameterTypes());
+
+        final Type returnType = Type.getType(method.getReturnType());
+        switch (returnType.getSort()) {
+        case Type.VOID:
+            mv.visitMethodInsn(INVOKEVIRTUAL, HANDLER_TYPE, "invoke", INVOKE_PARAMS + "Ljava/lang/Object;", false);
+            mv.visitInsn(POP);
+            mv.visitInsn(RETURN);
+            break;
+        case Type.BOOLEAN:
+            mv.visitMethodInsn(INVOKEVIRTUAL, HANDLER_TYPE, "invokeBoolean", INVOKE_PARAMS + "Z", false);
+            mv.visitInsn(IRETURN);
+            break;
+        case Type.INT:
+            mv.visitMethodInsn(INVOKEVIRTUAL, HANDLER_TYPE, "invokeInt", INVOKE_PARAMS + "I", false);
+            mv.visitInsn(IRETURN);
+            break;
+        case Type.LONG:
+            mv.visitMethodInsn(INVOKEVIRTUAL, HANDLER_TYPE, "invokeLong", INVOKE_PARAMS + "J", false);
+            mv.visitInsn(LRETURN);
+            break;
+        case Type.DOUBLE:
+            mv.visitMethodInsn(INVOKEVIRTUAL, HANDLER_TYPE, "invokeDouble", INVOKE_PARAMS + "D", false);
+            mv.visitInsn(DRETURN);
+            break;
+        case Type.BYTE:
+        case Type.CHAR:
+        case Type.SHORT:
+        case Type.FLOAT:
+            mv.visitMethodInsn(INVOKEVIRTUAL, HANDLER_TYPE, "invoke", INVOKE_PARAMS + "Ljava/lang/Object;", false);
+            unbox(mv, returnType);
+            mv.visitInsn(returnType.getOpcode(IRETURN));
+            break;
+        default:
+            mv.visitMethodInsn(INVOKEVIRTUAL, HANDLER_TYPE, "invoke", INVOKE_PARAMS + "Ljava/lang/Object;", false);
+            mv.visitTypeInsn(CHECKCAST, returnType.getInternalName());
+            mv.visitInsn(ARETURN);
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Push the method arguments as Object array, or null if there are no arguments.
+     */
+    private static void pushArguments(final MethodVisitor mv, final Class<?>[] parameterTypes) {
+        if (parameterTypes.length == 0) {
+            mv.visitInsn(ACONST_NULL);
+            return;
+        }
+        pushInt(mv, parameterTypes.length);
+        mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+        int slot = 1;
+        for (int i = 0; i < parameterTypes.length; ++i) {
+            final Type type = Type.getType(parameterTypes[i]);
+            mv.visitInsn(DUP);
+            pushInt(mv, i);
+            mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+            box(mv, type);
+            mv.visitInsn(AASTORE);
+            slot += type.getSize();
+        }
+    }
+
+    private static void pushInt(final MethodVisitor mv, final int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+            return;
+        }
+        if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+            return;
+        }
+        if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+            return;
+        }
+        mv.visitLdcInsn(Integer.valueOf(value));
+    }
+
+    private static String wrapperFor(final Type type) {
+        switch (type.getSort()) {
+        case Type.BOOLEAN:
+            return "java/lang/Boolean";
+        case Type.BYTE:
+            return "java/lang/Byte";
+        case Type.CHAR:
+            return "java/lang/Character";
+        case Type.SHORT:
+            return "java/lang/Short";
+        case Type.INT:
+            return "java/lang/Integer";
+        case Type.FLOAT:
+            return "java/lang/Float";
+        case Type.LONG:
+            return "java/lang/Long";
+        case Type.DOUBLE:
+            return "java/lang/Double";
+        default:
+            return null;
+        }
+    }
+
+    private static void box(final MethodVisitor mv, final Type type) {
+        final String wrapper = wrapperFor(type);
+        if (wrapper == null) {
+            return;
+        }
+        mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + type.getDescriptor() + ")L" + wrapper + ";", false);
+    }
+
+    private static void unbox(final MethodVisitor mv, final Type type) {
+        final String wrapper = wrapperFor(type);
+        mv.visitTypeInsn(CHECKCAST, wrapper);
+        mv.visitMethodInsn(INVOKEVIRTUAL, wrapper, type.getClassName() + "Value", "()" + type.getDescriptor(), false);
+    }
+}
@@ -0,0 +1,325 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.text.MessageFormat;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xmlbeam.annotation.XBDocURL;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.externalizer.Externalizer;
+import org.xmlbeam.externalizer.ExternalizerAdapter;
+import org.xmlbeam.types.TypeConverter;
+
+/**
+ * Describes which parts of a document a projection interface may read. The static
+ * {@link XBRead} paths of the interface and of its subprojection interfaces are collected into a
+ * tree of element names. A document containing only the elements on these paths and everything
+ * beneath the selected elements is sufficient for all covered methods. Reading methods with
+ * paths that can not be analyzed (functions, axes, placeholders, ...) are not covered. Notice
+ * that this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class ProjectionCoverage {
+
+    private static final String USER_DATA_KEY = "org.xmlbeam.projectionCoverage";
+
+    private static final Pattern ELEMENT_STEP = Pattern.compile("(([^\\s/\\[\\]@():*|=]+:)?([^\\s/\\[\\]@():*|=]+|\\*))(\\[.*\\])?");
+    private static final Pattern TERMINAL_STEP = Pattern.compile("@([^\\s/\\[\\]@():*|=]+:)?([^\\s/\\[\\]@():*|=]+|\\*)|text\\(\\)|comment\\(\\)|node\\(\\)");
+
+    /**
+     * Node of the tree of element names.
+     */
+    public static final class Step {
+        private final Map<String, Step> children = new HashMap<String, Step>();
+        private boolean isTerminal = false;
+
+        /**
+         * @return true if all content of a matching element is needed.
+         */
+        public boolean isTerminal() {
+            return isTerminal;
+        }
+
+        /**
+         * Collect the child steps matching an element.
+         *
+         * @param localName
+         *            local name of the element
+         * @param matches
+         *            list to add the matching steps to
+         */
+        public void findChildren(final String localName, final List<Step> matches) {
+            final Step step = children.get(localName);
+            if (step != null) {
+                matches.add(step);
+            }
+            final Step wildcard = children.get("*");
+            if (wildcard != null) {
+                matches.add(wildcard);
+            }
+        }
+
+        private Step getOrCreateChild(final String localName) {
+            Step step = children.get(localName);
+            if (step == null) {
+                step = new Step();
+                children.put(localName, step);
+            }
+            return step;
+        }
+    }
+
+    private final Step root = new Step();
+    private final Set<Method> coveredMethods = new HashSet<Method>();
+    private final Set<List<Object>> analyzedInterfaces = new HashSet<List<Object>>();
+    private final TypeConverter typeConverter;
+    private final boolean isExternalized;
+
+    private ProjectionCoverage(final TypeConverter typeConverter, final Externalizer externalizer) {
+        this.typeConverter = typeConverter;
+        // Externalizers may replace the annotated paths at invocation time.
+        this.isExternalized = (externalizer != null) && (externalizer.getClass() != ExternalizerAdapter.class);
+    }
+
+    /**
+     * Determine the coverage of a projection interface and its subprojection interfaces.
+     *
+     * @param projectionInterface
+     * @param typeConverter
+     *            the type converter of the projector, used to tell subprojections from converted
+     *            values.
+     * @param externalizer
+     *            the externalizer of the projector.
+     * @return coverage of the interface
+     */
+    public static ProjectionCoverage analyze(final Class<?> projectionInterface, final TypeConverter typeConverter, final Externalizer externalizer) {
+        final ProjectionCoverage coverage = new ProjectionCoverage(typeConverter, externalizer);
+        coverage.analyze(projectionInterface, true);
+        return coverage;
+    }
+
+    /**
+     * @param document
+     * @return the coverage the given document was built for, or null if the document is complete.
+     */
+    public static ProjectionCoverage of(final Document document) {
+        return (ProjectionCoverage) document.getUserData(USER_DATA_KEY);
+    }
+
+    /**
+     * Mark the document as partial, containing only the nodes covered by this coverage.
+     *
+     * @param document
+     */
+    public void markPartial(final Document document) {
+        document.setUserData(USER_DATA_KEY, this, null);
+    }
+
+    /**
+     * @return root of the tree of element names.
+     */
+    public Step getRoot() {
+        return root;
+    }
+
+    /**
+     * @param method
+     * @return true if the method may be invoked on a partial document.
+     */
+    public boolean isCovered(final Method method) {
+        return coveredMethods.contains(method);
+    }
+
+    private void analyze(final Class<?> projectionInterface, final boolean isDocumentContext) {
+        if (!analyzedInterfaces.add(Arrays.<Object> asList(projectionInterface, isDocumentContext))) {
+            return;
+        }
+        for (Method method : projectionInterface.getMethods()) {
+            final XBRead annotation = method.getAnnotation(XBRead.class);
+            if (annotation == null) {
+                continue;
+            }
+            if (method.getAnnotation(XBDocURL.class) != null) {
+                // Reads a document of its own.
+                coveredMethods.add(method);
+                continue;
+            }
+            if (isExternalized) {
+                continue;
+            }
+            final String path = staticPathFor(annotation.value());
+            if ((path == null) || (!isCoverable(path, isDocumentContext))) {
+                continue;
+            }
+            coveredMethods.add(method);
+            final Class<?> subprojectionInterface = findSubprojectionInterface(method);
+            if (subprojectionInterface != null) {
+                // All content of the selected elements is kept, relative paths are covered.
+                analyze(subprojectionInterface, false);
+            }
+        }
+    }
+
+    private static String staticPathFor(final String template) {
+        final MessageFormat messageFormat = new MessageFormat(template);
+        if (messageFormat.getFormatsByArgumentIndex().length > 0) {
+            return null;
+        }
+        return messageFormat.format(new Object[0]).trim();
+    }
+
+    /**
+     * Add the path to the tree if it is simple enough.
+     *
+     * @return true if the path is covered.
+     */
+    private boolean isCoverable(final String path, final boolean isDocumentContext) {
+        final boolean isAbsolute = path.startsWith("/");
+        final List<String> steps = parseSteps(isAbsolute ? path.substring(1) : path);
+        if (steps == null) {
+            return false;
+        }
+        if ((!isAbsolute) && (!isDocumentContext)) {
+            // Relative to an element whose content is kept completely.
+            return true;
+        }
+        Step current = root;
+        for (String step : steps) {
+            if (current.isTerminal) {
+                return true;
+            }
+            if (step.startsWith("@")) {
+                // Attributes of elements on a path are always kept.
+                return true;
+            }
+            if (TERMINAL_STEP.matcher(step).matches()) {
+                // Content of the current element.
+                break;
+            }
+            final int predicate = step.indexOf('[');
+            final String qName = predicate < 0 ? step : step.substring(0, predicate);
+            current = current.getOrCreateChild(qName.substring(qName.indexOf(':') + 1));
+            if (predicate >= 0) {
+                // Predicates may refer to any content of the element.
+                break;
+            }
+        }
+        current.isTerminal = true;
+        return true;
+    }
+
+    /**
+     * Split a path into element steps, optionally followed by an attribute or text step. Parent
+     * steps, descendant steps, axes and functions are not supported. Predicates must not contain
+     * paths, axes, variables or functions other than node type tests.
+     *
+     * @return list of steps without self steps or null if the path is not supported.
+     */
+    private static List<String> parseSteps(final String path) {
+        final List<String> steps = new ArrayList<String>();
+        if (path.isEmpty()) {
+            return steps;
+        }
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i <= path.length(); ++i) {
+            final char c = i == path.length() ? '/' : path.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if ((c == '\'') || (c == '"')) {
+                quote = c;
+            } else if (c == '[') {
+                ++depth;
+            } else if (c == ']') {
+                --depth;
+            } else if ((c == '/') && (depth == 0)) {
+                final String step = path.substring(start, i);
+                start = i + 1;
+                if (".".equals(step)) {
+                    continue;
+                }
+                if (!steps.isEmpty() && TERMINAL_STEP.matcher(steps.get(steps.size() - 1)).matches()) {
+                    return null;
+                }
+                if ((!TERMINAL_STEP.matcher(step).matches()) && (!ELEMENT_STEP.matcher(step).matches())) {
+                    return null;
+                }
+                steps.add(step);
+            } else if ((depth > 0) && ((c == '/') || (c == '$') || ((c == '.') && (path.charAt(i - 1) == '.')) || ((c == ':') && (path.charAt(i - 1) == ':')) || ((c == '(') && (!isNodeTest(path, i))))) {
+                // Predicate may refer to nodes outside of the element via paths, axes, variables
+                // or functions.
+                return null;
+            }
+        }
+        return quote == 0 ? steps : null;
+    }
+
+    /**
+     * @param path
+     * @param parenthesis
+     *            index of an opening parenthesis in the path.
+     * @return true if the parenthesis belongs to a node type test of the child axis, like
+     *         <code>text()</code>.
+     */
+    private static boolean isNodeTest(final String path, final int parenthesis) {
+        int start = parenthesis;
+        while ((start > 0) && Character.isLetter(path.charAt(start - 1))) {
+            --start;
+        }
+        final String name = path.substring(start, parenthesis);
+        return "text".equals(name) || "node".equals(name) || "comment".equals(name);
+    }
+
+    private Class<?> findSubprojectionInterface(final Method method) {
+        Class<?> type = method.getReturnType();
+        if (type.isArray()) {
+            type = type.getComponentType();
+        } else if (List.class.equals(type) || ReflectionHelper.isSequenceType(type)) {
+            final Type genericType = method.getGenericReturnType();
+            if (!(genericType instanceof ParameterizedType)) {
+                return null;
+            }
+            final Type componentType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            if (!(componentType instanceof Class)) {
+                return null;
+            }
+            type = (Class<?>) componentType;
+        }
+        if ((!type.isInterface()) || Node.class.isAssignableFrom(type) || typeConverter.isConvertable(type)) {
+            return null;
+        }
+        return type;
+    }
+}
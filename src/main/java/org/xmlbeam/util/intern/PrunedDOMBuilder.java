@@ -0,0 +1,267 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.io.IOException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlbeam.util.intern.ProjectionCoverage.Step;
+
+/**
+ * Builds a DOM containing only the nodes covered by a {@link ProjectionCoverage}. Elements on the
+ * covered paths are created with their attributes, elements selected by a path are copied with
+ * all their content. Everything else is skipped while parsing. Notice that this class is not part
+ * of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class PrunedDOMBuilder extends DefaultHandler implements LexicalHandler {
+
+    private static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+    private static final List<Step> NO_STEPS = new ArrayList<Step>(0);
+
+    private final Document document;
+    private final boolean isNamespaceAware;
+
+    /**
+     * Matching steps for each open element on a covered path.
+     */
+    private final LinkedList<List<Step>> openSteps = new LinkedList<List<Step>>();
+    private final List<String[]> pendingNamespaces = new ArrayList<String[]>();
+    private Node current;
+
+    /**
+     * Depth of open elements inside a skipped element.
+     */
+    private int skippedDepth = 0;
+
+    /**
+     * Depth of open elements inside an element kept with all content.
+     */
+    private int keptDepth = 0;
+    private boolean isInCDATA = false;
+
+    private PrunedDOMBuilder(final Document document, final boolean isNamespaceAware, final ProjectionCoverage coverage) {
+        this.document = document;
+        this.isNamespaceAware = isNamespaceAware;
+        this.current = document;
+        final List<Step> rootSteps = new ArrayList<Step>(1);
+        rootSteps.add(coverage.getRoot());
+        openSteps.add(rootSteps);
+        if (coverage.getRoot().isTerminal()) {
+            keptDepth = 1;
+        }
+    }
+
+    /**
+     * Parse a document, keeping only the nodes covered by the given coverage. The document is
+     * marked as partial. The SAX reader is configured like the given factory, see
+     * {@link DOMHelper#createXMLReader(DocumentBuilderFactory)}. An entity resolver or error
+     * handler set on DocumentBuilders is not known to the reader, so external entities are
+     * resolved as configured in the factory and errors are thrown.
+     *
+     * @param factory
+     *            configures the parser
+     * @param documentBuilder
+     *            used to create the empty document
+     * @param source
+     * @param coverage
+     * @return a new partial document
+     * @throws SAXException
+     * @throws IOException
+     */
+    public static Document parse(final DocumentBuilderFactory factory, final DocumentBuilder documentBuilder, final InputSource source, final ProjectionCoverage coverage) throws SAXException, IOException {
+        final Document document = documentBuilder.newDocument();
+        final PrunedDOMBuilder handler = new PrunedDOMBuilder(document, documentBuilder.isNamespaceAware(), coverage);
+        final XMLReader reader = DOMHelper.createXMLReader(factory);
+        reader.setContentHandler(handler);
+        reader.setErrorHandler(handler);
+        reader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
+        reader.parse(source);
+        coverage.markPartial(document);
+        return document;
+    }
+
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri) {
+        if (skippedDepth > 0) {
+            return;
+        }
+        pendingNamespaces.add(new String[] { prefix, uri });
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+        if (skippedDepth > 0) {
+            ++skippedDepth;
+            return;
+        }
+        if (keptDepth > 0) {
+            ++keptDepth;
+            appendElement(uri, qName, attributes);
+            return;
+        }
+        final List<Step> matches = new ArrayList<Step>(2);
+        final String name = isNamespaceAware ? localName : qName.substring(qName.indexOf(':') + 1);
+        for (Step step : openSteps.getLast()) {
+            step.findChildren(name, matches);
+        }
+        if (matches.isEmpty()) {
+            pendingNamespaces.clear();
+            skippedDepth = 1;
+            return;
+        }
+        appendElement(uri, qName, attributes);
+        for (Step step : matches) {
+            if (step.isTerminal()) {
+                keptDepth = 1;
+                openSteps.addLast(NO_STEPS);
+                return;
+            }
+        }
+        openSteps.addLast(matches);
+    }
+
+    private void appendElement(final String uri, final String qName, final Attributes attributes) {
+        final Element element;
+        if (isNamespaceAware) {
+            element = document.createElementNS((uri == null) || uri.isEmpty() ? null : uri, qName);
+            for (String[] declaration : pendingNamespaces) {
+                final String name = declaration[0].isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + declaration[0];
+                element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, declaration[1]);
+            }
+            pendingNamespaces.clear();
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                final String attributeURI = attributes.getURI(i);
+                element.setAttributeNS(attributeURI.isEmpty() ? null : attributeURI, attributes.getQName(i), attributes.getValue(i));
+            }
+        } else {
+            element = document.createElement(qName);
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                element.setAttribute(attributes.getQName(i), attributes.getValue(i));
+            }
+        }
+        current.appendChild(element);
+        current = element;
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) {
+        if (skippedDepth > 0) {
+            --skippedDepth;
+            return;
+        }
+        current = current.getParentNode();
+        if (keptDepth > 1) {
+            --keptDepth;
+            return;
+        }
+        keptDepth = 0;
+        openSteps.removeLast();
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) {
+        if ((keptDepth == 0) || (skippedDepth > 0) || (current == document)) {
+            return;
+        }
+        final Node last = current.getLastChild();
+        if (isInCDATA) {
+            if ((last != null) && (last.getNodeType() == Node.CDATA_SECTION_NODE)) {
+                ((Text) last).appendData(new String(ch, start, length));
+                return;
+            }
+            current.appendChild(document.createCDATASection(new String(ch, start, length)));
+            return;
+        }
+        if ((last != null) && (last.getNodeType() == Node.TEXT_NODE)) {
+            ((Text) last).appendData(new String(ch, start, length));
+            return;
+        }
+        current.appendChild(document.createTextNode(new String(ch, start, length)));
+    }
+
+    @Override
+    public void ignorableWhitespace(final char[] ch, final int start, final int length) {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(final String target, final String data) {
+        if ((keptDepth > 0) && (skippedDepth == 0)) {
+            current.appendChild(document.createProcessingInstruction(target, data));
+        }
+    }
+
+    @Override
+    public void comment(final char[] ch, final int start, final int length) {
+        if ((keptDepth > 0) && (skippedDepth == 0)) {
+            current.appendChild(document.createComment(new String(ch, start, length)));
+        }
+    }
+
+    @Override
+    public void startCDATA() {
+        isInCDATA = true;
+        if ((keptDepth > 0) && (skippedDepth == 0) && (current != document)) {
+            // Adjacent CDATA sections stay separate nodes.
+            current.appendChild(document.createCDATASection(""));
+        }
+    }
+
+    @Override
+    public void endCDATA() {
+        isInCDATA = false;
+    }
+
+    @Override
+    public void startDTD(final String name, final String publicId, final String systemId) {
+    }
+
+    @Override
+    public void endDTD() {
+    }
+
+    @Override
+    public void startEntity(final String name) {
+    }
+
+    @Override
+    public void endEntity(final String name) {
+    }
+
+    @Override
+    public void error(final SAXParseException e) throws SAXException {
+        throw e;
+    }
+}
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -37,6 +38,10 @@ public final class ReflectionHelper {
 
     private final static Method ISDEFAULT = findIsDefaultMethod();
 
+    private final static String STREAM_CLASS_NAME = "java.util.stream.Stream";
+
+    private final static Method STREAM = findStreamMethod();
+
     public static Set<Class<?>> findAllCommonSuperInterfaces(final Class<?> a, final Class<?> b) {
         final Set<Class<?>> seta = new HashSet<Class<?>>(findAllSuperInterfaces(a));
         final Set<Class<?>> setb = new HashSet<Class<?>>(findAllSuperInterfaces(b));
@@ -57,6 +62,17 @@ public final class ReflectionHelper {
         return null;
     }
 
+    /**
+     * @return Collection.stream() or null if the JVM does not support streams.
+     */
+    private static Method findStreamMethod() {
+        try {
+            return Collection.class.getMethod("stream");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
     public static Collection<? extends Class<?>> findAllSuperInterfaces(final Class<?> a) {
         final Set<Class<?>> set = new LinkedHashSet<Class<?>>();
         if (a.isInterface()) {
@@ -156,4 +172,38 @@ public final class ReflectionHelper {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * @param type
+     * @return true if the type is {@link Iterable}, {@link java.util.Iterator} or
+     *         java.util.stream.Stream.
+     */
+    public static boolean isSequenceType(final Class<?> type) {
+        return Iterable.class.equals(type) || Iterator.class.equals(type) || STREAM_CLASS_NAME.equals(type.getName());
+    }
+
+    /**
+     * @param type
+     *            a type for which {@link #isSequenceType(Class)} is true.
+     * @param collection
+     *            elements may be created when they are pulled, possibly on other threads if a
+     *            parallel stream is used. They must be safe to create concurrently.
+     * @return the collection as instance of the given type.
+     */
+    public static Object toSequence(final Class<?> type, final Collection<?> collection) {
+        if (Iterable.class.equals(type)) {
+            return collection;
+        }
+        if (Iterator.class.equals(type)) {
+            return collection.iterator();
+        }
+        assert STREAM_CLASS_NAME.equals(type.getName());
+        try {
+            return STREAM.invoke(collection);
+        } catch (final IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (final InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
 }
@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.util.intern;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+
+import org.w3c.dom.Document;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig.NamespacePhilosophy;
+import org.xmlbeam.config.XMLFactoriesConfig;
+
+/**
+ * Pool of DocumentBuilders and XPath instances created by a configuration. Instances are borrowed
+ * for a single operation and released afterwards, so they never escape to user code. Only
+ * instances of an unmodified {@link DefaultXMLFactoriesConfig} are reused, because a subclass may
+ * configure them in ways a reset would undo. Other configurations are asked for a new instance
+ * every time. Notice that this class is not part of the public API.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public final class XMLFactoriesPool {
+
+    private static final int CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final Map<XMLFactoriesConfig, XMLFactoriesPool> POOLS = Collections.synchronizedMap(new WeakHashMap<XMLFactoriesConfig, XMLFactoriesPool>());
+
+    // The pools are values of a weak map keyed by the configuration, so it must not be held strongly.
+    private final WeakReference<XMLFactoriesConfig> configReference;
+    private final boolean isPoolingDocumentBuilders;
+    private final boolean isPoolingXPaths;
+    private final BlockingQueue<DocumentBuilder> documentBuilders = new ArrayBlockingQueue<DocumentBuilder>(CAPACITY);
+    private final BlockingQueue<XPath> xPaths = new ArrayBlockingQueue<XPath>(CAPACITY);
+    private volatile int settings;
+    private DocumentBuilderFactory documentBuilderFactory;
+
+    /**
+     * @param config
+     * @return the pool for instances created by the given configuration.
+     */
+    public static XMLFactoriesPool of(final XMLFactoriesConfig config) {
+        synchronized (POOLS) {
+            XMLFactoriesPool pool = POOLS.get(config);
+            if (pool == null) {
+                pool = new XMLFactoriesPool(config);
+                POOLS.put(config, pool);
+            }
+            return pool;
+        }
+    }
+
+    private XMLFactoriesPool(final XMLFactoriesConfig config) {
+        this.configReference = new WeakReference<XMLFactoriesConfig>(config);
+        this.isPoolingDocumentBuilders = isDefaultMethod(config, "createDocumentBuilder");
+        this.isPoolingXPaths = isDefaultMethod(config, "createXPath", Document[].class);
+        this.settings = settingsOf(config);
+    }
+
+    private static boolean isDefaultMethod(final XMLFactoriesConfig config, final String name, final Class<?>... parameterTypes) {
+        if (!(config instanceof DefaultXMLFactoriesConfig)) {
+            return false;
+        }
+        try {
+            return DefaultXMLFactoriesConfig.class.equals(config.getClass().getMethod(name, parameterTypes).getDeclaringClass());
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param config
+     * @return value changing whenever a setting changes that pooled instances depend on.
+     */
+    private static int settingsOf(final XMLFactoriesConfig config) {
+        if (!(config instanceof DefaultXMLFactoriesConfig)) {
+            return 0;
+        }
+        final DefaultXMLFactoriesConfig defaultConfig = (DefaultXMLFactoriesConfig) config;
+        return (defaultConfig.getNamespacePhilosophy().ordinal() << 1) | (defaultConfig.isCompactReadOnlyDocuments() ? 1 : 0);
+    }
+
+    /**
+     * Drop pooled instances if the configuration changed since they were created. Changing the
+     * configuration while instances are borrowed is not supported.
+     *
+     * @return the configuration
+     */
+    private XMLFactoriesConfig getConfig() {
+        final XMLFactoriesConfig config = configReference.get();
+        final int current = settingsOf(config);
+        if (current != settings) {
+            settings = current;
+            documentBuilders.clear();
+            xPaths.clear();
+            synchronized (this) {
+                documentBuilderFactory = null;
+            }
+        }
+        return config;
+    }
+
+    /**
+     * @return a DocumentBuilderFactory of the configuration, created once and shared. Factories
+     *         are not thread safe, so users must synchronize on it.
+     */
+    public DocumentBuilderFactory getDocumentBuilderFactory() {
+        final XMLFactoriesConfig config = getConfig();
+        synchronized (this) {
+            if (documentBuilderFactory == null) {
+                documentBuilderFactory = config.createDocumentBuilderFactory();
+            }
+            return documentBuilderFactory;
+        }
+    }
+
+    /**
+     * @return a DocumentBuilder to be given back via {@link #release(DocumentBuilder)}.
+     */
+    public DocumentBuilder borrowDocumentBuilder() {
+        final XMLFactoriesConfig config = getConfig();
+        if (!isPoolingDocumentBuilders) {
+            return config.createDocumentBuilder();
+        }
+        final DocumentBuilder documentBuilder = documentBuilders.poll();
+        return documentBuilder == null ? config.createDocumentBuilder() : documentBuilder;
+    }
+
+    /**
+     * @param documentBuilder
+     *            instance borrowed from this pool. It must not be used afterwards.
+     */
+    public void release(final DocumentBuilder documentBuilder) {
+        if (!isPoolingDocumentBuilders) {
+            return;
+        }
+        try {
+            documentBuilder.reset();
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        documentBuilders.offer(documentBuilder);
+    }
+
+    /**
+     * @param document
+     *            the document the XPath will be evaluated on.
+     * @return a XPath to be given back via {@link #release(XPath)}.
+     */
+    public XPath borrowXPath(final Document document) {
+        final XMLFactoriesConfig config = getConfig();
+        if (!isPoolingXPaths) {
+            return config.createXPath(document);
+        }
+        final XPath xPath = xPaths.poll();
+        if (xPath == null) {
+            return config.createXPath(document);
+        }
+        if ((document != null) && NamespacePhilosophy.HEDONISTIC.equals(((DefaultXMLFactoriesConfig) config).getNamespacePhilosophy())) {
+            xPath.setNamespaceContext(DocumentNamespaceContext.of(document));
+        }
+        return xPath;
+    }
+
+    /**
+     * @param xPath
+     *            instance borrowed from this pool. It must not be used afterwards.
+     */
+    public void release(final XPath xPath) {
+        if (!isPoolingXPaths) {
+            return;
+        }
+        xPath.reset();
+        xPaths.offer(xPath);
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import javax.xml.namespace.QName;
+
+import org.junit.Test;
+
+/**
+ * Tests for resolving the variables of a {@link ParameterizedXPath}.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestParameterizedXPath {
+
+    @Test
+    public void testOnlyBoundVariablesAreResolved() {
+        final Object[] previousArgs = ParameterizedXPath.bind(new Object[] { "a", "b" });
+        try {
+            assertEquals("b", ParameterizedXPath.VARIABLE_RESOLVER.resolveVariable(new QName("p1")));
+            assertNull(ParameterizedXPath.VARIABLE_RESOLVER.resolveVariable(new QName("p2")));
+            assertNull(ParameterizedXPath.VARIABLE_RESOLVER.resolveVariable(new QName("page")));
+            assertNull(ParameterizedXPath.VARIABLE_RESOLVER.resolveVariable(new QName("p")));
+            assertNull(ParameterizedXPath.VARIABLE_RESOLVER.resolveVariable(new QName("p99999999999")));
+        } finally {
+            ParameterizedXPath.unbind(previousArgs);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.io.ByteArrayInputStream;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig.NamespacePhilosophy;
+import org.xmlbeam.util.intern.DOMPath;
+
+/**
+ * Tests for the compilation of simple paths to bytecode.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestSimpleXPathCompiler {
+
+    public interface Entry {
+        @XBRead("./title")
+        String getTitle();
+    }
+
+    public interface Feed {
+        @XBRead("/feed/entry[@id=''{0}'']/title")
+        String getTitle(int id);
+
+        @XBRead("/feed/entry[last()]/title")
+        String getLastTitle();
+
+        @XBRead("/feed/entry[@id=''2'']/title")
+        String getSecondTitle();
+
+        @XBRead("/feed/entry/title")
+        String getFirstTitle();
+
+        @XBRead("/feed/entry")
+        List<Entry> getEntries();
+    }
+
+    private static final String XML = "<feed version=\"1.0\" xmlns:ns=\"http://xmlbeam.org/ns\">" //
+            + "<entry id=\"1\"><title lang=\"en\">first</title><ns:link href=\"a\"/></entry>\n" //
+            + "<!-- comment --><entry id=\"2\"><title>second</title><title>other</title></entry>" //
+            + "<ns:entry id=\"x\">ns</ns:entry><entry xmlns=\"http://xmlbeam.org/default\" id=\"d\"><title>d</title></entry>" //
+            + "<other id=\"o\"><title lang=\"de\">3</title></other><entry id=\"3\"><title>third</title></entry></feed>";
+
+    private static final String[] PATHS = { "/feed", "/feed/@version", "/feed/entry", "/feed/entry/@id", "/feed/entry/title", "/feed/*/title/@lang", "/feed/entry[@id='2']/title", "/feed/entry[title='third']/@id", "/feed/entry[@id='9']", "/feed/*", "/*/*/*", "/feed/entry/link/@href", "/feed/entry/title/@missing", "entry/title", "./entry[@id='3']", "@version", "/@version", "/nothing/entry" };
+
+    @Test
+    public void testCompiledPathsSelectSameNodes() throws Exception {
+        for (NamespacePhilosophy philosophy : new NamespacePhilosophy[] { NamespacePhilosophy.HEDONISTIC, NamespacePhilosophy.NIHILISTIC }) {
+            final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+            config.setNamespacePhilosophy(philosophy);
+            final Document document = config.createDocumentBuilder().parse(new ByteArrayInputStream(XML.getBytes("utf-8")));
+            final Node[] contexts = { document, document.getDocumentElement(), document.getDocumentElement().getAttributes().item(0) };
+            for (String path : PATHS) {
+                final SimpleXPath simplePath = SimpleXPath.parse(path);
+                assertNotNull(path, simplePath);
+                final DOMPath compiledPath = SimpleXPathCompiler.compile(simplePath, path);
+                assertFalse(compiledPath instanceof SimpleXPath);
+                assertSame(compiledPath, SimpleXPathCompiler.compile(SimpleXPath.parse(path), path));
+                final XPathExpression expression = XPathFactory.newInstance().newXPath().compile(path);
+                for (Node context : contexts) {
+                    final String message = path + " on " + context;
+                    final List<Node> expected = toList((NodeList) expression.evaluate(context, XPathConstants.NODESET));
+                    assertEquals(message, expected, simplePath.selectAll(context));
+                    assertEquals(message, expected, compiledPath.selectAll(context));
+                    assertSame(message, expected.isEmpty() ? null : expected.get(0), compiledPath.selectFirst(context));
+                    assertEquals(message, expression.evaluate(context, XPathConstants.STRING), compiledPath.selectString(context));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHotMethodsAreCompiled() throws Exception {
+        final Method method = Feed.class.getMethod("getFirstTitle");
+        final InvocationPlan plan = InvocationPlan.create(new XBProjector(), Feed.class, method);
+        assertTrue(plan.getSimplePathEvaluator() instanceof SimpleXPath);
+        for (int i = 0; i < InvocationPlan.COMPILE_THRESHOLD; ++i) {
+            plan.getSimplePathEvaluator();
+        }
+        assertFalse(plan.getSimplePathEvaluator() instanceof SimpleXPath);
+        assertNotNull(plan.getSimplePathEvaluator());
+
+        final Feed feed = new XBProjector().projectXMLString(XML, Feed.class);
+        for (int i = 0; i < (2 * InvocationPlan.COMPILE_THRESHOLD); ++i) {
+            assertEquals("first", feed.getFirstTitle());
+            assertEquals("second", feed.getSecondTitle());
+            assertEquals("third", feed.getLastTitle());
+            assertEquals("third", feed.getTitle(3));
+            assertEquals("first", feed.getEntries().get(0).getTitle());
+        }
+    }
+
+    @Test
+    public void testCompiledPathsSelectLikeXPath() throws Exception {
+        final StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < 200; ++i) {
+            xml.append("<entry id=\"").append(i).append("\"><title>Title ").append(i).append("</title></entry>");
+        }
+        final Document document = new DefaultXMLFactoriesConfig().createDocumentBuilder().parse(new ByteArrayInputStream(xml.append("</feed>").toString().getBytes("utf-8")));
+        final String path = "/feed/entry[@id='150']/title";
+        final DOMPath compiledPath = SimpleXPathCompiler.compile(SimpleXPath.parse(path), path);
+        final XPathExpression expression = XPathFactory.newInstance().newXPath().compile(path);
+        assertEquals(expression.evaluate(document, XPathConstants.STRING), compiledPath.selectString(document));
+    }
+
+    @Test
+    public void benchmarkCompiledPathAgainstXPath() throws Exception {
+        final StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < 200; ++i) {
+            xml.append("<entry id=\"").append(i).append("\"><title>Title ").append(i).append("</title></entry>");
+        }
+        final Document document = new DefaultXMLFactoriesConfig().createDocumentBuilder().parse(new ByteArrayInputStream(xml.append("</feed>").toString().getBytes("utf-8")));
+        final String path = "/feed/entry[@id='150']/title";
+        final DOMPath compiledPath = SimpleXPathCompiler.compile(SimpleXPath.parse(path), path);
+        final XPathExpression expression = XPathFactory.newInstance().newXPath().compile(path);
+        final int rounds = 2000;
+        long best = Long.MAX_VALUE;
+        long bestXPath = Long.MAX_VALUE;
+        for (int r = 0; r < 5; ++r) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; ++i) {
+                assertEquals("Title 150", compiledPath.selectString(document));
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; ++i) {
+                assertEquals("Title 150", expression.evaluate(document, XPathConstants.STRING));
+            }
+            bestXPath = Math.min(bestXPath, System.nanoTime() - start);
+        }
+        System.out.println("Evaluated " + path + " " + rounds + " times compiled in " + (best / 1000000) + "ms, via XPath in " + (bestXPath / 1000000) + "ms.");
+    }
+
+    private static List<Node> toList(final NodeList nodes) {
+        final List<Node> list = new ArrayList<Node>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); ++i) {
+            list.add(nodes.item(i));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.XBProjector.Flags;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.types.DefaultTypeConverter;
+import org.xmlbeam.types.DefaultTypeConverter.Conversion;
+
+/**
+ * Tests for lists creating their elements on access.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestLazyLists {
+
+    public interface Item {
+        @XBRead("@id")
+        int getId();
+    }
+
+    public interface Feed {
+        @XBRead("/feed/item")
+        List<Item> getItems();
+
+        @XBRead("/feed/item[@id > 1]")
+        List<Item> getLaterItems();
+
+        @XBRead("/feed/item/@id")
+        List<Integer> getIds();
+    }
+
+    private static final String XML = "<feed><item id=\"1\"/><item id=\"2\"/><item id=\"3\"/></feed>";
+
+    @Test
+    public void testListContent() {
+        final Feed eager = new XBProjector().projectXMLString(XML, Feed.class);
+        final Feed lazy = new XBProjector(Flags.LAZY_LISTS).projectXMLString(XML, Feed.class);
+        assertEquals(eager.getIds(), lazy.getIds());
+        assertEquals(3, lazy.getItems().size());
+        assertEquals(3, lazy.getItems().get(2).getId());
+        assertEquals(2, lazy.getLaterItems().get(0).getId());
+        final List<Item> items = lazy.getItems();
+        assertSame(items.get(1), items.get(1));
+        try {
+            items.add(items.get(0));
+            fail("Lazy lists are read only.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testElementsAreCreatedOnAccess() {
+        final AtomicInteger conversions = new AtomicInteger();
+        final XBProjector projector = new XBProjector(Flags.LAZY_LISTS);
+        projector.config().getTypeConverterAs(DefaultTypeConverter.class).setConversionForType(Integer.class, new Conversion<Integer>(0) {
+            @Override
+            public Integer convert(final String data) {
+                conversions.incrementAndGet();
+                return Integer.valueOf(data);
+            }
+        });
+        final List<Integer> ids = projector.projectXMLString(XML, Feed.class).getIds();
+        assertEquals(3, ids.size());
+        assertEquals(0, conversions.get());
+        assertEquals(Integer.valueOf(1), ids.get(0));
+        assertEquals(Integer.valueOf(1), ids.get(0));
+        assertEquals(1, conversions.get());
+    }
+}
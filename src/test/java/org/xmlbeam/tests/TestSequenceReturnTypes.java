@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.XBProjector.Flags;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.types.DefaultTypeConverter;
+import org.xmlbeam.types.DefaultTypeConverter.Conversion;
+import org.xmlbeam.util.intern.DOMHelper;
+import org.xmlbeam.util.intern.ReflectionHelper;
+
+/**
+ * Tests for reading methods returning Iterable, Iterator or Stream.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestSequenceReturnTypes {
+
+    public interface Item {
+        @XBRead("@id")
+        int getId();
+    }
+
+    public interface Feed extends DOMAccess {
+        @XBRead("/feed/item")
+        Iterable<Item> items();
+
+        @XBRead("/feed/item[@id > 1]")
+        Iterator<Item> laterItems();
+
+        @XBRead("/feed/item/@id")
+        Iterator<Integer> ids();
+    }
+
+    private static final String XML = "<feed><item id=\"1\"/><item id=\"2\"/><item id=\"3\"/></feed>";
+
+    private static List<Integer> ids(final Iterator<Item> items) {
+        final List<Integer> ids = new ArrayList<Integer>();
+        while (items.hasNext()) {
+            ids.add(items.next().getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testIterableAndIterator() {
+        final Feed feed = new XBProjector().projectXMLString(XML, Feed.class);
+        assertEquals(Arrays.asList(1, 2, 3), ids(feed.items().iterator()));
+        assertEquals(Arrays.asList(1, 2, 3), ids(feed.items().iterator()));
+        assertEquals(Arrays.asList(2, 3), ids(feed.laterItems()));
+        assertFalse(new XBProjector().projectXMLString("<feed/>", Feed.class).items().iterator().hasNext());
+    }
+
+    @Test
+    public void testElementsAreCreatedWhenPulled() {
+        final AtomicInteger conversions = new AtomicInteger();
+        final XBProjector projector = new XBProjector();
+        projector.config().getTypeConverterAs(DefaultTypeConverter.class).setConversionForType(Integer.class, new Conversion<Integer>(0) {
+            @Override
+            public Integer convert(final String data) {
+                conversions.incrementAndGet();
+                return Integer.valueOf(data);
+            }
+        });
+        final Iterator<Integer> ids = projector.projectXMLString(XML, Feed.class).ids();
+        assertEquals(0, conversions.get());
+        assertEquals(Integer.valueOf(1), ids.next());
+        assertEquals(1, conversions.get());
+    }
+
+    @Test
+    public void testElementsAreCreatedUnderReadLock() {
+        final AtomicInteger unlockedConversions = new AtomicInteger();
+        final ReentrantReadWriteLock[] lock = new ReentrantReadWriteLock[1];
+        final XBProjector projector = new XBProjector(Flags.READ_WRITE_LOCK_ON_DOCUMENTS);
+        projector.config().getTypeConverterAs(DefaultTypeConverter.class).setConversionForType(Integer.class, new Conversion<Integer>(0) {
+            @Override
+            public Integer convert(final String data) {
+                if (lock[0].getReadHoldCount() == 0) {
+                    unlockedConversions.incrementAndGet();
+                }
+                return Integer.valueOf(data);
+            }
+        });
+        final Feed feed = projector.projectXMLString(XML, Feed.class);
+        lock[0] = (ReentrantReadWriteLock) DOMHelper.getReadWriteLock(feed.getDOMOwnerDocument());
+        final Iterator<Integer> ids = feed.ids();
+        assertTrue(ids.hasNext());
+        assertEquals(Integer.valueOf(1), ids.next());
+        assertEquals(0, unlockedConversions.get());
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        final Class<?> streamType;
+        try {
+            streamType = Class.forName("java.util.stream.Stream");
+        } catch (ClassNotFoundException e) {
+            assumeTrue(false);
+            return;
+        }
+        final Object stream = ReflectionHelper.toSequence(streamType, Arrays.asList(1, 2, 3));
+        final Object parallel = streamType.getMethod("parallel").invoke(stream);
+        assertEquals(3L, streamType.getMethod("count").invoke(parallel));
+    }
+}
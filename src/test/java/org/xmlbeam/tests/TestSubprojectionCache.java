@@ -0,0 +1,93 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.XBProjector.Flags;
+import org.xmlbeam.annotation.XBDelete;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.annotation.XBWrite;
+
+/**
+ * Tests for reusing sub projections of the same node.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestSubprojectionCache {
+
+    public interface Item {
+        @XBRead("title")
+        String getTitle();
+    }
+
+    public interface Channel {
+        @XBRead("item[{0}]")
+        Item getItem(int index);
+
+        @XBRead("item")
+        List<Item> getItems();
+
+        @XBDelete("item[{0}]")
+        Channel deleteItem(int index);
+    }
+
+    public interface Feed {
+        @XBRead("/rss/channel")
+        Channel getChannel();
+
+        @XBWrite("/rss/channel/item")
+        Feed setItems(List<Item> items);
+    }
+
+    private static final String XML = "<rss><channel><item><title>a</title></item><item><title>b</title></item></channel></rss>";
+
+    @Test
+    public void testSameNodeGivesSameProjection() {
+        final Feed feed = new XBProjector(Flags.CACHE_SUBPROJECTIONS).projectXMLString(XML, Feed.class);
+        final Channel channel = feed.getChannel();
+        assertSame(channel, feed.getChannel());
+        assertSame(channel.getItem(2), feed.getChannel().getItem(2));
+        assertSame(channel.getItem(1), channel.getItems().get(0));
+        assertNotSame(channel.getItem(1), channel.getItem(2));
+    }
+
+    @Test
+    public void testProjectionsAreNotCachedByDefault() {
+        final Feed feed = new XBProjector().projectXMLString(XML, Feed.class);
+        assertNotSame(feed.getChannel(), feed.getChannel());
+    }
+
+    @Test
+    public void testChangedDocumentGivesNewProjections() {
+        final Feed feed = new XBProjector(Flags.CACHE_SUBPROJECTIONS).projectXMLString(XML, Feed.class);
+        final Channel channel = feed.getChannel();
+        final Item first = channel.getItem(1);
+        final Item second = channel.getItem(2);
+        channel.deleteItem(1);
+        assertSame(second, channel.getItem(1));
+        assertEquals("a", first.getTitle());
+        feed.setItems(channel.getItems());
+        assertNotSame(second, channel.getItem(1));
+        assertEquals("b", channel.getItem(1).getTitle());
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.classgen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.XBProjector.Flags;
+import org.xmlbeam.annotation.XBDelete;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.annotation.XBWrite;
+import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.types.DefaultTypeConverter;
+import org.xmlbeam.types.DefaultTypeConverter.Conversion;
+
+/**
+ * Tests for {@link Flags#GENERATE_PROJECTION_CLASSES}. Projections of generated classes must behave
+ * like proxy based projections.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestGeneratedProjectionClasses {
+
+    public interface Item {
+        @XBRead("@id")
+        int getId();
+
+        @XBRead(".")
+        String getName();
+    }
+
+    public interface Values {
+        @XBRead("/values/int")
+        int getInt();
+
+        @XBRead("/values/long")
+        long getLong();
+
+        @XBRead("/values/double")
+        double getDouble();
+
+        @XBRead("/values/boolean")
+        boolean getBoolean();
+
+        @XBRead("/values/float")
+        float getFloat();
+
+        @XBRead("/values/short")
+        short getShort();
+
+        @XBRead("/values/byte")
+        byte getByte();
+
+        @XBRead("/values/char")
+        char getChar();
+
+        @XBRead("/values/missing")
+        int getMissingInt();
+
+        @XBRead("/values/missing")
+        boolean getMissingBoolean();
+
+        @XBRead("/values/name")
+        String getName();
+
+        @XBRead("/values/int")
+        Integer getBoxedInt();
+
+        @XBRead("count(/values/items/item)")
+        int getItemCount();
+
+        @XBRead("/values/items/item[@id={0}]")
+        String getItemName(int id);
+
+        @XBRead("/values/items/item")
+        List<Item> getItems();
+
+        @XBRead("/values/items/item")
+        String[] getItemNames();
+
+        @XBRead("/values/items/item[1]")
+        Item getFirstItem();
+
+        @XBRead("/values/items")
+        Node getItemsNode();
+
+        @XBWrite("/values/name")
+        Values setName(String name);
+
+        @XBWrite("/values/int")
+        void setInt(int value);
+
+        @XBWrite("/values/double")
+        void setDouble(double value);
+
+        @XBDelete("/values/items/item[@id={0}]")
+        Values deleteItem(int id);
+    }
+
+    public interface Greeting {
+        String greet(String name);
+    }
+
+    public interface GreetingValues extends Values, Greeting {
+    }
+
+    static class NonPublicType {
+    }
+
+    public interface ProjectionWithNonPublicType {
+        @XBRead("/values/name")
+        String getName();
+
+        void accept(NonPublicType value);
+    }
+
+    private static final String XML = "<values><int>42</int><long>12345678901</long><double>3.5</double><boolean>true</boolean><float>1.5</float><short>7</short><byte>8</byte><char>c</char><name>foo</name><items><item id=\"1\">one</item><item id=\"2\">two</item></items></values>";
+
+    private static XBProjector generating(final Flags... flags) {
+        final Flags[] allFlags = Arrays.copyOf(flags, flags.length + 1);
+        allFlags[flags.length] = Flags.GENERATE_PROJECTION_CLASSES;
+        return new XBProjector(allFlags);
+    }
+
+    @Test
+    public void testProjectionIsNoProxy() {
+        final Values values = generating().projectXMLString(XML, Values.class);
+        assertFalse(Proxy.isProxyClass(values.getClass()));
+        assertTrue(values instanceof DOMAccess);
+        assertSame(values.getClass(), generating().projectXMLString(XML, Values.class).getClass());
+        assertTrue(Proxy.isProxyClass(new XBProjector().projectXMLString(XML, Values.class).getClass()));
+    }
+
+    @Test
+    public void testPrimitiveGetters() {
+        final Values values = generating().projectXMLString(XML, Values.class);
+        assertEquals(42, values.getInt());
+        assertEquals(12345678901L, values.getLong());
+        assertEquals(3.5, values.getDouble(), 0.0);
+        assertTrue(values.getBoolean());
+        assertEquals(1.5F, values.getFloat(), 0.0F);
+        assertEquals((short) 7, values.getShort());
+        assertEquals((byte) 8, values.getByte());
+        assertEquals('c', values.getChar());
+        assertEquals(0, values.getMissingInt());
+        assertFalse(values.getMissingBoolean());
+        assertEquals(Integer.valueOf(42), values.getBoxedInt());
+        assertEquals(2, values.getItemCount());
+    }
+
+    @Test
+    public void testGettersWithParametersAndSubprojections() {
+        final Values values = generating().projectXMLString(XML, Values.class);
+        assertEquals("foo", values.getName());
+        assertEquals("two", values.getItemName(2));
+        assertEquals(2, values.getItems().size());
+        assertEquals(2, values.getItems().get(1).getId());
+        assertArrayEquals(new String[] { "one", "two" }, values.getItemNames());
+        assertEquals("one", values.getFirstItem().getName());
+        assertEquals("items", values.getItemsNode().getNodeName());
+    }
+
+    @Test
+    public void testSettersAndDeleters() {
+        final Values values = generating().projectXMLString(XML, Values.class);
+        assertSame(values, values.setName("bar"));
+        assertEquals("bar", values.getName());
+        values.setInt(-1);
+        assertEquals(-1, values.getInt());
+        values.setDouble(0.25);
+        assertEquals(0.25, values.getDouble(), 0.0);
+        assertSame(values, values.deleteItem(1));
+        assertEquals(1, values.getItemCount());
+    }
+
+    @Test
+    public void testBoundPlaceholdersAndSynchronization() {
+        final Values values = generating(Flags.BIND_PLACEHOLDERS_AS_VARIABLES, Flags.SYNCHRONIZE_ON_DOCUMENTS).projectXMLString(XML, Values.class);
+        assertEquals("one", values.getItemName(1));
+        assertEquals(42, values.getInt());
+    }
+
+    @Test
+    public void testCustomConversionIsUsedForPrimitives() {
+        final XBProjector projector = generating();
+        ((DefaultTypeConverter) projector.config().getTypeConverter()).setConversionForType(Integer.TYPE, new Conversion<Integer>(0) {
+            @Override
+            public Integer convert(final String data) {
+                return Integer.valueOf(data) * 2;
+            }
+        });
+        assertEquals(84, projector.projectXMLString(XML, Values.class).getInt());
+    }
+
+    @Test
+    public void testNumberFormatException() {
+        try {
+            generating().projectXMLString("<values><int>x</int></values>", Values.class).getInt();
+            fail();
+        } catch (NumberFormatException e) {
+            assertTrue(e.getMessage().endsWith("XPath was:/values/int"));
+        }
+    }
+
+    @Test
+    public void testObjectMethods() {
+        final XBProjector projector = generating();
+        final Values values = projector.projectXMLString(XML, Values.class);
+        final Values other = projector.projectDOMNode(((DOMAccess) values).getDOMNode(), Values.class);
+        assertNotSame(values, other);
+        assertEquals(values, other);
+        assertEquals(values.hashCode(), other.hashCode());
+        assertEquals(new XBProjector().projectDOMNode(((DOMAccess) values).getDOMNode(), Values.class).toString(), values.toString());
+        assertEquals(new XBProjector(Flags.TO_STRING_RENDERS_XML).projectDOMNode(((DOMAccess) values).getDOMNode(), Values.class).toString(), generating(Flags.TO_STRING_RENDERS_XML).projectDOMNode(((DOMAccess) values).getDOMNode(), Values.class).toString());
+    }
+
+    @Test
+    public void testMixins() {
+        final Greeting greeting = new Greeting() {
+            private Values me;
+
+            @Override
+            public String greet(final String name) {
+                return "Hello " + name + " from " + me.getName();
+            }
+        };
+        final GreetingValues values = generating().mixins().addProjectionMixin(GreetingValues.class, greeting).projectXMLString(XML, GreetingValues.class);
+        assertFalse(Proxy.isProxyClass(values.getClass()));
+        assertEquals("Hello bar from foo", values.greet("bar"));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        final Values values = generating(Flags.SYNCHRONIZE_ON_DOCUMENTS).projectXMLString(XML, Values.class);
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ObjectOutputStream(outputStream).writeObject(values);
+        final Values clone = (Values) new ObjectInputStream(new ByteArrayInputStream(outputStream.toByteArray())).readObject();
+        assertNotSame(values, clone);
+        assertSame(values.getClass(), clone.getClass());
+        assertEquals(42, clone.getInt());
+        assertEquals("two", clone.getItems().get(1).getName());
+    }
+
+    @Test
+    public void testFallbackToProxy() {
+        final ProjectionWithNonPublicType projection = generating().projectXMLString(XML, ProjectionWithNonPublicType.class);
+        assertTrue(Proxy.isProxyClass(projection.getClass()));
+        assertEquals("foo", projection.getName());
+        assertNull(generating().projectEmptyDocument(Values.class).getFirstItem());
+    }
+}
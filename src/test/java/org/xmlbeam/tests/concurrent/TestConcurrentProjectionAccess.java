@@ -19,6 +19,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.xmlbeam.XBProjector;
@@ -54,7 +55,16 @@ public class TestConcurrentProjectionAccess {
 
     @Test
     public void testConcurrentProjectionAccess() throws InterruptedException {
-        final Projection projection = new XBProjector(Flags.SYNCHRONIZE_ON_DOCUMENTS, Flags.TO_STRING_RENDERS_XML).projectEmptyDocument(Projection.class);
+        testConcurrentProjectionAccess(Flags.SYNCHRONIZE_ON_DOCUMENTS);
+    }
+
+    @Test
+    public void testConcurrentProjectionAccessWithReadWriteLock() throws InterruptedException {
+        testConcurrentProjectionAccess(Flags.READ_WRITE_LOCK_ON_DOCUMENTS);
+    }
+
+    private void testConcurrentProjectionAccess(final Flags lockingFlag) throws InterruptedException {
+        final Projection projection = new XBProjector(lockingFlag, Flags.TO_STRING_RENDERS_XML).projectEmptyDocument(Projection.class);
 // final Projection projection = new
 // XBProjector(Flags.TO_STRING_RENDERS_XML).projectEmptyDocument(Projection.class);
         final Projection b = projection.setSingleB("Huhu").getSingleB();
@@ -80,4 +90,44 @@ public class TestConcurrentProjectionAccess {
         // System.out.println(projection.toString());
         assertEquals(count + 1, projection.countB());
     }
+
+    @Test
+    public void testConcurrentReadersWithReadWriteLock() throws InterruptedException {
+        final StringBuilder xml = new StringBuilder("<a>");
+        for (int i = 0; i < count; ++i) {
+            xml.append("<x").append(i).append("><b>Value ").append(i).append("</b></x").append(i).append(">");
+        }
+        final Projection projection = new XBProjector(Flags.READ_WRITE_LOCK_ON_DOCUMENTS).projectXMLString(xml.append("</a>").toString(), Projection.class);
+        runReaders(projection, 8, 2000);
+    }
+
+    private void runReaders(final Projection projection, final int threadCount, final int readsPerThread) throws InterruptedException {
+        final AtomicInteger errors = new AtomicInteger();
+        final List<Thread> threads = new LinkedList<Thread>();
+        for (int i = 0; i < threadCount; ++i) {
+            final int offset = i;
+            threads.add(new Thread() {
+                {
+                    setDaemon(true);
+                }
+
+                @Override
+                public void run() {
+                    for (int r = 0; r < readsPerThread; ++r) {
+                        final int index = (offset + r) % count;
+                        if (!("Value " + index).equals(projection.getB(index))) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, errors.get());
+    }
 }
@@ -0,0 +1,197 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.io.ByteArrayInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXParseException;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.annotation.XBWrite;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig.NamespacePhilosophy;
+import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.util.intern.CompactDocument;
+
+/**
+ * Tests for the compact read only document model.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestCompactDocuments {
+
+    public interface Entry {
+        @XBRead("@id")
+        int getId();
+
+        @XBRead("./title")
+        String getTitle();
+
+        @XBRead("ns:link/@href")
+        String getLink();
+
+        @XBRead("count(preceding-sibling::entry)")
+        int getPosition();
+    }
+
+    public interface Feed extends DOMAccess {
+        @XBRead("/feed/@version")
+        String getVersion();
+
+        @XBRead("/feed/entry")
+        List<Entry> getEntries();
+
+        @XBRead("/feed/entry[@id='2']/title")
+        String getSecondTitle();
+
+        @XBRead("//title")
+        List<String> getAllTitles();
+
+        @XBRead("/feed/comment()")
+        String getComment();
+
+        @XBRead("/feed/text")
+        String getText();
+
+        @XBRead("sum(/feed/entry/@id)")
+        int getIdSum();
+
+        @XBRead("/feed/entry[last()]/ns:link/@href")
+        String getLastLink();
+
+        @XBRead("name(/feed/*[3])")
+        String getThirdChildName();
+
+        @XBWrite("/feed/@version")
+        Feed setVersion(String version);
+    }
+
+    private static final String XML = "<?xml version=\"1.0\"?>\n<feed version=\"1.0\" xmlns:ns=\"http://xmlbeam.org/ns\"><!--generated--><?pi data?>\n" //
+            + "<entry id=\"1\"><title>first</title><ns:link href=\"http://a\"/></entry>\n" //
+            + "<entry id=\"2\"><title>second &amp; <![CDATA[<more>]]></title><ns:link href=\"http://b\"/></entry>\n" //
+            + "<text>a<b>b</b>c</text></feed>";
+
+    private static XBProjector compactProjector() {
+        return new XBProjector(new DefaultXMLFactoriesConfig().setCompactReadOnlyDocuments(true));
+    }
+
+    @Test
+    public void testProjectionsReadEqualValues() {
+        final Feed compact = compactProjector().projectXMLString(XML, Feed.class);
+        final Feed expected = new XBProjector().projectXMLString(XML, Feed.class);
+        assertTrue(compact.getDOMOwnerDocument() instanceof CompactDocument);
+        assertEquals(expected.getVersion(), compact.getVersion());
+        assertEquals(expected.getSecondTitle(), compact.getSecondTitle());
+        assertEquals("second & <more>", compact.getSecondTitle());
+        assertEquals(expected.getAllTitles(), compact.getAllTitles());
+        assertEquals(expected.getComment(), compact.getComment());
+        assertEquals(expected.getText(), compact.getText());
+        assertEquals(expected.getIdSum(), compact.getIdSum());
+        assertEquals(expected.getLastLink(), compact.getLastLink());
+        assertEquals(expected.getThirdChildName(), compact.getThirdChildName());
+        assertEquals(expected.getEntries().size(), compact.getEntries().size());
+        for (int i = 0; i < expected.getEntries().size(); ++i) {
+            final Entry entry = compact.getEntries().get(i);
+            assertEquals(expected.getEntries().get(i).getId(), entry.getId());
+            assertEquals(expected.getEntries().get(i).getTitle(), entry.getTitle());
+            assertEquals(expected.getEntries().get(i).getLink(), entry.getLink());
+            assertEquals(i, entry.getPosition());
+        }
+    }
+
+    @Test
+    public void testNodesAreCanonical() {
+        final Feed feed = compactProjector().projectXMLString(XML, Feed.class);
+        final Node root = feed.getDOMOwnerDocument().getDocumentElement();
+        assertSame(root, root.getFirstChild().getParentNode());
+        assertSame(root.getFirstChild(), root.getFirstChild().getNextSibling().getPreviousSibling());
+        assertSame(root, root.getAttributes().item(0).getOwnerDocument().getDocumentElement());
+    }
+
+    @Test
+    public void testNamespaceUnawareParsing() {
+        final XBProjector projector = new XBProjector(new DefaultXMLFactoriesConfig().setCompactReadOnlyDocuments(true).setNamespacePhilosophy(NamespacePhilosophy.NIHILISTIC));
+        final Feed feed = projector.projectXMLString(XML, Feed.class);
+        assertEquals("second & <more>", feed.getSecondTitle());
+        assertEquals(2, feed.getEntries().size());
+    }
+
+    @Test
+    public void testDocumentsAreReadOnly() {
+        final Feed feed = compactProjector().projectXMLString(XML, Feed.class);
+        try {
+            feed.setVersion("2.0");
+            fail("Compact documents are read only.");
+        } catch (DOMException e) {
+            assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+        }
+        assertEquals("1.0", feed.getVersion());
+        // New documents can be changed as usual.
+        assertEquals("2.0", compactProjector().projectEmptyDocument(Feed.class).setVersion("2.0").getVersion());
+    }
+
+    @Test
+    public void testFactorySettingsAreApplied() throws Exception {
+        @SuppressWarnings("serial")
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig() {
+            @Override
+            public DocumentBuilderFactory createDocumentBuilderFactory() {
+                final DocumentBuilderFactory factory = super.createDocumentBuilderFactory();
+                factory.setIgnoringComments(true);
+                try {
+                    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                } catch (ParserConfigurationException e) {
+                    throw new RuntimeException(e);
+                }
+                return factory;
+            }
+        }.setCompactReadOnlyDocuments(true);
+        final Document document = config.createDocumentBuilder().parse(new ByteArrayInputStream("<a><!--c--><b/></a>".getBytes("utf-8")));
+        assertEquals("b", document.getDocumentElement().getFirstChild().getNodeName());
+        try {
+            config.createDocumentBuilder().parse(new ByteArrayInputStream("<!DOCTYPE a [<!ENTITY e 'x'>]><a>&e;</a>".getBytes("utf-8")));
+            fail("Document type declarations are disallowed.");
+        } catch (SAXParseException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnconfiguredFactory() throws Exception {
+        @SuppressWarnings("serial")
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig() {
+            @Override
+            public DocumentBuilderFactory createDocumentBuilderFactory() {
+                return DocumentBuilderFactory.newInstance();
+            }
+        }.setCompactReadOnlyDocuments(true);
+        final Document document = config.createDocumentBuilder().parse(new ByteArrayInputStream("<a><b/></a>".getBytes("utf-8")));
+        assertEquals("b", document.getDocumentElement().getFirstChild().getNodeName());
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig.NamespacePhilosophy;
+
+/**
+ * Tests to ensure factories are created once per configuration.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+@SuppressWarnings("serial")
+public class TestDefaultXMLFactoriesConfig {
+
+    public interface Projection {
+        @XBRead("/root/value")
+        String getValue();
+    }
+
+    private static class CountingConfig extends DefaultXMLFactoriesConfig {
+        final AtomicInteger documentBuilderFactories = new AtomicInteger();
+        final AtomicInteger xPathFactories = new AtomicInteger();
+
+        @Override
+        public DocumentBuilderFactory createDocumentBuilderFactory() {
+            documentBuilderFactories.incrementAndGet();
+            return super.createDocumentBuilderFactory();
+        }
+
+        @Override
+        public XPathFactory createXPathFactory() {
+            xPathFactories.incrementAndGet();
+            return super.createXPathFactory();
+        }
+    }
+
+    @Test
+    public void testFactoriesAreCreatedOnce() {
+        final CountingConfig config = new CountingConfig();
+        // Simple paths would be evaluated without XPath.
+        final XBProjector projector = new XBProjector(config, XBProjector.Flags.XPATH_ENGINE_ONLY);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals("v" + i, projector.projectXMLString("<root><value>v" + i + "</value></root>", Projection.class).getValue());
+        }
+        assertEquals(1, config.documentBuilderFactories.get());
+        assertEquals(1, config.xPathFactories.get());
+    }
+
+    @Test
+    public void testNewInstancesAreCreated() {
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+        final DocumentBuilder builder = config.createDocumentBuilder();
+        assertNotSame(builder, config.createDocumentBuilder());
+        assertNotSame(config.createXPath(), config.createXPath());
+        assertNotSame(config.createTransformer(), config.createTransformer());
+    }
+
+    @Test
+    public void testInstancesAreIndependent() {
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+        config.createTransformer().setOutputProperty(OutputKeys.METHOD, "text");
+        assertFalse("text".equals(config.createTransformer().getOutputProperty(OutputKeys.METHOD)));
+        config.setPrettyPrinting(false);
+        assertFalse("yes".equals(config.createTransformer().getOutputProperty(OutputKeys.INDENT)));
+        assertNull(config.createXPath().getNamespaceContext());
+    }
+
+    @Test
+    public void testChangingNamespacePhilosophyDiscardsFactories() {
+        final CountingConfig config = new CountingConfig();
+        assertTrue(config.createDocumentBuilder().isNamespaceAware());
+        config.setNamespacePhilosophy(NamespacePhilosophy.NIHILISTIC);
+        assertFalse(config.createDocumentBuilder().isNamespaceAware());
+        assertEquals(2, config.documentBuilderFactories.get());
+    }
+}
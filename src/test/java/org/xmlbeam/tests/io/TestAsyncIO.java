@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.io.XBAsyncIO;
+import org.xmlbeam.io.XBHttpResponse;
+import org.xmlbeam.io.XBHttpTransport;
+
+/**
+ * Tests for the asynchronous IO operations.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestAsyncIO {
+
+    public interface Foo {
+        @XBRead("/foo/@value")
+        String getValue();
+    }
+
+    /**
+     * Serves documents only when all expected requests are in flight at the same time.
+     */
+    private static final class OverlapRequiringTransport implements XBHttpTransport {
+        private final CyclicBarrier barrier;
+
+        OverlapRequiringTransport(final int parties) {
+            this.barrier = new CyclicBarrier(parties);
+        }
+
+        @Override
+        public XBHttpResponse get(final String url, final Map<String, String> requestProperties) throws IOException {
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IOException("Requests did not overlap: " + e);
+            }
+            return new XBHttpResponse(200, null, new ByteArrayInputStream(("<foo value=\"" + url.substring(url.lastIndexOf('/') + 1) + "\"/>").getBytes("UTF-8")));
+        }
+
+        @Override
+        public XBHttpResponse post(final String url, final RequestBody body, final Map<String, String> requestProperties) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testLoadsOverlap() throws Exception {
+        final int count = 24;
+        final XBProjector projector = new XBProjector();
+        projector.config().setHttpTransport(new OverlapRequiringTransport(count));
+        final List<Future<Foo>> futures = new ArrayList<Future<Foo>>();
+        for (int i = 0; i < count; ++i) {
+            futures.add(projector.io().async().readURL("http://localhost/" + i, Foo.class));
+        }
+        for (int i = 0; i < count; ++i) {
+            assertEquals(Integer.toString(i), futures.get(i).get().getValue());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testFilesAreReadAndWritten() throws Exception {
+        final File file = File.createTempFile("xmlbeam", ".xml");
+        file.deleteOnExit();
+        final XBProjector projector = new XBProjector();
+        final Foo foo = projector.projectXMLString("<foo value=\"async\"/>", Foo.class);
+        assertSame(file, projector.io().async().writeFile(file, foo).get());
+        assertEquals("async", projector.io().async().readFile(file, Foo.class).get().getValue());
+        assertEquals("stream", projector.io().async().readStream(new ByteArrayInputStream("<foo value=\"stream\"/>".getBytes("UTF-8")), Foo.class).get().getValue());
+    }
+
+    @Test(timeout = 30000)
+    public void testFailuresAreReportedByTheFuture() throws Exception {
+        final Future<Foo> future = new XBProjector().io().async().readFile(new File("does/not/exist.xml"), Foo.class);
+        try {
+            future.get();
+            fail("Reading a missing file must fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testExecutorIsConfigurable() throws Exception {
+        final AtomicInteger executions = new AtomicInteger();
+        final XBProjector projector = new XBProjector();
+        projector.config().setAsyncExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                executions.incrementAndGet();
+                command.run();
+            }
+        });
+        assertEquals("direct", projector.io().async().readStream(new ByteArrayInputStream("<foo value=\"direct\"/>".getBytes("UTF-8")), Foo.class).get().getValue());
+        assertEquals(1, executions.get());
+        projector.config().setAsyncExecutor(null);
+        assertSame(XBAsyncIO.getDefaultExecutor(), projector.config().getAsyncExecutor());
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBDocURL;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.testutils.HTTPParrot;
+
+/**
+ * Tests for the cache of documents loaded from URLs.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestDocumentCache {
+
+    public interface Foo extends DOMAccess {
+        @XBRead("/foo/@value")
+        String getValue();
+    }
+
+    public interface Dashboard {
+        @XBDocURL("{0}")
+        @XBRead("/foo")
+        Foo getFoo(String url);
+
+        @XBDocURL("{0}")
+        @XBRead("/foo/@value")
+        String getValue(String url);
+    }
+
+    private static File writeFile(final File file, final String content) throws IOException {
+        final FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("utf-8"));
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testDocumentsAreNotCachedByDefault() throws IOException {
+        final File file = writeFile(File.createTempFile("xmlbeam", ".xml"), "<foo value=\"1\"/>");
+        file.deleteOnExit();
+        final Dashboard dashboard = new XBProjector().projectEmptyDocument(Dashboard.class);
+        final String url = file.toURI().toString();
+        assertNotSame(dashboard.getFoo(url).getDOMOwnerDocument(), dashboard.getFoo(url).getDOMOwnerDocument());
+    }
+
+    @Test
+    public void testChangedFilesAreReloaded() throws IOException {
+        final File file = writeFile(File.createTempFile("xmlbeam", ".xml"), "<foo value=\"1\"/>");
+        file.deleteOnExit();
+        final XBProjector projector = new XBProjector();
+        projector.config().getDocumentCache().setMaxSize(10).setTimeToLive(0);
+        final Dashboard dashboard = projector.projectEmptyDocument(Dashboard.class);
+        final String url = file.toURI().toString();
+        final Document document = dashboard.getFoo(url).getDOMOwnerDocument();
+        assertSame(document, dashboard.getFoo(url).getDOMOwnerDocument());
+        assertEquals("1", dashboard.getValue(url));
+
+        writeFile(file, "<foo value=\"2\"/>");
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        assertEquals("2", dashboard.getValue(url));
+        assertEquals(1, projector.config().getDocumentCache().size());
+    }
+
+    @Test
+    public void testCacheSizeIsBounded() throws IOException {
+        final XBProjector projector = new XBProjector();
+        projector.config().getDocumentCache().setMaxSize(2);
+        final Dashboard dashboard = projector.projectEmptyDocument(Dashboard.class);
+        for (int i = 0; i < 3; ++i) {
+            final File file = writeFile(File.createTempFile("xmlbeam", ".xml"), "<foo value=\"" + i + "\"/>");
+            file.deleteOnExit();
+            assertEquals(Integer.toString(i), dashboard.getValue(file.toURI().toString()));
+        }
+        assertEquals(2, projector.config().getDocumentCache().size());
+        projector.config().getDocumentCache().setMaxSize(1);
+        assertEquals(1, projector.config().getDocumentCache().size());
+        projector.config().getDocumentCache().clear();
+        assertEquals(0, projector.config().getDocumentCache().size());
+    }
+
+    @Test(timeout = 10000)
+    public void testHTTPDocumentsAreRevalidated() throws Exception {
+        final String content = "<foo value=\"http\"/>";
+        final HTTPParrot parrot = HTTPParrot.serveResponses(//
+                "HTTP/1.1 200 OK\r\nConnection: Close\r\nETag: \"v1\"\r\nContent-Type: application/xml\r\nContent-Length: " + content.length() + "\r\n\r\n" + content, //
+                "HTTP/1.1 304 Not Modified\r\nConnection: Close\r\nETag: \"v1\"\r\n\r\n");
+        final XBProjector projector = new XBProjector();
+        projector.config().getDocumentCache().setMaxSize(10).setTimeToLive(0);
+        final Dashboard dashboard = projector.projectEmptyDocument(Dashboard.class);
+        final String url = parrot.getURL().toString();
+        final Foo foo = dashboard.getFoo(url);
+        assertEquals("http", foo.getValue());
+        assertSame(foo.getDOMOwnerDocument(), dashboard.getFoo(url).getDOMOwnerDocument());
+        final List<String> requests = parrot.getRequests();
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1), requests.get(1).contains("If-None-Match: \"v1\""));
+    }
+
+    @Test(timeout = 10000)
+    public void testURLReadsReturnCopies() throws Exception {
+        final HTTPParrot parrot = HTTPParrot.serve("<foo value=\"http\"/>");
+        final XBProjector projector = new XBProjector();
+        projector.config().getDocumentCache().setMaxSize(10);
+        final String url = parrot.getURL().toString();
+        final Foo first = projector.io().url(url).read(Foo.class);
+        final Foo second = projector.io().url(url).read(Foo.class);
+        assertNotSame(first.getDOMOwnerDocument(), second.getDOMOwnerDocument());
+        assertEquals("http", second.getValue());
+        assertEquals(url, second.getDOMOwnerDocument().getBaseURI());
+        assertEquals(1, parrot.getRequests().size());
+    }
+
+    @Test
+    public void testCompactDocumentsAreShared() throws IOException {
+        final File file = writeFile(File.createTempFile("xmlbeam", ".xml"), "<foo value=\"compact\"/>");
+        file.deleteOnExit();
+        final XBProjector projector = new XBProjector(new DefaultXMLFactoriesConfig().setCompactReadOnlyDocuments(true));
+        projector.config().getDocumentCache().setMaxSize(10);
+        final String url = file.toURI().toString();
+        final Foo first = projector.io().url(url).read(Foo.class);
+        assertEquals("compact", first.getValue());
+        assertSame(first.getDOMOwnerDocument(), projector.io().url(url).read(Foo.class).getDOMOwnerDocument());
+    }
+}
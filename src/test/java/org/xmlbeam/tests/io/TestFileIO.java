@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+
+/**
+ * Tests for the read and write options of the file IO.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestFileIO {
+
+    public interface Foo {
+        @XBRead("/foo/@value")
+        String getValue();
+
+        @XBRead("count(/foo/bar)")
+        int getBarCount();
+    }
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("xmlbeam", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        file = new File(directory, "foo.xml");
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File child : directory.listFiles()) {
+            child.delete();
+        }
+        directory.delete();
+    }
+
+    private static String document(final String value, final int bars) {
+        final StringBuilder xml = new StringBuilder("<foo value=\"" + value + "\">");
+        for (int i = 0; i < bars; ++i) {
+            xml.append("<bar>").append(i).append("</bar>");
+        }
+        return xml.append("</foo>").toString();
+    }
+
+    @Test
+    public void testMemoryMappedRead() throws IOException {
+        final XBProjector projector = new XBProjector();
+        projector.io().file(file).write(projector.projectXMLString(document("mapped", 20000), Foo.class));
+        final Foo foo = projector.io().file(file).setMemoryMapped(true).read(Foo.class);
+        assertEquals("mapped", foo.getValue());
+        assertEquals(20000, foo.getBarCount());
+    }
+
+    @Test
+    public void testWritesDoNotLeakFiles() throws IOException {
+        final XBProjector projector = new XBProjector();
+        final Foo foo = projector.projectXMLString(document("many", 1), Foo.class);
+        // Leaking a descriptor per write would exhaust the default limits.
+        for (int i = 0; i < 5000; ++i) {
+            projector.io().file(file).write(foo);
+        }
+        assertEquals("many", projector.io().file(file).read(Foo.class).getValue());
+    }
+
+    @Test
+    public void testAtomicReplace() throws IOException {
+        final XBProjector projector = new XBProjector();
+        projector.io().file(file).write(projector.projectXMLString(document("old", 1), Foo.class));
+        projector.io().file(file).setAtomicReplace(true).setSync(true).write(projector.projectXMLString(document("new", 2), Foo.class));
+        assertEquals("new", projector.io().file(file).read(Foo.class).getValue());
+        assertEquals(1, directory.listFiles().length);
+        try {
+            projector.io().file(file).setAtomicReplace(true).setAppend(true).write(projector.projectXMLString(document("x", 0), Foo.class));
+            fail("Append must not be combined with atomic replace.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.io.XBFilesIterator;
+
+/**
+ * Tests for reading many files in parallel.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestFilesIO {
+
+    public interface Item {
+        @XBRead("/item/@id")
+        int getId();
+    }
+
+    private File directory;
+
+    @Before
+    public void createFiles() throws IOException {
+        directory = File.createTempFile("xmlbeam", "");
+        assertTrue(directory.delete());
+        for (int i = 0; i < 60; ++i) {
+            final String subDirectory = i < 20 ? "" : (i < 40 ? "a/" : "b/c/");
+            write(subDirectory + String.format("item%03d.xml", i), "<item id=\"" + i + "\"/>");
+        }
+        write("notes.txt", "<item id=\"-1\"/>");
+    }
+
+    @After
+    public void deleteFiles() {
+        delete(directory);
+    }
+
+    private void write(final String path, final String content) throws IOException {
+        final File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        final FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static List<Integer> ids(final List<Item> items) {
+        final List<Integer> ids = new ArrayList<Integer>();
+        for (Item item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    private static List<Integer> range(final int from, final int to) {
+        final List<Integer> range = new ArrayList<Integer>();
+        for (int i = from; i < to; ++i) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    @Test
+    public void testGlobPatterns() {
+        final XBProjector projector = new XBProjector();
+        assertEquals(20, projector.io().files(directory, "*.xml").listFiles().size());
+        assertEquals(60, projector.io().files(directory, "**/*.xml").listFiles().size());
+        assertEquals(40, projector.io().files(directory, "{a,b}/**/*.xml").listFiles().size());
+        assertEquals(10, projector.io().files(directory, "a/item02?.xml").listFiles().size());
+        assertEquals(1, projector.io().files(directory, "*.txt").listFiles().size());
+    }
+
+    @Test
+    public void testOrderedRead() throws IOException {
+        final List<Item> items = new XBProjector().io().files(directory, "**/*.xml").setParallelism(4).setMaxInFlight(3).read(Item.class);
+        assertEquals(range(0, 20), ids(items).subList(40, 60));
+        assertEquals(range(20, 40), ids(items).subList(0, 20));
+        assertEquals(range(40, 60), ids(items).subList(20, 40));
+    }
+
+    @Test
+    public void testUnorderedRead() throws IOException {
+        final List<Integer> ids = ids(new XBProjector().io().files(directory, "**/*.xml").setOrdered(false).read(Item.class));
+        Collections.sort(ids);
+        assertEquals(range(0, 60), ids);
+    }
+
+    @Test
+    public void testErrorsAreCollectedPerFile() throws IOException {
+        write("a/broken.xml", "<item id=\"");
+        final XBFilesIterator<Item> iterator = new XBProjector().io().files(directory, "**/*.xml").readEach(Item.class);
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            ++count;
+        }
+        assertEquals(60, count);
+        assertEquals(1, iterator.getErrors().size());
+        assertEquals("broken.xml", iterator.getErrors().keySet().iterator().next().getName());
+        write("b/also_broken.xml", "<item");
+        try {
+            new XBProjector().io().files(directory, "**/*.xml").read(Item.class);
+            fail("Broken files must fail the bulk read.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("broken.xml"));
+            assertTrue(e.getMessage(), e.getMessage().contains("also_broken.xml"));
+        }
+    }
+
+    @Test
+    public void testClosedIterationEnds() {
+        final XBFilesIterator<Item> iterator = new XBProjector().io().files(directory, "**/*.xml").setMaxInFlight(2).readEach(Item.class);
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        iterator.close();
+        assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBDocURL;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.io.XBDefaultHttpTransport;
+import org.xmlbeam.io.XBHttpResponse;
+import org.xmlbeam.io.XBHttpTransport;
+import org.xmlbeam.testutils.HTTPParrot;
+
+/**
+ * Tests for the HTTP transport used by projectors.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestHttpTransport {
+
+    public interface Foo {
+        @XBRead("/foo/@value")
+        String getValue();
+    }
+
+    public interface Remote {
+        @XBDocURL("{0}")
+        @XBRead("/foo/@value")
+        String getValue(String url);
+    }
+
+    private static String response(final String content) {
+        return "HTTP/1.1 200 OK\r\nContent-Type: application/xml\r\nContent-Length: " + content.length() + "\r\n\r\n" + content;
+    }
+
+    @Test(timeout = 20000)
+    public void testConnectionsAreReused() throws Exception {
+        final HTTPParrot parrot = HTTPParrot.serveResponses(response("<foo value=\"1\"/>"), response("<foo value=\"2\"/>"), response("<foo value=\"3\"/>"));
+        final XBProjector projector = new XBProjector();
+        final String url = parrot.getURL().toString();
+        assertEquals("1", projector.io().url(url).read(Foo.class).getValue());
+        assertEquals("2", projector.projectEmptyDocument(Remote.class).getValue(url));
+        assertEquals("3", projector.io().url(url).read(Foo.class).getValue());
+        assertEquals(1, parrot.getConnectionCount());
+    }
+
+    @Test(timeout = 20000)
+    public void testResponsesAreDecompressed() throws Exception {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final GZIPOutputStream gzipStream = new GZIPOutputStream(compressed);
+        gzipStream.write("<foo value=\"compressed\"/>".getBytes("UTF-8"));
+        gzipStream.close();
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        response.write(("HTTP/1.1 200 OK\r\nConnection: Close\r\nContent-Encoding: gzip\r\nContent-Type: application/xml\r\nContent-Length: " + compressed.size() + "\r\n\r\n").getBytes("ISO-8859-1"));
+        compressed.writeTo(response);
+        final HTTPParrot parrot = HTTPParrot.serveResponses(response.toByteArray());
+        assertEquals("compressed", new XBProjector().io().url(parrot.getURL().toString()).read(Foo.class).getValue());
+        assertTrue(parrot.getRequest().contains("Accept-Encoding: gzip"));
+    }
+
+    @Test(timeout = 20000)
+    public void testProjectionsAreStreamedIntoPostRequests() throws Exception {
+        final HTTPParrot parrot = HTTPParrot.serveResponses("HTTP/1.1 200 OK\r\nConnection: Close\r\nContent-Length: 2\r\n\r\nok");
+        final XBProjector projector = new XBProjector(new DefaultXMLFactoriesConfig().setPrettyPrinting(false).setOmitXMLDeclaration(true));
+        final Foo foo = projector.projectXMLString("<foo value=\"posted\"/>", Foo.class);
+        assertEquals("ok", projector.io().url(parrot.getURL().toString()).write(foo));
+        final String request = parrot.getRequest();
+        assertTrue(request, request.startsWith("POST "));
+        assertTrue(request, request.contains("Transfer-Encoding: chunked"));
+        assertTrue(request, request.endsWith("\r\n\r\n<foo value=\"posted\"/>"));
+    }
+
+    @Test(timeout = 20000)
+    public void testErrorStatusFails() throws Exception {
+        final HTTPParrot parrot = HTTPParrot.serveResponses("HTTP/1.1 404 Not Found\r\nConnection: Close\r\nContent-Length: 9\r\n\r\nnot found");
+        try {
+            new XBProjector().io().url(parrot.getURL().toString()).read(Foo.class);
+            fail("Error status must fail.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("404"));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testTransportIsPluggable() throws Exception {
+        final HTTPParrot parrot = HTTPParrot.serve("<foo value=\"plugged\"/>");
+        final List<String> urls = new ArrayList<String>();
+        final XBProjector projector = new XBProjector();
+        projector.config().setHttpTransport(new XBHttpTransport() {
+            private final XBHttpTransport delegate = new XBDefaultHttpTransport();
+
+            @Override
+            public XBHttpResponse get(final String url, final Map<String, String> requestProperties) throws IOException {
+                urls.add(url);
+                return delegate.get(url, requestProperties);
+            }
+
+            @Override
+            public XBHttpResponse post(final String url, final RequestBody body, final Map<String, String> requestProperties) throws IOException {
+                throw new UnsupportedOperationException();
+            }
+        });
+        final String url = parrot.getURL().toString();
+        assertEquals("plugged", projector.projectEmptyDocument(Remote.class).getValue(url));
+        assertEquals(1, urls.size());
+        assertEquals(url, urls.get(0));
+    }
+}
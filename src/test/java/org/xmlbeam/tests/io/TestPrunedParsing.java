@@ -0,0 +1,204 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXParseException;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.annotation.XBWrite;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.dom.DOMAccess;
+
+/**
+ * Tests for parsing only the parts of a document a projection reads.
+ */
+public class TestPrunedParsing {
+
+    public interface Item {
+        @XBRead("title")
+        String getTitle();
+
+        @XBRead("@id")
+        int getId();
+
+        @XBRead("p:link")
+        String getLink();
+
+        @XBRead("/rss/channel/title")
+        String getChannelTitle();
+    }
+
+    public interface Feed extends DOMAccess {
+        @XBRead("/rss/@version")
+        String getVersion();
+
+        @XBRead("/rss/channel/title")
+        String getTitle();
+
+        @XBRead("/rss/channel/item")
+        List<Item> getItems();
+
+        @XBRead("/rss/channel/item[@id=''2'']/title")
+        String getSecondTitle();
+
+        @XBRead("count(/rss/channel/item)")
+        int getItemCount();
+
+        @XBRead("//title")
+        String getAnyTitle();
+
+        @XBRead("/rss/channel/item[{0}]/title")
+        String getTitle(int index);
+
+        @XBRead("/rss/channel/item[following-sibling::footer]/title")
+        String getTitleBeforeFooter();
+
+        @XBRead("/rss/channel/item[id(''a'')]/title")
+        String getTitleById();
+
+        @XBRead("/rss/channel/item[text()]/title")
+        String getTitleOfItemWithText();
+
+        @XBWrite("/rss/channel/title")
+        Feed setTitle(String title);
+    }
+
+    private static final String XML = "<rss version=\"2.0\" xmlns:p=\"http://xmlbeam.org/p\"><head><title>skipped</title><big>lots of data</big></head><channel><title>channel</title><description>skipped too</description><item id=\"1\"><title>one</title><p:link>l1</p:link><!--c--></item><item id=\"2\"><title><![CDATA[t<wo>]]></title></item></channel><footer/></rss>";
+
+    private Feed readPruned() throws IOException {
+        return new XBProjector().io().stream(new ByteArrayInputStream(XML.getBytes("utf-8"))).readPruned(Feed.class);
+    }
+
+    @Test
+    public void testCoveredMethods() throws IOException {
+        final Feed feed = readPruned();
+        final Feed complete = new XBProjector().projectXMLString(XML, Feed.class);
+        assertEquals(complete.getVersion(), feed.getVersion());
+        assertEquals(complete.getTitle(), feed.getTitle());
+        assertEquals(complete.getSecondTitle(), feed.getSecondTitle());
+        assertEquals(2, feed.getItems().size());
+        for (int i = 0; i < 2; ++i) {
+            final Item item = feed.getItems().get(i);
+            final Item expected = complete.getItems().get(i);
+            assertEquals(expected.getId(), item.getId());
+            assertEquals(expected.getTitle(), item.getTitle());
+            assertEquals(expected.getLink(), item.getLink());
+            assertEquals("channel", item.getChannelTitle());
+        }
+        assertEquals("t<wo>", feed.getSecondTitle());
+    }
+
+    @Test
+    public void testDocumentIsPruned() throws IOException {
+        final Feed feed = readPruned();
+        assertEquals(0, feed.getDOMOwnerDocument().getElementsByTagName("head").getLength());
+        assertEquals(0, feed.getDOMOwnerDocument().getElementsByTagName("description").getLength());
+        assertEquals(0, feed.getDOMOwnerDocument().getElementsByTagName("footer").getLength());
+        assertEquals(3, feed.getDOMOwnerDocument().getElementsByTagName("title").getLength());
+    }
+
+    @Test
+    public void testUncoveredMethodsFailFast() throws IOException {
+        final Feed feed = readPruned();
+        try {
+            feed.getItemCount();
+            fail("Function paths are not covered.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            feed.getAnyTitle();
+            fail("Descendant paths are not covered.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            feed.getTitle(1);
+            fail("Paths with placeholders are not covered.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            feed.getTitleBeforeFooter();
+            fail("Predicates with axes are not covered.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            feed.getTitleById();
+            fail("Predicates with functions are not covered.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals("", feed.getTitleOfItemWithText());
+        try {
+            feed.setTitle("x");
+            fail("Partial documents are read only.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals("channel", feed.getTitle());
+    }
+
+    @Test
+    public void testFactorySettingsAreApplied() throws IOException {
+        @SuppressWarnings("serial")
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig() {
+            @Override
+            public DocumentBuilderFactory createDocumentBuilderFactory() {
+                final DocumentBuilderFactory factory = super.createDocumentBuilderFactory();
+                try {
+                    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                } catch (ParserConfigurationException e) {
+                    throw new RuntimeException(e);
+                }
+                return factory;
+            }
+        };
+        final String xml = "<!DOCTYPE rss [<!ENTITY e 'x'>]><rss><channel><title>&e;</title></channel></rss>";
+        try {
+            new XBProjector(config).io().stream(new ByteArrayInputStream(xml.getBytes("utf-8"))).readPruned(Feed.class);
+            fail("Document type declarations are disallowed.");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof SAXParseException);
+        }
+    }
+
+    @Test
+    public void testUnconfiguredFactory() throws IOException {
+        @SuppressWarnings("serial")
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig() {
+            @Override
+            public DocumentBuilderFactory createDocumentBuilderFactory() {
+                return DocumentBuilderFactory.newInstance();
+            }
+        };
+        final String xml = "<rss><channel><title>channel</title></channel></rss>";
+        assertEquals("channel", new XBProjector(config).io().stream(new ByteArrayInputStream(xml.getBytes("utf-8"))).readPruned(Feed.class).getTitle());
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig.NamespacePhilosophy;
+import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.io.XBRecordIterator;
+
+/**
+ * Tests for reading records of a document one by one.
+ */
+public class TestRecordIterator {
+
+    public interface Item extends DOMAccess {
+        @XBRead("title")
+        String getTitle();
+
+        @XBRead("@id")
+        int getId();
+
+        @XBRead("/item/p:link")
+        String getLink();
+    }
+
+    private static final String XML = "<rss xmlns:p=\"http://xmlbeam.org/p\"><channel><title>channel</title><item id=\"1\"><title>one</title><p:link>l1</p:link></item><other><item id=\"9\"><title>nested</title></item></other><item id=\"2\"><title>two</title><item id=\"3\"><title>inner</title></item></item></channel><item id=\"4\"/></rss>";
+
+    private XBRecordIterator<Item> readEach(final String xml, final String path) throws IOException {
+        return new XBProjector().io().stream(new ByteArrayInputStream(xml.getBytes("utf-8"))).readEach(path, Item.class);
+    }
+
+    @Test
+    public void testReadEach() throws IOException {
+        final XBRecordIterator<Item> items = readEach(XML, "/rss/channel/item");
+        assertTrue(items.hasNext());
+        final Item first = items.next();
+        assertEquals("one", first.getTitle());
+        assertEquals(1, first.getId());
+        assertEquals("l1", first.getLink());
+        assertTrue(items.hasNext());
+        final Item second = items.next();
+        assertEquals("two", second.getTitle());
+        assertEquals(2, second.getId());
+        assertNotSame(first.getDOMOwnerDocument(), second.getDOMOwnerDocument());
+        assertFalse(items.hasNext());
+    }
+
+    @Test
+    public void testNamespacesAreDeclaredInRecords() throws IOException {
+        final Item item = readEach(XML, "/rss/channel/item").next();
+        assertEquals("http://xmlbeam.org/p", item.getDOMOwnerDocument().getDocumentElement().getAttribute("xmlns:p"));
+        final XBProjector projector = new XBProjector(new DefaultXMLFactoriesConfig().setNamespacePhilosophy(NamespacePhilosophy.NIHILISTIC));
+        final Item unawareItem = projector.io().stream(new ByteArrayInputStream(XML.getBytes("utf-8"))).readEach("/rss/channel/item", Item.class).next();
+        assertEquals("http://xmlbeam.org/p", unawareItem.getDOMOwnerDocument().getDocumentElement().getAttribute("xmlns:p"));
+    }
+
+    @Test
+    public void testFactorySettingsAreApplied() throws IOException {
+        @SuppressWarnings("serial")
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig() {
+            @Override
+            public DocumentBuilderFactory createDocumentBuilderFactory() {
+                final DocumentBuilderFactory factory = super.createDocumentBuilderFactory();
+                try {
+                    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                } catch (ParserConfigurationException e) {
+                    throw new RuntimeException(e);
+                }
+                return factory;
+            }
+        };
+        final String xml = "<!DOCTYPE rss [<!ENTITY e SYSTEM 'file:///etc/hostname'>]><rss><item id=\"1\"><title>&e;</title></item></rss>";
+        try {
+            new XBProjector(config).io().stream(new ByteArrayInputStream(xml.getBytes("utf-8"))).readEach("/rss/item", Item.class).next();
+            fail("Document type declarations are disallowed.");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNoMatches() throws IOException {
+        assertFalse(readEach(XML, "/channel/item").hasNext());
+        assertFalse(readEach(XML, "/rss/channel/item/foo").hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalPath() throws IOException {
+        readEach(XML, "//item");
+    }
+
+    @Test
+    public void testReadEachFromFile() throws IOException {
+        final File file = File.createTempFile(getClass().getSimpleName(), ".xml");
+        file.deleteOnExit();
+        final int count = 100000;
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "utf-8"));
+        try {
+            writer.write("<rss><channel>");
+            for (int i = 0; i < count; ++i) {
+                writer.write("<item id=\"" + i + "\"><title>Title " + i + "</title></item>");
+            }
+            writer.write("</channel></rss>");
+        } finally {
+            writer.close();
+        }
+        final XBRecordIterator<Item> items = new XBProjector().io().file(file).readEach("/rss/channel/item", Item.class);
+        int i = 0;
+        while (items.hasNext()) {
+            final Item item = items.next();
+            assertEquals(i, item.getId());
+            assertEquals("Title " + i, item.getTitle());
+            ++i;
+        }
+        assertEquals(count, i);
+
+        final XBRecordIterator<Item> closedEarly = new XBProjector().io().file(file).readEach("/rss/channel/item", Item.class);
+        assertEquals(0, closedEarly.next().getId());
+        closedEarly.close();
+        assertFalse(closedEarly.hasNext());
+        assertTrue(file.delete());
+    }
+}
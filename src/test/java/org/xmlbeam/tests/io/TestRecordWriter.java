@@ -0,0 +1,163 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.annotation.XBWrite;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.io.XBRecordIterator;
+import org.xmlbeam.io.XBRecordWriter;
+
+/**
+ * Tests for writing documents record by record.
+ */
+public class TestRecordWriter {
+
+    public interface Item extends DOMAccess {
+        @XBRead("@id")
+        int getId();
+
+        @XBWrite("./@id")
+        Item setId(int id);
+
+        @XBRead("title")
+        String getTitle();
+
+        @XBWrite("./title")
+        Item setTitle(String title);
+    }
+
+    public interface Feed extends DOMAccess {
+        @XBWrite("/rss/channel/title")
+        Feed setTitle(String title);
+
+        @XBWrite("/rss/footer")
+        Feed setFooter(String footer);
+
+        @XBRead("count(/rss/channel/item)")
+        int getItemCount();
+
+        @XBRead("/rss/footer")
+        String getFooter();
+    }
+
+    private static Item createItem(final XBProjector projector, final int id) {
+        return projector.projectEmptyElement("item", Item.class).setId(id).setTitle("Title <" + id + "> & more");
+    }
+
+    @Test
+    public void testWriteEachWithPath() throws IOException {
+        final XBProjector projector = new XBProjector(new DefaultXMLFactoriesConfig().setPrettyPrinting(false));
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final XBRecordWriter writer = projector.io().stream(os).writeEach("/rss/channel");
+        writer.append(createItem(projector, 1)).append(createItem(projector, 2));
+        writer.close();
+        assertEquals("<rss><channel><item id=\"1\"><title>Title &lt;1&gt; &amp; more</title></item><item id=\"2\"><title>Title &lt;2&gt; &amp; more</title></item></channel></rss>", os.toString("UTF-8"));
+    }
+
+    @Test
+    public void testSkeletonContentIsKept() throws IOException {
+        final XBProjector projector = new XBProjector();
+        final Feed skeleton = projector.projectEmptyDocument(Feed.class).setTitle("channel").setFooter("end");
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final XBRecordWriter writer = projector.io().stream(os).writeEach(skeleton, "/rss/channel");
+        for (int i = 0; i < 3; ++i) {
+            writer.append(createItem(projector, i));
+        }
+        writer.close();
+        final String xml = os.toString("UTF-8");
+        assertTrue(xml, xml.contains("\n    <item id=\"0\">\n      <title>"));
+        final Feed feed = projector.projectXMLString(xml, Feed.class);
+        assertEquals(3, feed.getItemCount());
+        assertEquals("end", feed.getFooter());
+        assertTrue(feed.toString(), xml.indexOf("<title>channel</title>") < xml.indexOf("<item"));
+    }
+
+    @Test
+    public void testNamespacesAreDeclared() throws IOException {
+        final XBProjector projector = new XBProjector(new DefaultXMLFactoriesConfig().setPrettyPrinting(false));
+        final Item item = createItem(projector, 1);
+        item.getDOMNode().appendChild(item.getDOMOwnerDocument().createElementNS("http://xmlbeam.org/p", "p:link"));
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        projector.io().stream(os).writeEach("/rss").append(item).close();
+        assertEquals("<rss><item id=\"1\"><title>Title &lt;1&gt; &amp; more</title><p:link xmlns:p=\"http://xmlbeam.org/p\"/></item></rss>", os.toString("UTF-8"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingContainer() throws IOException {
+        final XBProjector projector = new XBProjector();
+        projector.io().stream(new ByteArrayOutputStream()).writeEach(projector.projectEmptyDocument(Feed.class).setTitle("x"), "/rss/foo");
+    }
+
+    /**
+     * Compare writing a large file record by record to building the whole document and writing
+     * it with the transformer.
+     */
+    @Test
+    public void benchmarkWriteEachAgainstTransformer() throws IOException {
+        final int count = 100000;
+        final XBProjector projector = new XBProjector(new DefaultXMLFactoriesConfig().setPrettyPrinting(false));
+        final File file = File.createTempFile(getClass().getSimpleName(), ".xml");
+        file.deleteOnExit();
+
+        // Warm up, record creation is part of both measurements.
+        for (int i = 0; i < count; ++i) {
+            createItem(projector, i);
+        }
+        long start = System.nanoTime();
+        final XBRecordWriter writer = projector.io().file(file).writeEach("/rss/channel");
+        for (int i = 0; i < count; ++i) {
+            writer.append(createItem(projector, i));
+        }
+        writer.close();
+        final long streaming = System.nanoTime() - start;
+
+        final XBRecordIterator<Item> items = projector.io().file(file).readEach("/rss/channel/item", Item.class);
+        int i = 0;
+        while (items.hasNext()) {
+            final Item item = items.next();
+            assertEquals(i, item.getId());
+            assertEquals("Title <" + i + "> & more", item.getTitle());
+            ++i;
+        }
+        assertEquals(count, i);
+        assertFalse(items.hasNext());
+
+        start = System.nanoTime();
+        final Feed feed = projector.projectEmptyDocument(Feed.class);
+        final org.w3c.dom.Node channel = feed.getDOMOwnerDocument().appendChild(feed.getDOMOwnerDocument().createElement("rss")).appendChild(feed.getDOMOwnerDocument().createElement("channel"));
+        for (int j = 0; j < count; ++j) {
+            channel.appendChild(feed.getDOMOwnerDocument().importNode(createItem(projector, j).getDOMNode(), true));
+        }
+        projector.io().file(file).write(feed);
+        final long transformer = System.nanoTime() - start;
+        assertEquals(count, projector.io().file(file).read(Feed.class).getItemCount());
+        assertTrue(file.delete());
+
+        System.out.println("Wrote " + count + " records streaming in " + (streaming / 1000000) + "ms, via DOM and transformer in " + (transformer / 1000000) + "ms.");
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.namespaces;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.dom.DOMAccess;
+
+/**
+ * Ensure that the namespace mapping of a document is reused until the root element changes.
+ */
+public class TestNamespaceContextPerDocument {
+
+    public interface Projection extends DOMAccess {
+        @XBRead("/root/p:value")
+        String getValue();
+    }
+
+    private final static String DOC = "<root xmlns:p=\"http://xmlbeam.org/a\" xmlns:q=\"http://xmlbeam.org/b\"><p:value>A</p:value><value xmlns=\"http://xmlbeam.org/b\">B</value></root>";
+
+    @Test
+    public void testContextIsReused() {
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+        final Document document = new XBProjector(config).projectXMLString(DOC, Projection.class).getDOMOwnerDocument();
+        final NamespaceContext context = config.createXPath(document).getNamespaceContext();
+        assertSame(context, config.createXPath(document).getNamespaceContext());
+        assertEquals("http://xmlbeam.org/a", context.getNamespaceURI("p"));
+        assertEquals("q", context.getPrefix("http://xmlbeam.org/b"));
+    }
+
+    @Test
+    public void testChangedNamespaceDeclarations() {
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+        final Projection projection = new XBProjector(config).projectXMLString(DOC, Projection.class);
+        final Document document = projection.getDOMOwnerDocument();
+        assertEquals("A", projection.getValue());
+        final NamespaceContext context = config.createXPath(document).getNamespaceContext();
+
+        document.getDocumentElement().setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:p", "http://xmlbeam.org/b");
+        assertNotSame(context, config.createXPath(document).getNamespaceContext());
+        assertEquals("B", projection.getValue());
+
+        document.getDocumentElement().removeAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "q");
+        assertEquals("B", projection.getValue());
+        assertEquals(null, config.createXPath(document).getNamespaceContext().getPrefix("http://xmlbeam.org/a"));
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.namespaces;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+
+/**
+ * Ensure that cached XPath expressions are not shared between documents with different namespace
+ * mappings.
+ */
+public class TestXPathCacheWithNamespaces {
+
+    public interface Projection {
+        @XBRead("/root/p:value")
+        String getValue();
+    }
+
+    private final static String DOC_A = "<root xmlns:p=\"http://xmlbeam.org/a\"><p:value>A</p:value></root>";
+    private final static String DOC_B = "<root xmlns:p=\"http://xmlbeam.org/b\"><value xmlns=\"http://xmlbeam.org/a\">nope</value><p:value>B</p:value></root>";
+
+    @Test
+    public void testSameExpressionDifferentMappings() {
+        XBProjector projector = new XBProjector();
+        for (int i = 0; i < 3; ++i) {
+            assertEquals("A", projector.projectXMLString(DOC_A, Projection.class).getValue());
+            assertEquals("B", projector.projectXMLString(DOC_B, Projection.class).getValue());
+        }
+    }
+
+    @Test
+    public void testDisabledCache() {
+        XBProjector projector = new XBProjector();
+        projector.config().setXPathCacheSize(0);
+        assertEquals(0, projector.config().getXPathCacheSize());
+        assertEquals("A", projector.projectXMLString(DOC_A, Projection.class).getValue());
+        assertEquals("B", projector.projectXMLString(DOC_B, Projection.class).getValue());
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.util.intern.CompactDocument;
+
+/**
+ * Benchmark for the heap used by compact read only documents compared to the default DOM. Heap
+ * measurements depend on the garbage collector, so the results are only printed.
+ */
+public class TestCompactDocumentMemory {
+
+    @Test
+    public void benchmarkMemoryPerNode() throws SAXException, IOException, InterruptedException {
+        final StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < 2000; ++i) {
+            xml.append("<entry id=\"").append(i).append("\"><title>Title ").append(i).append("</title><author>author").append(i % 10).append("</author><link href=\"http://xmlbeam.org/").append(i).append("\"/></entry>");
+        }
+        final byte[] bytes = xml.append("</feed>").toString().getBytes("utf-8");
+        final DocumentBuilder compactBuilder = new DefaultXMLFactoriesConfig().setCompactReadOnlyDocuments(true).createDocumentBuilder();
+        final DocumentBuilder defaultBuilder = new DefaultXMLFactoriesConfig().createDocumentBuilder();
+        final int documentCount = 20;
+        final double compactBytes = bytesPerDocument(compactBuilder, bytes, documentCount);
+        final double defaultBytes = bytesPerDocument(defaultBuilder, bytes, documentCount);
+        final int nodeCount = ((CompactDocument) compactBuilder.parse(new ByteArrayInputStream(bytes))).getNodeCount();
+        System.out.println("Bytes per node: compact " + (int) (compactBytes / nodeCount) + ", default " + (int) (defaultBytes / nodeCount));
+    }
+
+    private static double bytesPerDocument(final DocumentBuilder builder, final byte[] bytes, final int documentCount) throws SAXException, IOException, InterruptedException {
+        final List<Document> documents = new ArrayList<Document>(documentCount);
+        final long before = usedMemory();
+        for (int i = 0; i < documentCount; ++i) {
+            final Document document = builder.parse(new InputSource(new ByteArrayInputStream(bytes)));
+            // Deferred DOM implementations create their nodes on first access.
+            visit(document);
+            documents.add(document);
+        }
+        usedMemory();
+        // Cleared references are enqueued by a background thread.
+        Thread.sleep(200);
+        for (Document document : documents) {
+            // Compact documents drop the cache entries of collected nodes on the next access.
+            document.getFirstChild();
+        }
+        final long after = usedMemory();
+        // Keep the documents reachable until the measurement is done.
+        return documents.isEmpty() ? 0 : (after - before) / (double) documents.size();
+    }
+
+    private static void visit(final Node node) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getAttributes() != null) {
+                child.getAttributes().getLength();
+            }
+            visit(child);
+        }
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.performance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.XBProjector.Flags;
+import org.xmlbeam.annotation.XBRead;
+
+/**
+ * Benchmark for reading large lists of subprojections. Each element of the list is a new
+ * projection, so the cost of creating projections dominates.
+ */
+public class TestSubprojectionListPerformance {
+
+    public interface Entry {
+        @XBRead("@key")
+        String getKey();
+
+        @XBRead(".")
+        int getValue();
+    }
+
+    public interface Entries {
+        @XBRead("/entries/entry")
+        List<Entry> getEntries();
+    }
+
+    private static final int COUNT = 10000;
+    private static final int ROUNDS = 5;
+
+    private static String xml;
+
+    @BeforeClass
+    public static void createDocument() {
+        final StringBuilder builder = new StringBuilder("<entries>");
+        for (int i = 0; i < COUNT; ++i) {
+            builder.append("<entry key=\"k").append(i).append("\">").append(i).append("</entry>");
+        }
+        xml = builder.append("</entries>").toString();
+    }
+
+    @Test
+    public void benchmarkProxyProjections() {
+        benchmark(new XBProjector(), "proxy");
+    }
+
+    @Test
+    public void benchmarkGeneratedProjections() {
+        benchmark(new XBProjector(Flags.GENERATE_PROJECTION_CLASSES), "generated");
+    }
+
+    private void benchmark(final XBProjector projector, final String engine) {
+        final Entries entries = projector.projectXMLString(xml, Entries.class);
+        // Warm up
+        assertEquals(COUNT, entries.getEntries().size());
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; ++r) {
+            final long start = System.nanoTime();
+            final List<Entry> list = entries.getEntries();
+            best = Math.min(best, System.nanoTime() - start);
+            assertEquals(COUNT, list.size());
+            assertEquals("k" + (COUNT - 1), list.get(COUNT - 1).getKey());
+            assertEquals(COUNT - 1, list.get(COUNT - 1).getValue());
+        }
+        System.out.println("Projected list of " + COUNT + " subprojections (" + engine + ") in " + (best / 1000000) + "ms.");
+    }
+}
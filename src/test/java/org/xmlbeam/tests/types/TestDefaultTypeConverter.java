@@ -17,9 +17,15 @@ package org.xmlbeam.tests.types;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.math.BigDecimal;
 
 import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
 import org.xmlbeam.types.DefaultTypeConverter;
+import org.xmlbeam.types.DefaultTypeConverter.Conversion;
 import org.xmlbeam.types.TypeConverter;
 
 /**
@@ -70,4 +76,28 @@ public class TestDefaultTypeConverter {
     public void ensureShort() {
         assertEquals(Short.valueOf((byte) -1), converter.convertTo(Short.class, "-1"));
     }
+
+    public interface Amount {
+        @XBRead("/amount")
+        BigDecimal getAmount();
+    }
+
+    @Test
+    public void ensureConversionsAddedLaterAreUsed() {
+        final XBProjector projector = new XBProjector();
+        final Amount amount = projector.projectXMLString("<amount>1.5</amount>", Amount.class);
+        try {
+            amount.getAmount();
+            fail("BigDecimal is not convertable yet.");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        projector.config().getTypeConverterAs(DefaultTypeConverter.class).setConversionForType(BigDecimal.class, new Conversion<BigDecimal>(null) {
+            @Override
+            public BigDecimal convert(final String data) {
+                return new BigDecimal(data);
+            }
+        });
+        assertEquals(new BigDecimal("1.5"), amount.getAmount());
+    }
 }
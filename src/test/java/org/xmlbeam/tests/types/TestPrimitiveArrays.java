@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.types;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.types.DefaultTypeConverter;
+import org.xmlbeam.types.DefaultTypeConverter.Conversion;
+
+/**
+ * Tests for reading arrays of primitive types.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestPrimitiveArrays {
+
+    public interface Series {
+        @XBRead("/series/v")
+        int[] getInts();
+
+        @XBRead("/series/v")
+        long[] getLongs();
+
+        @XBRead("/series/v")
+        double[] getDoubles();
+
+        @XBRead("/series/v")
+        float[] getFloats();
+
+        @XBRead("/series/v")
+        short[] getShorts();
+
+        @XBRead("/series/v")
+        byte[] getBytes();
+
+        @XBRead("/series/v")
+        char[] getChars();
+
+        @XBRead("/series/v")
+        Integer[] getBoxedInts();
+
+        @XBRead("/series/v[position() > 1]")
+        int[] getTail();
+
+        @XBRead("/series/flag")
+        boolean[] getFlags();
+
+        @XBRead("/series/missing")
+        double[] getMissing();
+    }
+
+    private final Series series = new XBProjector().projectXMLString("<series><v>1</v><v></v><v>3</v><flag>true</flag><flag>no</flag></series>", Series.class);
+
+    @Test
+    public void testPrimitiveArrays() {
+        assertArrayEquals(new int[] { 1, 0, 3 }, series.getInts());
+        assertArrayEquals(new long[] { 1, 0, 3 }, series.getLongs());
+        assertArrayEquals(new double[] { 1, 0, 3 }, series.getDoubles(), 0);
+        assertArrayEquals(new float[] { 1, 0, 3 }, series.getFloats(), 0);
+        assertArrayEquals(new short[] { 1, 0, 3 }, series.getShorts());
+        assertArrayEquals(new byte[] { 1, 0, 3 }, series.getBytes());
+        assertArrayEquals(new char[] { '1', ' ', '3' }, series.getChars());
+        assertArrayEquals(new Integer[] { 1, 0, 3 }, series.getBoxedInts());
+        assertArrayEquals(new int[] { 0, 3 }, series.getTail());
+        assertTrue(Arrays.equals(new boolean[] { true, false }, series.getFlags()));
+        assertEquals(0, series.getMissing().length);
+    }
+
+    @Test
+    public void testCustomConversionIsUsed() {
+        final XBProjector projector = new XBProjector();
+        projector.config().getTypeConverterAs(DefaultTypeConverter.class).setConversionForType(Integer.TYPE, new Conversion<Integer>(-1) {
+            @Override
+            public Integer convert(final String data) {
+                return Integer.parseInt(data) * 10;
+            }
+        });
+        assertArrayEquals(new int[] { 10, -1, 30 }, projector.projectXMLString("<series><v>1</v><v></v><v>3</v></series>", Series.class).getInts());
+    }
+
+    @Test
+    public void testConverterSubclassIsUsed() {
+        final XBProjector projector = new XBProjector();
+        projector.config().setTypeConverter(new DefaultTypeConverter() {
+            @Override
+            public <T> T convertTo(final Class<T> targetType, final String data) {
+                return super.convertTo(targetType, data.isEmpty() ? "-1" : data);
+            }
+        });
+        assertArrayEquals(new int[] { 1, -1, 3 }, projector.projectXMLString("<series><v>1</v><v></v><v>3</v></series>", Series.class).getInts());
+    }
+}
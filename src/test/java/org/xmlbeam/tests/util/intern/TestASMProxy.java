@@ -15,6 +15,13 @@
  */
 package org.xmlbeam.tests.util.intern;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+
 import org.junit.Test;
 import org.xmlbeam.util.intern.ASMHelper;
 
@@ -67,4 +74,38 @@ public class TestASMProxy {
         System.out.println(proxyMe.invokeMePlz("n.mn", "", ""));
     }
 
+    @Test
+    public void ensureClassIsGeneratedOncePerInterface() {
+        ProxyMe a = ASMHelper.create(ProxyMe.class, new LengthSum());
+        ProxyMe b = ASMHelper.create(ProxyMe.class, new LengthSum());
+        assertSame(a.getClass(), b.getClass());
+        assertEquals(3, b.invokeMePlz("a", "b", "c"));
+    }
+
+    @Test
+    public void ensureConstantClassCountForManyInstances() {
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        for (int i = 0; i < 1000; ++i) {
+            ASMHelper.create(ProxyMe.class, new LengthSum());
+        }
+        long loadedBefore = classLoading.getTotalLoadedClassCount();
+        long start = System.nanoTime();
+        final int count = 100000;
+        for (int i = 0; i < count; ++i) {
+            ASMHelper.create(ProxyMe.class, new LengthSum());
+        }
+        long duration = System.nanoTime() - start;
+        long loadedAfter = classLoading.getTotalLoadedClassCount();
+        System.out.println("Created " + count + " default method invokers in " + (duration / 1000000) + "ms, " + (loadedAfter - loadedBefore) + " classes loaded.");
+        // Without caching there would be one new class per instance.
+        assertTrue(loadedAfter - loadedBefore < count / 1000);
+    }
+
+    private static class LengthSum implements ProxyMe {
+        @Override
+        public int invokeMePlz(final String a, final String b, final String c) {
+            return a.length() + b.length() + c.length();
+        }
+    }
+
 }
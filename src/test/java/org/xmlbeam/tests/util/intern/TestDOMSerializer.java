@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.util.intern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import javax.xml.transform.Transformer;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.dom.DOMAccess;
+import org.xmlbeam.util.intern.DOMSerializer;
+
+/**
+ * Tests that serializing DOM nodes directly gives the same result as the transformer.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestDOMSerializer {
+
+    public interface Doc {
+    }
+
+    private static final String XML = "<root xmlns:x=\"urn:x\" a=\"&quot;&lt;&amp;\u00e4\"><x:child>text &amp; &lt;more&gt; \u20ac</x:child><empty/><!--comment--><mixed>a<b>b</b>c</mixed><?pi data?></root>";
+
+    /**
+     * Uses the default transformer, but hides it from the serializer.
+     */
+    @SuppressWarnings("serial")
+    private static class TransformingConfig extends DefaultXMLFactoriesConfig {
+        @Override
+        public Transformer createTransformer(final Document... document) {
+            return super.createTransformer(document);
+        }
+    }
+
+    private static String serialize(final DefaultXMLFactoriesConfig config, final String xml) throws IOException {
+        final Object projection = new XBProjector(config).projectXMLString(xml, Doc.class);
+        final StringWriter writer = new StringWriter();
+        DOMSerializer.serialize(config, ((DOMAccess) projection).getDOMNode(), writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testSameOutputAsTransformer() throws IOException {
+        for (boolean omitDeclaration : new boolean[] { true, false }) {
+            final String expected = serialize((DefaultXMLFactoriesConfig) new TransformingConfig().setPrettyPrinting(false).setOmitXMLDeclaration(omitDeclaration), XML);
+            assertEquals(expected, serialize(new DefaultXMLFactoriesConfig().setPrettyPrinting(false).setOmitXMLDeclaration(omitDeclaration), XML));
+        }
+    }
+
+    @Test
+    public void testPrettyPrinting() throws IOException {
+        final String xml = "<root><a><b>text</b></a><c/></root>";
+        final String expected = serialize(new TransformingConfig(), xml);
+        final String actual = serialize(new DefaultXMLFactoriesConfig(), xml);
+        assertEquals(expected.replaceAll("\\s", ""), actual.replaceAll("\\s", ""));
+        assertTrue(actual, actual.contains("\n  <a>\n    <b>text</b>\n  </a>"));
+    }
+
+    @Test
+    public void testStreamOutputIsUTF8() throws IOException {
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+        final Object projection = new XBProjector(config).projectXMLString("<root>\u00e4\u20ac</root>", Doc.class);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new XBProjector(config).io().stream(os).write(projection);
+        assertEquals("<root>\u00e4\u20ac</root>", os.toString("UTF-8").trim());
+    }
+}
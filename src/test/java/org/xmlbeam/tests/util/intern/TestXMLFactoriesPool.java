@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.util.intern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.xpath.XPath;
+
+import org.junit.Test;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig.NamespacePhilosophy;
+import org.xmlbeam.util.intern.XMLFactoriesPool;
+
+/**
+ * Tests for reusing DocumentBuilders and XPath instances internally.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestXMLFactoriesPool {
+
+    @SuppressWarnings("serial")
+    private static class ResolvingConfig extends DefaultXMLFactoriesConfig {
+        @Override
+        public DocumentBuilder createDocumentBuilder() {
+            final DocumentBuilder documentBuilder = super.createDocumentBuilder();
+            documentBuilder.setErrorHandler(new DefaultHandler());
+            return documentBuilder;
+        }
+    }
+
+    @Test
+    public void testReleasedInstancesAreReused() {
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(config);
+        assertSame(pool, XMLFactoriesPool.of(config));
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
+        assertNotSame(documentBuilder, pool.borrowDocumentBuilder());
+        pool.release(documentBuilder);
+        assertSame(documentBuilder, pool.borrowDocumentBuilder());
+        final XPath xPath = pool.borrowXPath(documentBuilder.newDocument());
+        pool.release(xPath);
+        assertSame(xPath, pool.borrowXPath(null));
+        assertNull(xPath.getNamespaceContext());
+    }
+
+    @Test
+    public void testInstancesOfSubclassesAreNotReused() {
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(new ResolvingConfig());
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
+        pool.release(documentBuilder);
+        assertNotSame(documentBuilder, pool.borrowDocumentBuilder());
+    }
+
+    @Test
+    public void testChangedConfigurationDiscardsInstances() {
+        final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+        final XMLFactoriesPool pool = XMLFactoriesPool.of(config);
+        final DocumentBuilder documentBuilder = pool.borrowDocumentBuilder();
+        assertTrue(documentBuilder.isNamespaceAware());
+        pool.release(documentBuilder);
+        config.setNamespacePhilosophy(NamespacePhilosophy.NIHILISTIC);
+        assertFalse(pool.borrowDocumentBuilder().isNamespaceAware());
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.xpath;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.MessageFormat;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.XBProjector.Flags;
+import org.xmlbeam.annotation.XBDelete;
+import org.xmlbeam.annotation.XBRead;
+
+/**
+ * Tests for {@link Flags#BIND_PLACEHOLDERS_AS_VARIABLES}.
+ */
+public class TestPlaceholderVariableBinding {
+
+    public interface Items {
+        @XBRead("/items/item[@id=''{0}'']/name")
+        String getNameById(String id);
+
+        @XBRead("/items/item[@id=\"{0}\"][@type=\"{1}\"]/name")
+        String getNameByIdAndType(String id, String type);
+
+        @XBRead("/items/{0}[@id=''{1}'']/name")
+        String getNameByElementAndId(String element, String id);
+
+        @XBRead("/items/item[@type=''{0}'']/name")
+        List<String> getNamesByType(String type);
+
+        @XBRead("count(/items/item[@id=''{0}''])")
+        int countById(int id);
+
+        @XBRead("/items/item[@id=''{0}'']/name")
+        String getNameByNumber(int id);
+
+        @XBDelete("/items/item[@id=''{0}'']")
+        Items deleteById(String id);
+    }
+
+    private static final String XML = "<items><item id=\"1\" type=\"a\"><name>one</name></item><item id=\"2\" type=\"b\"><name>two</name></item><item id=\"3\" type=\"a\"><name>three</name></item><other id=\"1\"><name>other</name></other></items>";
+
+    private Items items;
+
+    @Before
+    public void createProjection() {
+        items = new XBProjector(Flags.BIND_PLACEHOLDERS_AS_VARIABLES).projectXMLString(XML, Items.class);
+    }
+
+    @Test
+    public void testBoundVariables() {
+        assertEquals("one", items.getNameById("1"));
+        assertEquals("two", items.getNameById("2"));
+        assertEquals("", items.getNameById("4"));
+        assertEquals("three", items.getNameByIdAndType("3", "a"));
+        assertEquals("", items.getNameByIdAndType("3", "b"));
+        assertEquals("[one, three]", items.getNamesByType("a").toString());
+        assertEquals(1, items.countById(2));
+    }
+
+    @Test
+    public void testMixedWithTextualPlaceholders() {
+        assertEquals("one", items.getNameByElementAndId("item", "1"));
+        assertEquals("other", items.getNameByElementAndId("other", "1"));
+    }
+
+    @Test
+    public void testArgumentsDoNotChangeExpression() {
+        assertEquals("", items.getNameById("1' or '1'='1"));
+        Items quoted = new XBProjector(Flags.BIND_PLACEHOLDERS_AS_VARIABLES).projectXMLString("<items><item id=\"it's\"><name>quoted</name></item></items>", Items.class);
+        assertEquals("quoted", quoted.getNameById("it's"));
+    }
+
+    @Test
+    public void testArgumentsAreFormattedLikeMessageFormat() {
+        final String id = MessageFormat.format("{0}", new Object[] { 1234 });
+        final Items formatted = new XBProjector(Flags.BIND_PLACEHOLDERS_AS_VARIABLES).projectXMLString("<items><item id=\"" + id + "\"><name>formatted</name></item></items>", Items.class);
+        assertEquals("formatted", formatted.getNameByNumber(1234));
+        assertEquals("one", items.getNameByNumber(1));
+    }
+
+    @Test
+    public void testDeleter() {
+        items.deleteById("2");
+        assertEquals("", items.getNameById("2"));
+        assertEquals("one", items.getNameById("1"));
+    }
+}
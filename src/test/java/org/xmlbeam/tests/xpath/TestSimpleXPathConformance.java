@@ -0,0 +1,308 @@
+/**
+ *  Copyright 2014 Sven Ewald
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xmlbeam.tests.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xmlbeam.XBProjector;
+import org.xmlbeam.annotation.XBDocURL;
+import org.xmlbeam.annotation.XBRead;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig;
+import org.xmlbeam.config.DefaultXMLFactoriesConfig.NamespacePhilosophy;
+import org.xmlbeam.dom.DOMAccess;
+
+/**
+ * Compares the direct evaluation of simple paths with the XPath engine. Every projection interface
+ * of the tests and tutorials is projected onto every test document and all reading methods
+ * without parameters are invoked in both modes.
+ *
+ * @author <a href="https://github.com/SvenEwald">Sven Ewald</a>
+ */
+public class TestSimpleXPathConformance {
+
+    public interface Edge {
+        @XBRead("@id")
+        String getId();
+
+        @XBRead("./value")
+        String getValue();
+
+        @XBRead("/root/@version")
+        String getRootVersion();
+
+        @XBRead("value/@unit")
+        String getUnit();
+    }
+
+    public interface Edges {
+        @XBRead("/root/@version")
+        String getVersion();
+
+        @XBRead("/root/edge")
+        List<Edge> getEdges();
+
+        @XBRead("/root/edge[@id='2']/value")
+        int getSecondValue();
+
+        @XBRead("/root/edge[value='3']/@id")
+        String getIdOfValue3();
+
+        @XBRead("/root/*/value")
+        List<String> getAllValues();
+
+        @XBRead("/root/*")
+        Node[] getAllNodes();
+
+        @XBRead("/*/edge/@xmlns")
+        String getNamespaceDeclaration();
+
+        @XBRead("/root/@xmlns:ns")
+        String getPrefixedDeclaration();
+
+        @XBRead("/root/ns:edge")
+        String getPrefixedEdge();
+
+        @XBRead("/root/edge")
+        String getFirstEdgeText();
+
+        @XBRead("/root/edge/value/@unit")
+        List<String> getUnits();
+
+        @XBRead("/root/inner")
+        String getInner();
+
+        @XBRead("/root/edge[@id='9']")
+        Edge getMissing();
+
+        @XBRead("/root/edge[@id='1']")
+        Edge getFirst();
+
+        @XBRead("/root/edge/value")
+        Double getFirstValue();
+    }
+
+    private static final String XML = "<root version=\"1.0\" xmlns:ns=\"http://xmlbeam.org/ns\">" //
+            + "<edge id=\"1\"><value unit=\"m\">1</value></edge>\n" //
+            + "<!-- comment --><edge id=\"2\"><value>2</value><value>x</value></edge>" //
+            + "<ns:edge id=\"x\">ns</ns:edge><edge xmlns=\"http://xmlbeam.org/default\" id=\"d\"><value>d</value></edge>" //
+            + "<other><value unit=\"s\">3</value></other><edge id=\"3\"><value>3</value></edge>" //
+            + "<inner>a<![CDATA[<b>]]><c>c</c><?pi d?></inner></root>";
+
+    private int comparedInvocations = 0;
+    private int nonEmptyResults = 0;
+
+    @Test
+    public void testCraftedDocument() throws Exception {
+        for (NamespacePhilosophy philosophy : new NamespacePhilosophy[] { NamespacePhilosophy.HEDONISTIC, NamespacePhilosophy.NIHILISTIC }) {
+            final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+            config.setNamespacePhilosophy(philosophy);
+            final Document document = config.createDocumentBuilder().parse(new ByteArrayInputStream(XML.getBytes("utf-8")));
+            compareProjections(config, document, Edges.class);
+        }
+        assertTrue(comparedInvocations > (2 * Edges.class.getMethods().length));
+        assertTrue(nonEmptyResults > 20);
+    }
+
+    @Test
+    public void testAllProjectionsOnAllDocuments() throws Exception {
+        final File root = new File(TestSimpleXPathConformance.class.getResource("/").toURI());
+        final List<Class<?>> interfaces = new ArrayList<Class<?>>();
+        final List<File> documents = new ArrayList<File>();
+        collect(root, root, interfaces, documents);
+        assertTrue(interfaces.size() > 50);
+        assertTrue(documents.size() > 10);
+        for (File file : documents) {
+            final DefaultXMLFactoriesConfig config = new DefaultXMLFactoriesConfig();
+            final Document document = parse(config, file);
+            for (Class<?> projectionInterface : interfaces) {
+                compareProjections(config, document, projectionInterface);
+            }
+        }
+        assertTrue(nonEmptyResults > 100);
+    }
+
+    private static Document parse(final DefaultXMLFactoriesConfig config, final File file) throws IOException {
+        final DocumentBuilder builder = config.createDocumentBuilder();
+        // External DTDs are not available offline.
+        builder.setEntityResolver(new EntityResolver() {
+            @Override
+            public InputSource resolveEntity(final String publicId, final String systemId) {
+                return new InputSource(new StringReader(""));
+            }
+        });
+        try {
+            return builder.parse(file);
+        } catch (SAXException e) {
+            throw new RuntimeException(file.toString(), e);
+        }
+    }
+
+    private static void collect(final File root, final File directory, final List<Class<?>> interfaces, final List<File> documents) {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                collect(root, file, interfaces, documents);
+                continue;
+            }
+            final String name = file.getName();
+            if (name.endsWith(".class")) {
+                final String path = file.getPath().substring(root.getPath().length() + 1);
+                final Class<?> type = loadClass(path.substring(0, path.length() - ".class".length()).replace(File.separatorChar, '.'));
+                if ((type != null) && type.isInterface() && Modifier.isPublic(type.getModifiers()) && hasReadingMethod(type)) {
+                    interfaces.add(type);
+                }
+                continue;
+            }
+            if (name.matches(".*\\.(xml|mm|kml|plist)")) {
+                documents.add(file);
+            }
+        }
+    }
+
+    private static Class<?> loadClass(final String name) {
+        try {
+            return Class.forName(name, false, TestSimpleXPathConformance.class.getClassLoader());
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static boolean hasReadingMethod(final Class<?> type) {
+        for (Method method : type.getMethods()) {
+            if (method.getAnnotation(XBRead.class) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compareProjections(final DefaultXMLFactoriesConfig config, final Node node, final Class<?> projectionInterface) throws Exception {
+        final Object direct;
+        try {
+            direct = new XBProjector(config).projectDOMNode(node, projectionInterface);
+        } catch (IllegalArgumentException e) {
+            // Some tests use invalid projection interfaces on purpose.
+            return;
+        }
+        final Object engine = new XBProjector(config, XBProjector.Flags.XPATH_ENGINE_ONLY).projectDOMNode(node, projectionInterface);
+        compareProjections(projectionInterface, direct, engine, 0);
+    }
+
+    private void compareProjections(final Class<?> projectionInterface, final Object direct, final Object engine, final int depth) throws Exception {
+        for (Method method : projectionInterface.getMethods()) {
+            if ((method.getAnnotation(XBRead.class) == null) || (method.getAnnotation(XBDocURL.class) != null) || (method.getParameterTypes().length > 0)) {
+                continue;
+            }
+            final String context = projectionInterface.getName() + "." + method.getName() + " on " + ((DOMAccess) engine).getDOMNode();
+            final Object expected;
+            try {
+                expected = method.invoke(engine);
+            } catch (InvocationTargetException e) {
+                assertEquals(context, e.getCause().getClass(), invokeForException(method, direct).getClass());
+                ++comparedInvocations;
+                continue;
+            }
+            assertSameResult(context, expected, method.invoke(direct), depth);
+            ++comparedInvocations;
+        }
+    }
+
+    private static Throwable invokeForException(final Method method, final Object projection) throws Exception {
+        try {
+            method.invoke(projection);
+        } catch (InvocationTargetException e) {
+            return e.getCause();
+        }
+        return new AssertionError("No exception was thrown by " + method);
+    }
+
+    private void assertSameResult(final String context, final Object expected, final Object actual, final int depth) throws Exception {
+        if ((expected == null) || (actual == null)) {
+            assertSame(context, expected, actual);
+            return;
+        }
+        if (expected instanceof Iterator) {
+            assertSameResult(context, toList((Iterator<?>) expected), toList((Iterator<?>) actual), depth);
+            return;
+        }
+        if ((expected instanceof Iterable) && !(expected instanceof List)) {
+            assertSameResult(context, toList(((Iterable<?>) expected).iterator()), toList(((Iterable<?>) actual).iterator()), depth);
+            return;
+        }
+        if (expected instanceof List) {
+            final List<?> expectedList = (List<?>) expected;
+            final List<?> actualList = (List<?>) actual;
+            assertEquals(context, expectedList.size(), actualList.size());
+            for (int i = 0; i < expectedList.size(); ++i) {
+                assertSameResult(context + "[" + i + "]", expectedList.get(i), actualList.get(i), depth);
+            }
+            return;
+        }
+        if (expected.getClass().isArray()) {
+            assertEquals(context, Array.getLength(expected), Array.getLength(actual));
+            for (int i = 0; i < Array.getLength(expected); ++i) {
+                assertSameResult(context + "[" + i + "]", Array.get(expected, i), Array.get(actual, i), depth);
+            }
+            return;
+        }
+        if (expected instanceof DOMAccess) {
+            assertSame(context, ((DOMAccess) expected).getDOMNode(), ((DOMAccess) actual).getDOMNode());
+            ++nonEmptyResults;
+            if (depth < 2) {
+                compareProjections(((DOMAccess) expected).getProjectionInterface(), actual, expected, depth + 1);
+            }
+            return;
+        }
+        if (expected instanceof Node) {
+            assertSame(context, expected, actual);
+            ++nonEmptyResults;
+            return;
+        }
+        assertEquals(context, expected, actual);
+        if (!"".equals(expected)) {
+            ++nonEmptyResults;
+        }
+    }
+
+    private static List<Object> toList(final Iterator<?> iterator) {
+        final List<Object> list = new ArrayList<Object>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
+}
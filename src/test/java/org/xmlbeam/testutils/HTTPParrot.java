@@ -15,17 +15,25 @@
  */
 package org.xmlbeam.testutils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.net.ServerSocketFactory;
 
@@ -38,29 +46,131 @@ import javax.net.ServerSocketFactory;
  */
 public class HTTPParrot {
 
-    private Future<String> future;
+    private Future<List<String>> future;
     private ServerSocket socket;
+    private final AtomicInteger connectionCount = new AtomicInteger();
 
     public static HTTPParrot serve(final String response) throws IOException {
+        return serveResponses("HTTP/1.1 200 OK\r\nConnection: Close\r\nContent-Type: application/xml\r\nContent-Length: " + response.getBytes().length + "\r\n\r\n" + response);
+    }
+
+    /**
+     * Serve the given raw responses including status line and header fields. The connection is
+     * kept open for the next request unless the response contains "Connection: Close".
+     * 
+     * @param responses
+     * @return a new parrot
+     * @throws IOException
+     */
+    public static HTTPParrot serveResponses(final String... responses) throws IOException {
+        final byte[][] bytes = new byte[responses.length][];
+        for (int i = 0; i < responses.length; ++i) {
+            bytes[i] = responses[i].getBytes("ISO-8859-1");
+        }
+        return serveResponses(bytes);
+    }
+
+    /**
+     * @param responses
+     *            raw responses, see {@link #serveResponses(String...)}.
+     * @return a new parrot
+     * @throws IOException
+     */
+    public static HTTPParrot serveResponses(final byte[]... responses) throws IOException {
         final HTTPParrot parrot = new HTTPParrot();
         parrot.socket = ServerSocketFactory.getDefault().createServerSocket(0, 1, InetAddress.getByName("localhost"));
+        // Do not wait forever for clients that never come.
+        parrot.socket.setSoTimeout(10000);
         ExecutorService executor = Executors.newSingleThreadExecutor();
-        parrot.future = executor.submit(new Callable<String>() {
+        parrot.future = executor.submit(new Callable<List<String>>() {
 
             @Override
-            public String call() throws Exception {
-                Socket s = parrot.socket.accept();
-                String requestHeader = new Scanner(s.getInputStream()).useDelimiter("\r\n\r\n").next();
-                s.getOutputStream().write(("HTTP/1.1 200 OK\r\nConnection: Close\r\nContent-Type: application/xml\r\nContent-Length: " + response.getBytes().length + "\r\n\r\n").getBytes());
-                s.getOutputStream().write(response.getBytes());
-                s.close();
-                return requestHeader;
+            public List<String> call() throws Exception {
+                List<String> requests = new ArrayList<String>();
+                Socket s = null;
+                try {
+                    for (byte[] response : responses) {
+                        if (s == null) {
+                            s = parrot.socket.accept();
+                            s.setSoTimeout(10000);
+                            parrot.connectionCount.incrementAndGet();
+                        }
+                        requests.add(readRequest(s.getInputStream()));
+                        s.getOutputStream().write(response);
+                        s.getOutputStream().flush();
+                        if (new String(response, "ISO-8859-1").toLowerCase(Locale.ENGLISH).contains("connection: close")) {
+                            s.close();
+                            s = null;
+                        }
+                    }
+                } finally {
+                    if (s != null) {
+                        s.close();
+                    }
+                    parrot.socket.close();
+                }
+                return requests;
             }
         });
         executor.shutdown();
         return parrot;
     }
 
+    /**
+     * Read the request header and body. Chunked bodies are decoded.
+     */
+    private static String readRequest(final InputStream inputStream) throws IOException {
+        final StringBuilder header = new StringBuilder();
+        while (!header.toString().endsWith("\r\n\r\n")) {
+            final int c = inputStream.read();
+            if (c < 0) {
+                throw new EOFException("Incomplete request: " + header);
+            }
+            header.append((char) c);
+        }
+        final String request = header.substring(0, header.length() - 4);
+        final String lowerCaseRequest = request.toLowerCase(Locale.ENGLISH);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final Matcher contentLength = Pattern.compile("content-length: *(\\d+)").matcher(lowerCaseRequest);
+        if (contentLength.find()) {
+            copy(inputStream, body, Integer.parseInt(contentLength.group(1)));
+        } else if (lowerCaseRequest.contains("transfer-encoding: chunked")) {
+            for (int size = readChunkSize(inputStream); size > 0; size = readChunkSize(inputStream)) {
+                copy(inputStream, body, size);
+                readLine(inputStream);
+            }
+            readLine(inputStream);
+        }
+        return body.size() == 0 ? request : request + "\r\n\r\n" + body.toString("UTF-8");
+    }
+
+    private static int readChunkSize(final InputStream inputStream) throws IOException {
+        return Integer.parseInt(readLine(inputStream).split(";")[0].trim(), 16);
+    }
+
+    private static String readLine(final InputStream inputStream) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        for (int c = inputStream.read(); c != '\n'; c = inputStream.read()) {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void copy(final InputStream inputStream, final ByteArrayOutputStream outputStream, final int length) throws IOException {
+        for (int i = 0; i < length; ++i) {
+            final int c = inputStream.read();
+            if (c < 0) {
+                throw new EOFException();
+            }
+            outputStream.write(c);
+        }
+    }
+
     public URL getURL() {
         try {
             return new URL("http", socket.getInetAddress().getHostAddress(), socket.getLocalPort(), "/test");
@@ -70,6 +180,23 @@ public class HTTPParrot {
     }
 
     public String getRequest() throws Exception {
+        return future.get().get(0);
+    }
+
+    /**
+     * @return number of accepted connections, waiting until all responses are served.
+     * @throws Exception
+     */
+    public int getConnectionCount() throws Exception {
+        future.get();
+        return connectionCount.get();
+    }
+
+    /**
+     * @return the requests of all served responses, waiting until all are served.
+     * @throws Exception
+     */
+    public List<String> getRequests() throws Exception {
         return future.get();
     }
 }
\ No newline at end of file